@@ -1,45 +1,155 @@
 package org.readium.adapter.exoplayer.audio
 
+import android.content.Context
 import androidx.annotation.OptIn
 import androidx.media3.common.util.UnstableApi
+import androidx.media3.database.StandaloneDatabaseProvider
+import androidx.media3.datasource.AesCipherDataSink
+import androidx.media3.datasource.AesCipherDataSource
 import androidx.media3.datasource.FileDataSource
 import androidx.media3.datasource.cache.Cache
 import androidx.media3.datasource.cache.CacheDataSink
 import androidx.media3.datasource.cache.CacheDataSource
+import androidx.media3.datasource.cache.LeastRecentlyUsedCacheEvictor
+import androidx.media3.datasource.cache.SimpleCache
+import java.io.File
+import java.util.Collections
+import java.util.WeakHashMap
+import kotlinx.coroutines.runBlocking
 import org.readium.r2.shared.DelicateReadiumApi
+import org.readium.r2.shared.InternalReadiumApi
 import org.readium.r2.shared.publication.Publication
+import org.readium.r2.shared.publication.services.readingOrderFingerprint
 import org.readium.r2.shared.util.Url
 import org.readium.r2.shared.util.toUrl
 
 /**
  * Uses the given cache only for remote publications and URLs resolved against the
  * publication base URL as cache keys.
+ *
+ * Packaged publications (e.g. local ZIP or LCP audiobooks) are cached in
+ * [packagedPublicationCache] when provided, keyed by the publication identifier, a fingerprint of
+ * its reading order resources and the resource href. The fingerprint, built from the lengths of
+ * the resources in the container, keeps two publications sharing an identifier from reading each
+ * other's content, or from encrypting different content with the same AES-CTR nonces. This cache
+ * holds the content already decrypted and inflated, so that seeking again in a track doesn't
+ * decode it again. It is encrypted at rest with the 16-byte AES
+ * [packagedPublicationSecretKey], which must stay the same across sessions to read the cached
+ * content again, for example by storing it in the Android Keystore.
+ *
+ * Only the packaged publications with an identifier are cached.
+ *
+ * @param packagedPublicationCache Cache for the packaged publications, for example created with
+ * [createPackagedPublicationCache] to limit its size.
+ * @param packagedPublicationSecretKey AES key encrypting the content of
+ * [packagedPublicationCache].
  */
 @OptIn(UnstableApi::class)
 public class DefaultExoPlayerCacheProvider(
     private val cache: Cache,
+    private val packagedPublicationCache: Cache? = null,
+    private val packagedPublicationSecretKey: ByteArray? = null,
 ) : ExoPlayerCacheProvider {
 
+    init {
+        require(packagedPublicationCache == null || packagedPublicationSecretKey?.size == 16) {
+            "A 16-byte secret key is required to cache the packaged publications."
+        }
+    }
+
     @kotlin.OptIn(DelicateReadiumApi::class)
     override fun getCache(publication: Publication): Cache? =
-        cache.takeUnless { publication.baseUrl == null }
+        when {
+            publication.baseUrl != null -> cache
+            publication.metadata.identifier != null -> packagedPublicationCache
+            else -> null
+        }
+
+    /**
+     * Fingerprints of the packaged publications, computed once per publication.
+     */
+    private val fingerprints: MutableMap<Publication, String> =
+        Collections.synchronizedMap(WeakHashMap())
 
+    @kotlin.OptIn(DelicateReadiumApi::class)
     override fun computeKey(publication: Publication, url: Url): String =
-        (publication.baseUrl?.resolve(url) ?: url).normalize().toString()
+        publication.baseUrl?.resolve(url)?.normalize()?.toString()
+            ?: "${publication.metadata.identifier}#${fingerprint(publication)}#${url.normalize()}"
+
+    /**
+     * Called from the loading threads of ExoPlayer, so blocking to read the container is fine.
+     */
+    @kotlin.OptIn(InternalReadiumApi::class)
+    private fun fingerprint(publication: Publication): String =
+        fingerprints.getOrPut(publication) {
+            runBlocking { publication.readingOrderFingerprint() }
+        }
+
+    @kotlin.OptIn(DelicateReadiumApi::class)
+    override fun getSecretKey(publication: Publication): ByteArray? =
+        packagedPublicationSecretKey.takeIf { publication.baseUrl == null }
+
+    public companion object {
+
+        /**
+         * Creates a cache for the packaged publications in [directory], evicting the least
+         * recently used content when it exceeds [maxSize] bytes.
+         *
+         * Only one cache instance can use a given directory at a time.
+         */
+        public fun createPackagedPublicationCache(
+            context: Context,
+            directory: File,
+            maxSize: Long = 256L * 1024 * 1024,
+        ): Cache =
+            SimpleCache(
+                directory,
+                LeastRecentlyUsedCacheEvictor(maxSize),
+                StandaloneDatabaseProvider(context)
+            )
+    }
 }
 
 @OptIn(UnstableApi::class)
 public fun ExoPlayerCacheProvider.createCacheDataSourceFactory(
     publication: Publication,
+): CacheDataSource.Factory? =
+    createCacheDataSourceFactory(publication, ExoPlayerDataSource.Factory(publication))
+
+@OptIn(UnstableApi::class)
+internal fun ExoPlayerCacheProvider.createCacheDataSourceFactory(
+    publication: Publication,
+    upstreamDataSourceFactory: ExoPlayerDataSource.Factory,
 ): CacheDataSource.Factory? {
     val cache = getCache(publication) ?: return null
-    val upstreamDataSourceFactory = ExoPlayerDataSource.Factory(publication)
+    val secretKey = getSecretKey(publication)
+    val sinkFactory = CacheDataSink.Factory().setCache(cache)
 
     return CacheDataSource.Factory()
         .setCache(cache)
         .setCacheKeyFactory { dataSpec -> computeKey(publication, dataSpec.uri.toUrl()!!) }
-        .setCacheWriteDataSinkFactory(CacheDataSink.Factory().setCache(cache))
-        .setCacheReadDataSourceFactory(FileDataSource.Factory())
+        .apply {
+            if (secretKey == null) {
+                setCacheWriteDataSinkFactory(sinkFactory)
+                setCacheReadDataSourceFactory(FileDataSource.Factory())
+            } else {
+                // The content is encrypted with AES-CTR, seeded with the cache key and the
+                // position of the bytes in the resource, so that any cached span can be read
+                // from any position.
+                setCacheWriteDataSinkFactory {
+                    AesCipherDataSink(secretKey, sinkFactory.createDataSink(), ByteArray(CIPHER_BUFFER_SIZE))
+                }
+                setCacheReadDataSourceFactory {
+                    AesCipherDataSource(secretKey, FileDataSource())
+                }
+            }
+        }
         .setUpstreamDataSourceFactory(upstreamDataSourceFactory)
         .setFlags(CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR)
 }
+
+/**
+ * Size of the buffer used to encrypt the content written in the cache, to not encrypt in place
+ * the buffer read by ExoPlayer.
+ */
+private const val CIPHER_BUFFER_SIZE = 64 * 1024
@@ -22,4 +22,10 @@ public interface ExoPlayerCacheProvider {
      * absolute URL or a mix of [url] with some publication identifier.
      */
     public fun computeKey(publication: Publication, url: Url): String
+
+    /**
+     * Returns the 16-byte AES key used to encrypt the content cached for [publication], or null
+     * to store it in plain text.
+     */
+    public fun getSecretKey(publication: Publication): ByteArray? = null
 }
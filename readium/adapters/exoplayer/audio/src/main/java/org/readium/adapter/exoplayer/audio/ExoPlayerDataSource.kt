@@ -18,9 +18,7 @@ import org.readium.r2.shared.publication.Publication
 import org.readium.r2.shared.util.DebugError
 import org.readium.r2.shared.util.data.ReadError
 import org.readium.r2.shared.util.data.ReadException
-import org.readium.r2.shared.util.getOrThrow
 import org.readium.r2.shared.util.resource.Resource
-import org.readium.r2.shared.util.resource.buffered
 import org.readium.r2.shared.util.toUrl
 import timber.log.Timber
 
@@ -30,15 +28,17 @@ import timber.log.Timber
 @androidx.annotation.OptIn(androidx.media3.common.util.UnstableApi::class)
 internal class ExoPlayerDataSource internal constructor(
     private val publication: Publication,
+    private val readAheadCounters: ReadAheadCounters,
 ) : BaseDataSource(/* isNetwork = */ true) {
 
     class Factory(
         private val publication: Publication,
         private val transferListener: TransferListener? = null,
+        private val readAheadCounters: ReadAheadCounters = ReadAheadCounters(),
     ) : DataSource.Factory {
 
         override fun createDataSource(): DataSource =
-            ExoPlayerDataSource(publication).apply {
+            ExoPlayerDataSource(publication, readAheadCounters).apply {
                 if (transferListener != null) {
                     addTransferListener(transferListener)
                 }
@@ -46,10 +46,8 @@ internal class ExoPlayerDataSource internal constructor(
     }
 
     private data class OpenedResource(
-        val resource: Resource,
+        val reader: ReadAheadReader,
         val uri: Uri,
-        var position: Long,
-        var remaining: Long,
     )
 
     private var openedResource: OpenedResource? = null
@@ -62,8 +60,6 @@ internal class ExoPlayerDataSource internal constructor(
             )
 
         val resource = publication.get(link)
-            // Significantly improves performances, in particular with deflated ZIP entries.
-            ?.buffered(resourceLength = cachedLengths[dataSpec.uri.toString()])
             ?: throw ReadException(
                 ReadError.Decoding(
                     DebugError(
@@ -84,11 +80,17 @@ internal class ExoPlayerDataSource internal constructor(
                 }
             }
 
+        // Decrypting or inflating the resource ahead of the playback significantly improves
+        // performances, in particular with LCP or deflated ZIP entries.
         openedResource = OpenedResource(
-            resource = resource,
-            uri = dataSpec.uri,
-            position = dataSpec.position,
-            remaining = bytesToRead
+            reader = ReadAheadReader(
+                resource = resource,
+                start = dataSpec.position,
+                end = bytesToRead.takeUnless { it == LENGTH_UNSET.toLong() }
+                    ?.let { dataSpec.position + it },
+                counters = readAheadCounters
+            ),
+            uri = dataSpec.uri
         )
 
         return bytesToRead
@@ -116,42 +118,17 @@ internal class ExoPlayerDataSource internal constructor(
             "No opened resource to read from. Did you call open()?"
         )
 
-        if (openedResource.remaining == 0L) {
-            return RESULT_END_OF_INPUT
-        }
-
-        val bytesToRead = length.toLong().coerceAtMost(openedResource.remaining)
-
         try {
-            val data = runBlocking {
-                openedResource.resource
-                    .read(
-                        range = openedResource.position until (openedResource.position + bytesToRead)
-                    )
-                    .mapFailure {
-                        Timber.v("Failed to read $length bytes of URI $uri at offset $offset.")
-                        ReadException(it)
-                    }.getOrThrow()
-            }
-
-            if (data.isEmpty()) {
+            val count = openedResource.reader.read(target, offset, length)
+            if (count == -1) {
                 return RESULT_END_OF_INPUT
             }
-
-            data.copyInto(
-                destination = target,
-                destinationOffset = offset,
-                startIndex = 0,
-                endIndex = data.size
-            )
-
-            openedResource.position += data.count()
-            openedResource.remaining -= data.count()
-            return data.count()
+            return count
         } catch (e: Exception) {
             if (e is InterruptedException) {
                 return 0
             }
+            Timber.v("Failed to read $length bytes of URI $uri.")
             throw e
         }
     }
@@ -159,7 +136,7 @@ internal class ExoPlayerDataSource internal constructor(
     override fun getUri(): Uri? = openedResource?.uri
 
     override fun close() {
-        openedResource?.resource?.close()
+        openedResource?.reader?.close()
         openedResource = null
     }
 }
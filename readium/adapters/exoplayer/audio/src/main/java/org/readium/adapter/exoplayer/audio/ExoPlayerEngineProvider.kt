@@ -28,7 +28,8 @@ import org.readium.r2.shared.util.Try
  * Provide [ExoPlayerDefaults] to customize the default values that will be used by
  * the navigator for some preferences.
  *
- * Pass an [ExoPlayerCacheProvider] to enable caching of remote resources.
+ * Pass an [ExoPlayerCacheProvider] to enable caching of remote resources, or of the decrypted
+ * resources of packaged publications with [DefaultExoPlayerCacheProvider].
  */
 @ExperimentalReadiumApi
 @androidx.annotation.OptIn(androidx.media3.common.util.UnstableApi::class)
@@ -40,6 +41,30 @@ public class ExoPlayerEngineProvider(
     private val configuration: ExoPlayerEngine.Configuration = ExoPlayerEngine.Configuration(),
 ) : AudioEngineProvider<ExoPlayerSettings, ExoPlayerPreferences, ExoPlayerPreferencesEditor> {
 
+    /**
+     * Counters of the reads of the publication resources by the engines of this provider.
+     *
+     * The resources are decrypted or inflated ahead of the playback. When ExoPlayer reads bytes
+     * faster than they are prepared, the playback stalls until the next bytes are available.
+     *
+     * @param readCount Number of reads served to ExoPlayer.
+     * @param stallCount Number of reads which waited for the resource.
+     * @param stallDuration Total duration of the waits for the resources.
+     */
+    public data class ReadAheadStatistics(
+        val readCount: Long,
+        val stallCount: Long,
+        val stallDuration: Duration,
+    )
+
+    /**
+     * Current counters of the reads of the publication resources.
+     */
+    public val readAheadStatistics: ReadAheadStatistics
+        get() = readAheadCounters.toStatistics()
+
+    private val readAheadCounters = ReadAheadCounters()
+
     override suspend fun createEngine(
         publication: Publication,
         initialLocator: Locator,
@@ -47,9 +72,13 @@ public class ExoPlayerEngineProvider(
     ): Try<ExoPlayerEngine, Nothing> {
         val metadataFactory = metadataProvider.createMetadataFactory(publication)
         val settingsResolver = ExoPlayerSettingsResolver(defaults)
+        val upstreamDataSourceFactory = ExoPlayerDataSource.Factory(
+            publication,
+            readAheadCounters = readAheadCounters
+        )
         val dataSourceFactory = cacheProvider
-            ?.createCacheDataSourceFactory(publication)
-            ?: ExoPlayerDataSource.Factory(publication)
+            ?.createCacheDataSourceFactory(publication, upstreamDataSourceFactory)
+            ?: upstreamDataSourceFactory
         val initialIndex = publication.readingOrder.indexOfFirstWithHref(initialLocator.href) ?: 0
         val initialPosition = initialLocator.locations.time ?: Duration.ZERO
         val playlist = ExoPlayerEngine.Playlist(
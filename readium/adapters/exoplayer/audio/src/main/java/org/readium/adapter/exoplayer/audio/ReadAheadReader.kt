@@ -0,0 +1,188 @@
+/*
+ * Copyright 2024 Readium Foundation. All rights reserved.
+ * Use of this source code is governed by the BSD-style license
+ * available in the top-level LICENSE file of the project.
+ */
+
+package org.readium.adapter.exoplayer.audio
+
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.time.Duration.Companion.nanoseconds
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import org.readium.r2.shared.ExperimentalReadiumApi
+import org.readium.r2.shared.util.Try
+import org.readium.r2.shared.util.data.ReadException
+import org.readium.r2.shared.util.getOrElse
+import org.readium.r2.shared.util.resource.Resource
+
+/**
+ * Reads a [resource] sequentially from [start] to [end] (exclusive, or the end of the resource
+ * when null), ahead of the consumer.
+ *
+ * A producer coroutine reads the resource by chunks of [chunkSize] bytes on [Dispatchers.IO] and
+ * queues them, so that [read] usually copies bytes already available instead of waiting for the
+ * resource to be decrypted or inflated. At most [initialChunkCount] chunks are read ahead at
+ * first. Each time the consumer has to wait for a chunk, one more chunk is read ahead, up to
+ * [maxChunkCount].
+ *
+ * [read] and [close] must be called from the same thread, as ExoPlayer does with a data source.
+ * The [resource] is closed with the reader.
+ */
+internal class ReadAheadReader(
+    private val resource: Resource,
+    start: Long,
+    end: Long?,
+    private val counters: ReadAheadCounters,
+    chunkSize: Int = 64 * 1024,
+    initialChunkCount: Int = 2,
+    private val maxChunkCount: Int = 16,
+) {
+
+    /**
+     * Chunks read by the producer, an empty chunk marking the end of the range.
+     */
+    private val chunks = Channel<Try<ByteArray, Exception>>(Channel.UNLIMITED)
+
+    /**
+     * One element per chunk the producer is allowed to read ahead.
+     */
+    private val credits = Channel<Unit>(Channel.UNLIMITED)
+
+    private var chunkCount = initialChunkCount
+
+    private var currentChunk: ByteArray? = null
+
+    private var currentOffset = 0
+
+    private var isEndOfInput = false
+
+    private var failure: Exception? = null
+
+    private var isFirstChunk = true
+
+    private val producer = CoroutineScope(Dispatchers.IO).launch {
+        var position = start
+        while (true) {
+            credits.receive()
+            val length = end?.let { minOf(chunkSize.toLong(), it - position) } ?: chunkSize.toLong()
+            val chunk =
+                try {
+                    if (length > 0) {
+                        resource.read(position until position + length)
+                            .mapFailure { ReadException(it) }
+                    } else {
+                        Try.success(ByteArray(0))
+                    }
+                } catch (e: CancellationException) {
+                    throw e
+                } catch (e: Exception) {
+                    // Rethrown by the consumer, on the ExoPlayer loader thread.
+                    Try.failure(e)
+                }
+            chunks.send(chunk)
+
+            val data = chunk.getOrNull()
+            if (data == null || data.isEmpty()) {
+                break
+            }
+            position += data.size
+        }
+    }.apply {
+        invokeOnCompletion { resource.close() }
+    }
+
+    init {
+        repeat(initialChunkCount) { credits.trySend(Unit) }
+    }
+
+    /**
+     * Copies up to [length] bytes in [target] at [offset].
+     *
+     * @return The number of bytes copied, or -1 at the end of the range.
+     */
+    fun read(target: ByteArray, offset: Int, length: Int): Int {
+        val chunk = currentChunk ?: nextChunk() ?: return -1
+
+        val count = minOf(length, chunk.size - currentOffset)
+        chunk.copyInto(
+            destination = target,
+            destinationOffset = offset,
+            startIndex = currentOffset,
+            endIndex = currentOffset + count
+        )
+        counters.readCount.incrementAndGet()
+
+        currentOffset += count
+        if (currentOffset == chunk.size) {
+            currentChunk = null
+            credits.trySend(Unit)
+        }
+        return count
+    }
+
+    private fun nextChunk(): ByteArray? {
+        failure?.let { throw it }
+        if (isEndOfInput) {
+            return null
+        }
+
+        val result = chunks.tryReceive().getOrNull()
+            ?: run {
+                val startTime = System.nanoTime()
+                val result = runBlocking { chunks.receive() }
+
+                // Past the first chunk, the playback is starving: reads further ahead.
+                if (!isFirstChunk) {
+                    counters.stallCount.incrementAndGet()
+                    counters.stallNanos.addAndGet(System.nanoTime() - startTime)
+
+                    if (chunkCount < maxChunkCount) {
+                        chunkCount++
+                        credits.trySend(Unit)
+                    }
+                }
+                result
+            }
+        isFirstChunk = false
+
+        val chunk = result.getOrElse {
+            // The producer stopped after this failure.
+            failure = it
+            throw it
+        }
+        if (chunk.isEmpty()) {
+            isEndOfInput = true
+            return null
+        }
+
+        currentChunk = chunk
+        currentOffset = 0
+        return chunk
+    }
+
+    fun close() {
+        producer.cancel()
+    }
+}
+
+/**
+ * Counters shared by the [ReadAheadReader]s of an [ExoPlayerEngineProvider].
+ */
+internal class ReadAheadCounters {
+    val readCount = AtomicLong()
+    val stallCount = AtomicLong()
+    val stallNanos = AtomicLong()
+
+    @ExperimentalReadiumApi
+    fun toStatistics(): ExoPlayerEngineProvider.ReadAheadStatistics =
+        ExoPlayerEngineProvider.ReadAheadStatistics(
+            readCount = readCount.get(),
+            stallCount = stallCount.get(),
+            stallDuration = stallNanos.get().nanoseconds
+        )
+}
@@ -0,0 +1,67 @@
+package org.readium.adapter.exoplayer.audio
+
+import kotlin.random.Random
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.readium.r2.shared.util.resource.InMemoryResource
+
+class ReadAheadReaderTest {
+
+    private val content = Random(42).nextBytes(300_000)
+
+    private fun readAll(reader: ReadAheadReader, readLength: Int): ByteArray {
+        val result = mutableListOf<Byte>()
+        val buffer = ByteArray(readLength)
+        while (true) {
+            val count = reader.read(buffer, 0, readLength)
+            if (count == -1) {
+                break
+            }
+            result.addAll(buffer.take(count))
+        }
+        reader.close()
+        return result.toByteArray()
+    }
+
+    @Test
+    fun `read the whole resource`() {
+        val reader = ReadAheadReader(
+            resource = InMemoryResource(content),
+            start = 0,
+            end = null,
+            counters = ReadAheadCounters(),
+            chunkSize = 10_000
+        )
+        assertArrayEquals(content, readAll(reader, readLength = 8_192))
+    }
+
+    @Test
+    fun `read a range of the resource`() {
+        val reader = ReadAheadReader(
+            resource = InMemoryResource(content),
+            start = 12_345,
+            end = 250_000,
+            counters = ReadAheadCounters(),
+            chunkSize = 10_000
+        )
+        assertArrayEquals(
+            content.copyOfRange(12_345, 250_000),
+            readAll(reader, readLength = 3_000)
+        )
+    }
+
+    @Test
+    fun `reads are counted`() {
+        val counters = ReadAheadCounters()
+        val reader = ReadAheadReader(
+            resource = InMemoryResource(content),
+            start = 0,
+            end = 100_000,
+            counters = counters,
+            chunkSize = 50_000
+        )
+        readAll(reader, readLength = 25_000)
+        assertEquals(4L, counters.readCount.get())
+    }
+}
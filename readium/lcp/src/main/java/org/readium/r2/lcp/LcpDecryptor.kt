@@ -11,12 +11,19 @@
 
 package org.readium.r2.lcp
 
+import java.io.ByteArrayOutputStream
+import java.util.zip.DataFormatException
+import java.util.zip.Inflater
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
 import org.readium.r2.shared.InternalReadiumApi
 import org.readium.r2.shared.extensions.coerceFirstNonNegative
 import org.readium.r2.shared.extensions.inflate
 import org.readium.r2.shared.extensions.requireLengthFitInt
 import org.readium.r2.shared.publication.encryption.Encryption
+import org.readium.r2.shared.util.AbsoluteUrl
 import org.readium.r2.shared.util.DebugError
+import org.readium.r2.shared.util.NormalizedUrlMap
 import org.readium.r2.shared.util.ThrowableError
 import org.readium.r2.shared.util.Try
 import org.readium.r2.shared.util.Url
@@ -34,9 +41,12 @@ import org.readium.r2.shared.util.resource.flatMap
  */
 internal class LcpDecryptor(
     val license: LcpLicense?,
-    val encryptionData: Map<Url, Encryption>,
+    encryptionData: Map<Url, Encryption>,
 ) {
 
+    private val encryptionData: Map<Url, Encryption> =
+        NormalizedUrlMap(encryptionData)
+
     fun transform(url: Url, resource: Resource): Resource {
         return resource.flatMap {
             val encryption = encryptionData.getEquivalent(url)
@@ -56,8 +66,10 @@ internal class LcpDecryptor(
                             )
                         )
                     )
-                encryption.isDeflated || !encryption.isCbcEncrypted ->
+                !encryption.isCbcEncrypted ->
                     FullLcpResource(resource, encryption, license)
+                encryption.isDeflated ->
+                    StreamingLcpResource(resource, license, encryption.originalLength)
                 else ->
                     CbcLcpResource(resource, license, encryption.originalLength)
             }
@@ -163,7 +175,7 @@ internal class CbcLcpResource(
 
     override suspend fun read(range: LongRange?): Try<ByteArray, ReadError> {
         if (range == null) {
-            return license.decryptFully(resource.read(), isDeflated = false)
+            return readFully()
         }
 
         @Suppress("NAME_SHADOWING")
@@ -239,6 +251,425 @@ internal class CbcLcpResource(
         return Try.success(bytes.sliceArray(dataSlice))
     }
 
+    /**
+     * Decrypts the whole resource chunk by chunk, to avoid holding both the encrypted and
+     * decrypted content in memory.
+     */
+    private suspend fun readFully(): Try<ByteArray, ReadError> {
+        val encryptedLength = resource.length()
+            .getOrElse { return license.decryptFully(resource.read(), isDeflated = false) }
+
+        val output = ByteArrayOutputStream(
+            (encryptedLength - AES_BLOCK_SIZE).coerceIn(0, Int.MAX_VALUE.toLong()).toInt()
+        )
+        val cursor = CbcDecryptionCursor(resource, license, encryptedLength, isDeflated = false)
+        try {
+            while (true) {
+                val hasMore = cursor.next { _, bytes, offset, length ->
+                    output.write(bytes, offset, length)
+                }.getOrElse { return Try.failure(it) }
+
+                if (!hasMore) {
+                    break
+                }
+            }
+        } finally {
+            cursor.close()
+        }
+
+        return Try.success(output.toByteArray())
+    }
+
+    companion object {
+        private const val AES_BLOCK_SIZE = 16 // bytes
+    }
+}
+
+/**
+ * A LCP resource encrypted with the CBC algorithm after being deflated.
+ *
+ * A deflated resource can't be decrypted from an arbitrary offset, so the resource is decrypted
+ * and inflated sequentially, chunk by chunk, keeping only the requested range in memory. The
+ * decryption state is kept between reads, so that contiguous range requests such as those of a
+ * media player resume where the previous one stopped, instead of starting over.
+ *
+ * Resources of at most [maxFullyCachedLength] bytes (or encrypted bytes, when the original length
+ * is unknown) are instead decrypted once and kept in memory, as the WebView reads HTML and CSS
+ * resources backward.
+ */
+internal class StreamingLcpResource(
+    private val resource: Resource,
+    private val license: LcpLicense,
+    private val originalLength: Long? = null,
+    private val chunkSize: Int = DEFAULT_CHUNK_SIZE,
+    private val maxFullyCachedLength: Long = DEFAULT_MAX_FULLY_CACHED_LENGTH,
+) : Resource by resource {
+
+    init {
+        require(chunkSize > 0 && chunkSize % AES_BLOCK_SIZE == 0) {
+            "The chunk size must be a positive multiple of $AES_BLOCK_SIZE bytes."
+        }
+    }
+
+    private val mutex = Mutex()
+
+    private var cursor: CbcDecryptionCursor? = null
+
+    /**
+     * Plain text inflated by [cursor] past the end of the previous read, served first by the next
+     * one.
+     */
+    private var pending: PendingBytes? = null
+
+    /**
+     * Whole plain text, when the resource is small enough to be kept in memory.
+     */
+    private var content: ByteArray? = null
+
+    private var cachesFully: Boolean? = null
+
+    /**
+     * Set by [close] when a read holds the lock, which then releases the cursor.
+     */
+    @Volatile
+    private var isClosed: Boolean = false
+
+    private var length: Long? = originalLength
+
+    override val sourceUrl: AbsoluteUrl? = null
+
+    /**
+     * Plain text size.
+     *
+     * When the original length is not provided, it can only be computed by inflating the whole
+     * resource.
+     */
+    override suspend fun length(): Try<Long, ReadError> {
+        length?.let { return Try.success(it) }
+
+        return mutex.withLock {
+            inflateAll { _, _, _, _ -> }
+                .map { it.also { length = it } }
+        }
+    }
+
+    override suspend fun read(range: LongRange?): Try<ByteArray, ReadError> {
+        @Suppress("NAME_SHADOWING")
+        val range = (range ?: 0L until Long.MAX_VALUE)
+            .coerceFirstNonNegative()
+
+        if (range.isEmpty()) {
+            return Try.success(ByteArray(0))
+        }
+
+        return mutex.withLock {
+            try {
+                if (isFullyCached()) {
+                    readFromContent(range)
+                } else {
+                    readFromCursor(range)
+                }
+            } finally {
+                if (isClosed) {
+                    releaseCursor()
+                }
+            }
+        }
+    }
+
+    private suspend fun isFullyCached(): Boolean =
+        cachesFully
+            ?: (originalLength ?: resource.length().getOrNull())
+                .let { it != null && it <= maxFullyCachedLength }
+                .also { cachesFully = it }
+
+    private suspend fun readFromContent(range: LongRange): Try<ByteArray, ReadError> {
+        val content = content
+            ?: run {
+                val output = ByteArrayOutputStream(originalLength?.toInt() ?: chunkSize)
+                inflateAll { _, bytes, offset, size -> output.write(bytes, offset, size) }
+                    .getOrElse { return Try.failure(it) }
+                output.toByteArray().also {
+                    this.content = it
+                    length = it.size.toLong()
+                }
+            }
+
+        if (range.first >= content.size) {
+            return Try.success(ByteArray(0))
+        }
+        val endExclusive = minOf(range.last, content.size - 1L).toInt() + 1
+        return Try.success(content.copyOfRange(range.first.toInt(), endExclusive))
+    }
+
+    private suspend fun readFromCursor(range: LongRange): Try<ByteArray, ReadError> {
+        // Starts over only when the range is before the current position.
+        val cursor = this.cursor
+            ?.takeIf { (pending?.start ?: it.position) <= range.first }
+            ?: newCursor()
+                .getOrElse { return Try.failure(it) }
+                .also {
+                    this.cursor?.close()
+                    this.cursor = it
+                    pending = null
+                }
+
+        val expectedLength = length?.let { it - range.first }
+            ?.coerceIn(0, range.last - range.first + 1)
+            ?.coerceAtMost(Int.MAX_VALUE.toLong())
+            ?.toInt()
+
+        val output = ByteArrayOutputStream(expectedLength ?: chunkSize)
+        val consume: (Long, ByteArray, Int, Int) -> Unit = { start, bytes, offset, size ->
+            val overlapStart = maxOf(start, range.first)
+            val overlapEnd = minOf(start + size, range.last + 1)
+            if (overlapStart < overlapEnd) {
+                output.write(
+                    bytes,
+                    offset + (overlapStart - start).toInt(),
+                    (overlapEnd - overlapStart).toInt()
+                )
+            }
+
+            // Keeps the bytes past the range for the next contiguous read.
+            if (start + size - 1 > range.last) {
+                val tailStart = maxOf(start, range.last + 1)
+                pending = PendingBytes(
+                    start = tailStart,
+                    bytes = bytes.copyOfRange(offset + (tailStart - start).toInt(), offset + size)
+                )
+            }
+        }
+
+        pending?.let {
+            pending = null
+            consume(it.start, it.bytes, 0, it.bytes.size)
+        }
+
+        while (cursor.position <= range.last) {
+            val hasMore = cursor.next(consume)
+                .getOrElse {
+                    this.cursor = null
+                    pending = null
+                    cursor.close()
+                    return Try.failure(it)
+                }
+
+            if (!hasMore) {
+                length = cursor.position
+                break
+            }
+        }
+
+        return Try.success(output.toByteArray())
+    }
+
+    /**
+     * Decrypts and inflates the whole resource with a new cursor, giving the plain text to
+     * [consume] and returning its length.
+     */
+    private suspend fun inflateAll(
+        consume: (start: Long, bytes: ByteArray, offset: Int, length: Int) -> Unit,
+    ): Try<Long, ReadError> {
+        val cursor = newCursor()
+            .getOrElse { return Try.failure(it) }
+
+        try {
+            while (true) {
+                val hasMore = cursor.next(consume)
+                    .getOrElse { return Try.failure(it) }
+
+                if (!hasMore) {
+                    break
+                }
+            }
+        } finally {
+            cursor.close()
+        }
+
+        return Try.success(cursor.position)
+    }
+
+    private suspend fun newCursor(): Try<CbcDecryptionCursor, ReadError> =
+        resource.length().map { encryptedLength ->
+            CbcDecryptionCursor(resource, license, encryptedLength, isDeflated = true, chunkSize = chunkSize)
+        }
+
+    private fun releaseCursor() {
+        cursor?.close()
+        cursor = null
+        pending = null
+        content = null
+    }
+
+    override fun close() {
+        isClosed = true
+        // A read in progress releases the cursor itself, to not end the inflater it is using.
+        if (mutex.tryLock()) {
+            try {
+                releaseCursor()
+            } finally {
+                mutex.unlock()
+            }
+        }
+        resource.close()
+    }
+
+    private class PendingBytes(val start: Long, val bytes: ByteArray)
+
+    companion object {
+        private const val AES_BLOCK_SIZE = 16 // bytes
+        private const val DEFAULT_CHUNK_SIZE = 64 * 1024 // bytes
+        private const val DEFAULT_MAX_FULLY_CACHED_LENGTH = 1024L * 1024 // bytes
+    }
+}
+
+/**
+ * Decrypts sequentially a resource encrypted with the CBC algorithm, [chunkSize] bytes at a time,
+ * and inflates the decrypted bytes if [isDeflated] is true.
+ *
+ * The cursor must be closed to release the native resources of the [Inflater].
+ */
+private class CbcDecryptionCursor(
+    private val resource: Resource,
+    private val license: LcpLicense,
+    private val encryptedLength: Long,
+    isDeflated: Boolean,
+    private val chunkSize: Int = 64 * 1024,
+) {
+
+    /**
+     * Offset in the plain text of the next bytes returned by [next].
+     */
+    var position: Long = 0
+        private set
+
+    /**
+     * Offset of the next encrypted block to read, including the previous block used as IV.
+     */
+    private var encryptedPosition: Long = 0
+
+    private val inflater: Inflater? =
+        if (isDeflated) Inflater(true) else null
+
+    private val inflateBuffer: ByteArray? =
+        if (isDeflated) ByteArray(chunkSize) else null
+
+    /**
+     * Decrypts the next chunk of the resource and gives it to [consume], with its offset in the
+     * plain text.
+     *
+     * Returns false when the end of the resource is reached.
+     */
+    suspend fun next(
+        consume: (start: Long, bytes: ByteArray, offset: Int, length: Int) -> Unit,
+    ): Try<Boolean, ReadError> {
+        if (inflater == null) {
+            val bytes = decryptNextChunk()
+                .getOrElse { return Try.failure(it) }
+                ?: return Try.success(false)
+
+            consume(position, bytes, 0, bytes.size)
+            position += bytes.size
+            return Try.success(true)
+        }
+
+        val buffer = checkNotNull(inflateBuffer)
+        while (true) {
+            if (inflater.finished()) {
+                return Try.success(false)
+            }
+
+            if (inflater.needsInput()) {
+                val bytes = decryptNextChunk()
+                    .getOrElse { return Try.failure(it) }
+                    ?: return Try.failure(
+                        ReadError.Decoding(DebugError("The deflated resource is truncated."))
+                    )
+                inflater.setInput(bytes)
+                continue
+            }
+
+            val inflatedLength = try {
+                inflater.inflate(buffer)
+            } catch (e: DataFormatException) {
+                return Try.failure(
+                    ReadError.Decoding(
+                        DebugError("Cannot inflate the decrypted resource", ThrowableError(e))
+                    )
+                )
+            }
+
+            if (inflatedLength > 0) {
+                consume(position, buffer, 0, inflatedLength)
+                position += inflatedLength
+                return Try.success(true)
+            } else if (inflater.needsDictionary()) {
+                return Try.failure(
+                    ReadError.Decoding(DebugError("The deflated resource requires a dictionary."))
+                )
+            }
+        }
+    }
+
+    /**
+     * Reads and decrypts the next chunk of blocks, removing the padding from the last one.
+     *
+     * Returns null when there are no more blocks to decrypt.
+     */
+    private suspend fun decryptNextChunk(): Try<ByteArray?, ReadError> {
+        if (encryptedPosition + 2 * AES_BLOCK_SIZE > encryptedLength) {
+            return Try.success(null)
+        }
+
+        val endExclusive = minOf(encryptedPosition + AES_BLOCK_SIZE + chunkSize, encryptedLength)
+        val encryptedData = resource.read(encryptedPosition until endExclusive)
+            .getOrElse { return Try.failure(it) }
+
+        if (encryptedData.size < 2 * AES_BLOCK_SIZE || encryptedData.size % AES_BLOCK_SIZE != 0) {
+            return Try.failure(
+                ReadError.Decoding(
+                    DebugError("Encrypted data size is not a multiple of AES block size.")
+                )
+            )
+        }
+
+        val bytes = license.decrypt(encryptedData)
+            .getOrElse {
+                return Try.failure(
+                    ReadError.Decoding(
+                        DebugError("Failed to decrypt the resource", it)
+                    )
+                )
+            }
+
+        check(bytes.size == encryptedData.size - AES_BLOCK_SIZE)
+
+        // The previous block is the IV of the next chunk.
+        encryptedPosition += encryptedData.size - AES_BLOCK_SIZE
+
+        if (encryptedPosition + AES_BLOCK_SIZE < encryptedLength) {
+            return Try.success(bytes)
+        }
+
+        // Removes the padding of the last block.
+        val padding = bytes.last().toInt()
+        if (padding !in 0..minOf(AES_BLOCK_SIZE, bytes.size)) {
+            return Try.failure(
+                ReadError.Decoding(
+                    DebugError(
+                        "The padding length of the encrypted resource is incorrect: $padding / ${bytes.size}"
+                    )
+                )
+            )
+        }
+        return Try.success(bytes.copyOfRange(0, bytes.size - padding))
+    }
+
+    fun close() {
+        inflater?.end()
+    }
+
     companion object {
         private const val AES_BLOCK_SIZE = 16 // bytes
     }
@@ -23,6 +23,7 @@ import org.readium.r2.lcp.service.LicensesService
 import org.readium.r2.lcp.service.NetworkService
 import org.readium.r2.lcp.service.PassphrasesRepository
 import org.readium.r2.lcp.service.PassphrasesService
+import org.readium.r2.lcp.service.StatusDocumentCache
 import org.readium.r2.shared.publication.protection.ContentProtection
 import org.readium.r2.shared.util.Try
 import org.readium.r2.shared.util.asset.Asset
@@ -135,11 +136,16 @@ public interface LcpService {
          * @param deviceName Device name used when registering a license to an LSD server.
          * If not provided, the device name will be generated from the device's manufacturer and
          * model.
+         * @param offlineFirstValidation When true, a license previously opened is validated
+         * against the last Status Document and CRL retrieved, without waiting for the network.
+         * The Status Document, license and CRL are then refreshed in the background, and the
+         * [LcpLicense] is updated if they changed.
          */
         public operator fun invoke(
             context: Context,
             assetRetriever: AssetRetriever,
             deviceName: String? = null,
+            offlineFirstValidation: Boolean = false,
         ): LcpService? {
             if (!LcpClient.isAvailable()) {
                 return null
@@ -164,8 +170,10 @@ public interface LcpService {
                 device = device,
                 network = network,
                 passphrases = passphrases,
+                statusDocuments = StatusDocumentCache(context),
                 context = context,
-                assetRetriever = assetRetriever
+                assetRetriever = assetRetriever,
+                offlineFirstValidation = offlineFirstValidation
             )
         }
     }
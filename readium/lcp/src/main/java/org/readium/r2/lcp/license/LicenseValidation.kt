@@ -23,6 +23,7 @@ import org.readium.r2.lcp.service.DeviceService
 import org.readium.r2.lcp.service.LcpClient
 import org.readium.r2.lcp.service.NetworkService
 import org.readium.r2.lcp.service.PassphrasesService
+import org.readium.r2.lcp.service.StatusDocumentCache
 import org.readium.r2.shared.util.Instant
 import org.readium.r2.shared.util.getOrElse
 import org.readium.r2.shared.util.mediatype.MediaType
@@ -52,8 +53,6 @@ internal typealias Context = Either<LcpClient.Context, LcpError.LicenseStatus>
 
 internal typealias Observer = (ValidatedDocuments?, Exception?) -> Unit
 
-private var observers: MutableList<Pair<Observer, ObserverPolicy>> = mutableListOf()
-
 internal enum class ObserverPolicy {
     Once,
     Always,
@@ -78,6 +77,10 @@ internal sealed class State {
     data class fetchStatus(val license: LicenseDocument) : State()
     data class validateStatus(val license: LicenseDocument, val data: ByteArray) : State()
     data class fetchLicense(val license: LicenseDocument, val status: StatusDocument) : State()
+    data class deferLicenseUpdate(
+        val license: LicenseDocument,
+        val status: StatusDocument,
+    ) : State()
     data class checkLicenseStatus(
         val license: LicenseDocument,
         val status: StatusDocument?,
@@ -100,6 +103,7 @@ internal sealed class Event {
     data class validatedLicense(val license: LicenseDocument) : Event()
     data class retrievedStatusData(val data: ByteArray) : Event()
     data class validatedStatus(val status: StatusDocument) : Event()
+    object deferredLicenseUpdate : Event()
     data class checkedLicenseStatus(val error: LcpError.LicenseStatus?) : Event()
     data class retrievedPassphrase(val passphrase: String) : Event()
     data class validatedIntegrity(val context: LcpClient.Context) : Event()
@@ -111,6 +115,10 @@ internal sealed class Event {
 /**
  * If [ignoreInternetErrors] is true, then the validation won't fail on [LcpError.Network] errors.
  * This should be the case with writable licenses (such as local ones) but not with read-only licences.
+ *
+ * If [offlineFirst] is true and a Status Document was cached for the license, the first
+ * validation uses the cached Status Document and CRL instead of the network, and skips the
+ * license update and device registration. They are then performed by [refresh].
  */
 internal class LicenseValidation(
     var authentication: LcpAuthenticating?,
@@ -120,10 +128,25 @@ internal class LicenseValidation(
     val device: DeviceService,
     val network: NetworkService,
     val passphrases: PassphrasesService,
+    val statusDocuments: StatusDocumentCache,
     val context: android.content.Context,
+    val offlineFirst: Boolean = false,
     val onLicenseValidated: (LicenseDocument) -> Unit,
 ) {
 
+    private var observers: MutableList<Pair<Observer, ObserverPolicy>> = mutableListOf()
+
+    /**
+     * Whether the network requests are deferred until the license is valid for the first time.
+     */
+    private var isDeferringNetwork: Boolean = offlineFirst
+
+    /**
+     * Whether network requests were skipped during the validation, and need a [refresh].
+     */
+    var hasDeferredNetworkRequests: Boolean = false
+        private set
+
     var state: State = State.start
         set(newValue) {
             field = newValue
@@ -194,7 +217,10 @@ internal class LicenseValidation(
         }
         state<State.validateStatus> {
             on<Event.validatedStatus> {
-                if (license.updated < it.status.licenseUpdated) {
+                if (license.updated < it.status.licenseUpdated && isDeferringNetwork) {
+                    if (DEBUG) Timber.d("State.deferLicenseUpdate(license, it.status)")
+                    transitionTo(State.deferLicenseUpdate(license, it.status))
+                } else if (license.updated < it.status.licenseUpdated) {
                     if (DEBUG) Timber.d("State.fetchLicense(license, it.status)")
                     transitionTo(State.fetchLicense(license, it.status))
                 } else {
@@ -217,6 +243,14 @@ internal class LicenseValidation(
                 transitionTo(State.checkLicenseStatus(license, status, true))
             }
         }
+        state<State.deferLicenseUpdate> {
+            on<Event.deferredLicenseUpdate> {
+                // Validates the current license with the cached Status Document, as when the
+                // update fails.
+                if (DEBUG) Timber.d("State.checkLicenseStatus(license, status)")
+                transitionTo(State.checkLicenseStatus(license, status, true))
+            }
+        }
         state<State.checkLicenseStatus> {
             on<Event.checkedLicenseStatus> {
                 it.error?.let { error ->
@@ -313,8 +347,12 @@ internal class LicenseValidation(
                     is State.start -> notifyObservers(documents = null, error = null)
                     is State.validateLicense -> validateLicense(state.data)
                     is State.fetchStatus -> fetchStatus(state.license)
-                    is State.validateStatus -> validateStatus(state.data)
+                    is State.validateStatus -> validateStatus(state.license, state.data)
                     is State.fetchLicense -> fetchLicense(state.status)
+                    is State.deferLicenseUpdate -> {
+                        hasDeferredNetworkRequests = true
+                        raise(Event.deferredLicenseUpdate)
+                    }
                     is State.checkLicenseStatus -> checkLicenseStatus(
                         state.license,
                         state.status,
@@ -323,7 +361,10 @@ internal class LicenseValidation(
                     is State.retrievePassphrase -> requestPassphrase(state.license)
                     is State.validateIntegrity -> validateIntegrity(state.license, state.passphrase)
                     is State.registerDevice -> registerDevice(state.documents.license, state.link)
-                    is State.valid -> notifyObservers(state.documents, null)
+                    is State.valid -> {
+                        isDeferringNetwork = false
+                        notifyObservers(state.documents, null)
+                    }
                     is State.failure -> notifyObservers(null, state.error)
                     State.cancelled -> notifyObservers(null, null)
                 }
@@ -359,6 +400,20 @@ internal class LicenseValidation(
     }
 
     private suspend fun fetchStatus(license: LicenseDocument) {
+        if (isDeferringNetwork) {
+            statusDocuments.get(license.id)?.let { data ->
+                hasDeferredNetworkRequests = true
+                raise(Event.retrievedStatusData(data))
+                return
+            }
+        }
+
+        // Without a cached Status Document, the validation goes to the network as usual.
+        isDeferringNetwork = false
+        raise(Event.retrievedStatusData(fetchStatusData(license)))
+    }
+
+    private suspend fun fetchStatusData(license: LicenseDocument): ByteArray {
         val url = license.url(
             LicenseDocument.Rel.Status,
             preferredType = MediaType.LCP_STATUS_DOCUMENT
@@ -370,13 +425,20 @@ internal class LicenseValidation(
             timeout = timeout,
             headers = mapOf("Accept" to MediaType.LCP_STATUS_DOCUMENT.toString())
         )
-            .getOrElse { throw LcpException(LcpError.Network(it)) }
+            .getOrElse {
+                // The license is unknown to the License Status server.
+                if (it.status == 404 || it.status == 410) {
+                    statusDocuments.remove(license.id)
+                }
+                throw LcpException(LcpError.Network(it))
+            }
 
-        raise(Event.retrievedStatusData(data))
+        return data
     }
 
-    private fun validateStatus(data: ByteArray) {
+    private fun validateStatus(license: LicenseDocument, data: ByteArray) {
         val status = StatusDocument(data = data)
+        statusDocuments.put(license.id, data)
         raise(Event.validatedStatus(status))
     }
 
@@ -457,16 +519,49 @@ internal class LicenseValidation(
         if (!supportedProfiles.contains(profile)) {
             throw LcpException(LcpError.LicenseProfileNotSupported)
         }
-        val context = LcpClient.createContext(license.json.toString(), passphrase, crl.retrieve())
+        val pemCrl = crl.retrieveLocal()
+            ?.takeIf { isDeferringNetwork }
+            ?.also { hasDeferredNetworkRequests = true }
+            ?: crl.retrieve()
+        val context = LcpClient.createContext(license.json.toString(), passphrase, pemCrl)
         raise(Event.validatedIntegrity(context))
     }
 
     private suspend fun registerDevice(license: LicenseDocument, link: Link) {
         if (DEBUG) Timber.d("registerDevice")
+        if (isDeferringNetwork) {
+            hasDeferredNetworkRequests = true
+            raise(Event.registeredDevice(null))
+            return
+        }
         val data = device.registerLicense(license, link)
         raise(Event.registeredDevice(data))
     }
 
+    /**
+     * Fetches the Status Document and the CRL, to validate again the license with the network
+     * requests deferred by an offline-first validation.
+     *
+     * The observers are notified if the license documents change.
+     */
+    suspend fun refresh() {
+        try {
+            crl.refreshIfExpired()
+        } catch (e: Exception) {
+            if (DEBUG) Timber.e(e)
+        }
+
+        val license = (state as? State.valid)?.documents?.license
+            ?: return
+
+        try {
+            val data = fetchStatusData(license)
+            validate(Document.status(data)) { _, _ -> }
+        } catch (e: Exception) {
+            if (DEBUG) Timber.e(e)
+        }
+    }
+
     companion object {
         fun observe(
             licenseValidation: LicenseValidation,
@@ -489,7 +584,7 @@ internal class LicenseValidation(
             if (notified && policy != ObserverPolicy.Always) {
                 return
             }
-            observers.add(Pair(observer, policy))
+            licenseValidation.observers.add(Pair(observer, policy))
         }
     }
 }
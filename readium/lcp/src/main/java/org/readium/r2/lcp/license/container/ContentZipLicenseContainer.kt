@@ -9,11 +9,9 @@ package org.readium.r2.lcp.license.container
 import android.content.ContentResolver
 import android.content.Context
 import android.net.Uri
-import java.io.ByteArrayInputStream
 import java.io.File
 import java.io.FileOutputStream
 import java.util.UUID
-import java.util.zip.ZipFile
 import org.readium.r2.lcp.LcpError
 import org.readium.r2.lcp.LcpException
 import org.readium.r2.lcp.license.model.LicenseDocument
@@ -40,22 +38,17 @@ internal class ContentZipLicenseContainer(
     override fun write(license: LicenseDocument) {
         try {
             val tmpZip = File(cache, UUID.randomUUID().toString())
-            contentResolver.openInputStream(zipUri)
-                ?.use { it.copyTo(FileOutputStream(tmpZip)) }
-                ?: throw LcpException(LcpError.Container.WriteFailed(pathInZip))
-            val tmpZipFile = ZipFile(tmpZip)
-
-            val outStream = contentResolver.openOutputStream(zipUri, "wt")
-                ?: throw LcpException(LcpError.Container.WriteFailed(pathInZip))
-            tmpZipFile.addOrReplaceEntry(
-                pathInZip.toString(),
-                ByteArrayInputStream(license.toByteArray()),
-                outStream
-            )
-
-            outStream.close()
-            tmpZipFile.close()
-            tmpZip.delete()
+            try {
+                contentResolver.openInputStream(zipUri)
+                    ?.use { input -> FileOutputStream(tmpZip).use { input.copyTo(it) } }
+                    ?: throw LcpException(LcpError.Container.WriteFailed(pathInZip))
+
+                val outStream = contentResolver.openOutputStream(zipUri, "wt")
+                    ?: throw LcpException(LcpError.Container.WriteFailed(pathInZip))
+                tmpZip.addOrReplaceEntry(pathInZip.toString(), license.toByteArray(), outStream)
+            } finally {
+                tmpZip.delete()
+            }
         } catch (e: Exception) {
             throw LcpException(LcpError.Container.WriteFailed(pathInZip))
         }
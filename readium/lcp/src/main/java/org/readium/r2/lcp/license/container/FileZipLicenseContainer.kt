@@ -9,7 +9,6 @@
 
 package org.readium.r2.lcp.license.container
 
-import java.io.ByteArrayInputStream
 import java.io.File
 import java.util.zip.ZipFile
 import org.readium.r2.lcp.LcpError
@@ -52,16 +51,7 @@ internal class FileZipLicenseContainer(
         try {
             val source = File(zip)
             val tmpZip = File("$zip.tmp")
-            val zipFile = ZipFile(source)
-            try {
-                zipFile.addOrReplaceEntry(
-                    pathInZIP.toString(),
-                    ByteArrayInputStream(license.toByteArray()),
-                    tmpZip
-                )
-            } finally {
-                zipFile.close()
-            }
+            source.addOrReplaceEntry(pathInZIP.toString(), license.toByteArray(), tmpZip)
             tmpZip.moveTo(source)
         } catch (e: Exception) {
             throw LcpException(LcpError.Container.WriteFailed(pathInZIP))
@@ -7,89 +7,108 @@
 package org.readium.r2.lcp.license.container
 
 import java.io.File
+import java.io.FileInputStream
 import java.io.FileOutputStream
-import java.io.InputStream
 import java.io.OutputStream
-import java.util.zip.ZipEntry
-import java.util.zip.ZipFile
-import java.util.zip.ZipOutputStream
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import org.readium.r2.shared.util.zip.compress.archivers.zip.ZipArchiveEntry
+import org.readium.r2.shared.util.zip.compress.archivers.zip.ZipArchiveOutputStream
+import org.readium.r2.shared.util.zip.compress.archivers.zip.ZipFile
+import org.readium.r2.shared.util.zip.jvm.NonWritableChannelException
+import org.readium.r2.shared.util.zip.jvm.SeekableByteChannel
 
-internal fun ZipFile.addOrReplaceEntry(
+internal fun File.addOrReplaceEntry(
     name: String,
-    inputStream: InputStream,
+    bytes: ByteArray,
     dest: File,
 ) {
-    addOrReplaceEntry(name, inputStream, FileOutputStream(dest))
+    addOrReplaceEntry(name, bytes, FileOutputStream(dest))
 }
 
-internal fun ZipFile.addOrReplaceEntry(
+/**
+ * Writes to [dest] a copy of this ZIP archive, in which the entry [name] is added or replaced
+ * with [bytes].
+ *
+ * The other entries are copied with their compressed data as is, so only the new entry is
+ * deflated, whatever the size of the archive.
+ */
+internal fun File.addOrReplaceEntry(
     name: String,
-    inputStream: InputStream,
+    bytes: ByteArray,
     dest: OutputStream,
 ) {
-    val outZip = ZipOutputStream(dest)
-    var entryAdded = false
-
-    val newEntry = ZipEntry(name)
-    newEntry.method = ZipEntry.DEFLATED
-    getEntry(name)?.let { originalEntry ->
-        newEntry.extra = originalEntry.extra
-        newEntry.comment = originalEntry.comment
-    }
+    ZipFile(ReadOnlyFileChannel(FileInputStream(this).channel)).use { zipFile ->
+        ZipArchiveOutputStream(dest.buffered()).use { outZip ->
+            var entryAdded = false
 
-    for (entry in entries()) {
-        if (entry.name == name) {
-            addEntry(newEntry, inputStream, outZip)
-            entryAdded = true
-        } else {
-            copyEntry(entry.copy(), this, outZip)
-        }
-    }
+            for (entry in zipFile.entriesInPhysicalOrder.toList()) {
+                if (entry.name == name) {
+                    if (!entryAdded) {
+                        outZip.addEntry(name, bytes, comment = entry.comment)
+                        entryAdded = true
+                    }
+                } else {
+                    zipFile.getRawInputStream(entry).use {
+                        outZip.addRawArchiveEntry(entry, it)
+                    }
+                }
+            }
 
-    if (!entryAdded) {
-        addEntry(newEntry, inputStream, outZip)
-    }
+            if (!entryAdded) {
+                outZip.addEntry(name, bytes)
+            }
 
-    outZip.finish()
-    outZip.close()
+            outZip.finish()
+        }
+    }
 }
 
-private fun ZipEntry.copy(): ZipEntry {
-    val copy = ZipEntry(name)
-    if (crc != -1L) {
-        copy.crc = crc
-    }
-    if (method != -1) {
-        copy.method = method
-    }
-    if (size >= 0) {
-        copy.size = size
-    }
-    if (extra != null) {
-        copy.extra = extra
-    }
-    copy.comment = comment
-    copy.time = time
-    return copy
+private fun ZipArchiveOutputStream.addEntry(
+    name: String,
+    bytes: ByteArray,
+    comment: String? = null,
+) {
+    val entry = ZipArchiveEntry(name)
+    entry.method = ZipArchiveEntry.DEFLATED
+    entry.comment = comment
+    putArchiveEntry(entry)
+    write(bytes)
+    closeArchiveEntry()
 }
 
 /**
- * If STORED method is used, entry must contain CRC and size.
+ * Adapts a [FileChannel] to the [SeekableByteChannel] of the vendored ZIP library, to read an
+ * archive.
  */
-private fun addEntry(
-    entry: ZipEntry,
-    source: InputStream,
-    outStream: ZipOutputStream,
-) {
-    outStream.putNextEntry(entry)
-    source.copyTo(outStream)
-    outStream.closeEntry()
-}
+private class ReadOnlyFileChannel(
+    private val channel: FileChannel,
+) : SeekableByteChannel {
 
-private fun copyEntry(
-    entry: ZipEntry,
-    srcZip: ZipFile,
-    outStream: ZipOutputStream,
-) {
-    addEntry(entry, srcZip.getInputStream(entry), outStream)
+    override fun read(buffer: ByteBuffer): Int =
+        channel.read(buffer)
+
+    override fun write(buffer: ByteBuffer): Int =
+        throw NonWritableChannelException()
+
+    override fun position(): Long =
+        channel.position()
+
+    override fun position(newPosition: Long): SeekableByteChannel {
+        channel.position(newPosition)
+        return this
+    }
+
+    override fun size(): Long =
+        channel.size()
+
+    override fun truncate(size: Long): SeekableByteChannel =
+        throw NonWritableChannelException()
+
+    override fun isOpen(): Boolean =
+        channel.isOpen
+
+    override fun close() {
+        channel.close()
+    }
 }
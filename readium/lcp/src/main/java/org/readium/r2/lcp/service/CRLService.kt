@@ -51,6 +51,22 @@ internal class CRLService(val network: NetworkService, val context: Context) {
         }
     }
 
+    /**
+     * Returns the last CRL retrieved, even if it expired, without using the network.
+     */
+    fun retrieveLocal(): String? =
+        readLocal().first
+
+    /**
+     * Fetches a new CRL if the local one expired.
+     */
+    suspend fun refreshIfExpired() {
+        val (localCRL, isExpired) = readLocal()
+        if (localCRL == null || isExpired) {
+            saveLocal(fetch())
+        }
+    }
+
     private suspend fun fetch(): String {
         val url = "http://crl.edrlab.telesec.de/rl/EDRLab_CA.crl"
         val data = network.fetch(url, NetworkService.Method.GET)
@@ -19,50 +19,34 @@ internal object LcpClient {
         companion object {
 
             fun fromDRMContext(drmContext: Any): Context =
-                with(Class.forName("org.readium.lcp.sdk.DRMContext")) {
-                    val encryptedContentKey = getMethod("getEncryptedContentKey").invoke(drmContext) as String
-                    val hashedPassphrase = getMethod("getHashedPassphrase").invoke(drmContext) as String
-                    val profile = getMethod("getProfile").invoke(drmContext) as String
-                    val token = getMethod("getToken").invoke(drmContext) as String
-                    Context(hashedPassphrase, encryptedContentKey, token, profile)
-                }
+                bindings.contextOf(drmContext)
+                    .also { it.drmContext = drmContext }
         }
 
-        fun toDRMContext(): Any =
-            Class.forName("org.readium.lcp.sdk.DRMContext")
-                .getConstructor(
-                    String::class.java,
-                    String::class.java,
-                    String::class.java,
-                    String::class.java
-                )
-                .newInstance(hashedPassphrase, encryptedContentKey, token, profile)
-    }
+        /**
+         * Native DRM context, created once and reused for every decryption with this context.
+         */
+        @Volatile
+        private var drmContext: Any? = null
 
-    private val instance: Any by lazy {
-        klass.getDeclaredConstructor().newInstance()
+        fun toDRMContext(): Any =
+            drmContext
+                ?: bindings.newDRMContext(hashedPassphrase, encryptedContentKey, token, profile)
+                    .also { drmContext = it }
     }
 
-    private val klass: Class<*> by lazy {
-        Class.forName("org.readium.lcp.sdk.Lcp")
+    private val bindings: LcpSdkBindings by lazy {
+        LcpSdkBindings()
     }
 
     fun isAvailable(): Boolean = tryOr(false) {
-        instance
+        bindings
         true
     }
 
     fun createContext(jsonLicense: String, hashedPassphrases: String, pemCrl: String): Context =
         try {
-            val drmContext = klass
-                .getMethod(
-                    "createContext",
-                    String::class.java,
-                    String::class.java,
-                    String::class.java
-                )
-                .invoke(instance, jsonLicense, hashedPassphrases, pemCrl)!!
-
+            val drmContext = bindings.createContext(jsonLicense, hashedPassphrases, pemCrl)
             Context.fromDRMContext(drmContext)
         } catch (e: InvocationTargetException) {
             throw mapException(e.targetException)
@@ -70,23 +54,14 @@ internal object LcpClient {
 
     fun decrypt(context: Context, encryptedData: ByteArray): ByteArray =
         try {
-            klass
-                .getMethod(
-                    "decrypt",
-                    Class.forName("org.readium.lcp.sdk.DRMContext"),
-                    ByteArray::class.java
-                )
-                .invoke(instance, context.toDRMContext(), encryptedData)
-                as ByteArray
+            bindings.decrypt(context.toDRMContext(), encryptedData)
         } catch (e: InvocationTargetException) {
             throw mapException(e.targetException)
         }
 
     fun findOneValidPassphrase(jsonLicense: String, hashedPassphrases: List<String>): String =
         try {
-            klass
-                .getMethod("findOneValidPassphrase", String::class.java, Array<String>::class.java)
-                .invoke(instance, jsonLicense, hashedPassphrases.toTypedArray()) as String
+            bindings.findOneValidPassphrase(jsonLicense, hashedPassphrases.toTypedArray())
         } catch (e: InvocationTargetException) {
             throw mapException(e.targetException)
         }
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2024 Readium Foundation. All rights reserved.
+ * Use of this source code is governed by the BSD-style license
+ * available in the top-level LICENSE file of the project.
+ */
+
+package org.readium.r2.lcp.service
+
+import java.lang.reflect.Constructor
+import java.lang.reflect.Method
+
+/**
+ * Reflective bindings to the native LCP SDK, which is an optional runtime dependency.
+ *
+ * The SDK classes, constructors and methods are looked up once, so that the frequent calls
+ * such as [decrypt] only pay for the invocation.
+ *
+ * The class names can be overridden for testing purposes.
+ */
+internal class LcpSdkBindings(
+    lcpClassName: String = "org.readium.lcp.sdk.Lcp",
+    drmContextClassName: String = "org.readium.lcp.sdk.DRMContext",
+) {
+
+    private val lcpClass: Class<*> =
+        Class.forName(lcpClassName)
+
+    private val drmContextClass: Class<*> =
+        Class.forName(drmContextClassName)
+
+    private val instance: Any =
+        lcpClass.getDeclaredConstructor().newInstance()
+
+    private val createContextMethod: Method =
+        lcpClass.getMethod("createContext", String::class.java, String::class.java, String::class.java)
+
+    private val decryptMethod: Method =
+        lcpClass.getMethod("decrypt", drmContextClass, ByteArray::class.java)
+
+    private val findOneValidPassphraseMethod: Method =
+        lcpClass.getMethod("findOneValidPassphrase", String::class.java, Array<String>::class.java)
+
+    private val drmContextConstructor: Constructor<*> =
+        drmContextClass.getConstructor(
+            String::class.java,
+            String::class.java,
+            String::class.java,
+            String::class.java
+        )
+
+    private val getHashedPassphraseMethod: Method =
+        drmContextClass.getMethod("getHashedPassphrase")
+
+    private val getEncryptedContentKeyMethod: Method =
+        drmContextClass.getMethod("getEncryptedContentKey")
+
+    private val getTokenMethod: Method =
+        drmContextClass.getMethod("getToken")
+
+    private val getProfileMethod: Method =
+        drmContextClass.getMethod("getProfile")
+
+    fun createContext(jsonLicense: String, hashedPassphrases: String, pemCrl: String): Any =
+        createContextMethod.invoke(instance, jsonLicense, hashedPassphrases, pemCrl)!!
+
+    fun decrypt(drmContext: Any, encryptedData: ByteArray): ByteArray =
+        decryptMethod.invoke(instance, drmContext, encryptedData) as ByteArray
+
+    fun findOneValidPassphrase(jsonLicense: String, hashedPassphrases: Array<String>): String =
+        findOneValidPassphraseMethod.invoke(instance, jsonLicense, hashedPassphrases) as String
+
+    fun newDRMContext(
+        hashedPassphrase: String,
+        encryptedContentKey: String,
+        token: String,
+        profile: String,
+    ): Any =
+        drmContextConstructor.newInstance(hashedPassphrase, encryptedContentKey, token, profile)
+
+    fun contextOf(drmContext: Any): LcpClient.Context =
+        LcpClient.Context(
+            hashedPassphrase = getHashedPassphraseMethod.invoke(drmContext) as String,
+            encryptedContentKey = getEncryptedContentKeyMethod.invoke(drmContext) as String,
+            token = getTokenMethod.invoke(drmContext) as String,
+            profile = getProfileMethod.invoke(drmContext) as String
+        )
+}
@@ -23,6 +23,8 @@ import kotlinx.coroutines.MainScope
 import kotlinx.coroutines.ensureActive
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.suspendCancellableCoroutine
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
 import kotlinx.coroutines.withContext
 import org.readium.r2.lcp.LcpAuthenticating
 import org.readium.r2.lcp.LcpContentProtection
@@ -60,8 +62,10 @@ internal class LicensesService(
     private val device: DeviceService,
     private val network: NetworkService,
     private val passphrases: PassphrasesService,
+    private val statusDocuments: StatusDocumentCache,
     private val context: Context,
     private val assetRetriever: AssetRetriever,
+    private val offlineFirstValidation: Boolean = false,
 ) : LcpService, CoroutineScope by MainScope() {
 
     override fun contentProtection(
@@ -125,46 +129,88 @@ internal class LicensesService(
         lcpl: ByteArray,
         onProgress: (Double) -> Unit,
     ): Try<LcpService.AcquiredPublication, LcpError> {
-        val destination =
+        val licenseDocument =
             try {
-                withContext(Dispatchers.IO) {
-                    File.createTempFile("lcp-${System.currentTimeMillis()}", ".tmp")
-                }
+                LicenseDocument(lcpl)
             } catch (e: Exception) {
                 return Try.failure(LcpError.wrap(e))
             }
+        Timber.d("license ${licenseDocument.json}")
+
+        // The partial download depends only on the license, to resume an interrupted download.
+        // The RangeDownloader resumes it only if the URL, length and validator of the content
+        // didn't change.
+        val partialFile = File(
+            context.cacheDir,
+            "lcp-${licenseDocument.id.replace(Regex("[^A-Za-z0-9_-]"), "_")}.part"
+        )
 
         return try {
-            val licenseDocument = LicenseDocument(lcpl)
-            Timber.d("license ${licenseDocument.json}")
-            fetchPublication(licenseDocument, destination, onProgress).let { Try.success(it) }
+            fetchPublication(licenseDocument, partialFile, onProgress).let { Try.success(it) }
         } catch (e: CancellationException) {
             throw e
         } catch (e: Exception) {
-            tryOrLog { destination.delete() }
+            // Keeps the partial download if it can be resumed.
+            if (!File(partialFile.path + ".parts").exists()) {
+                tryOrLog { partialFile.delete() }
+            }
             Try.failure(LcpError.wrap(e))
         }
     }
 
     private suspend fun fetchPublication(
         license: LicenseDocument,
-        destination: File,
+        partialFile: File,
         onProgress: (Double) -> Unit,
     ): LcpService.AcquiredPublication {
         val link = license.link(LicenseDocument.Rel.Publication)!!
         val url = link.url()
 
+        // Concurrent acquisitions of the same license wait for each other instead of writing to
+        // the same partial file.
+        val (download, destination) = downloadMutex(partialFile).withLock {
+            val download = network.download(
+                url,
+                partialFile,
+                mediaType = link.mediaType,
+                onProgress = onProgress
+            )
+
+            // Moves the complete download to a unique file, which a later acquisition of the same
+            // license can't overwrite.
+            val destination = withContext(Dispatchers.IO) {
+                File.createTempFile("lcp-", ".tmp", partialFile.parentFile).also {
+                    if (!partialFile.renameTo(it)) {
+                        it.delete()
+                        throw LcpException(
+                            LcpError.Runtime("Failed to move the downloaded publication.")
+                        )
+                    }
+                }
+            }
+            download to destination
+        }
+
         Timber.i("LCP destination $destination")
 
-        val serverMediaType = network.download(
-            url,
-            destination,
-            mediaType = link.mediaType,
-            onProgress = onProgress
-        )
+        return try {
+            createAcquiredPublication(license, destination, download)
+        } catch (e: Exception) {
+            tryOrLog { destination.delete() }
+            throw e
+        }
+    }
 
+    private suspend fun createAcquiredPublication(
+        license: LicenseDocument,
+        destination: File,
+        download: NetworkService.Download,
+    ): LcpService.AcquiredPublication {
+        val serverMediaType = download.mediaType
+
+        // The SHA-256 sum is computed during the download.
         val hashIsCorrect = license.publicationLink.hash
-            ?.let { destination.checkSha256(it) }
+            ?.let { checkSha256(download.sha256, it) }
 
         if (hashIsCorrect == false) {
             throw LcpException(
@@ -217,10 +263,17 @@ internal class LicensesService(
      * Checks that the sha256 sum of file content matches the expected one.
      * Returns null if we can't decide.
      */
-    @OptIn(ExperimentalEncodingApi::class, ExperimentalStdlibApi::class)
     private fun File.checkSha256(expected: String): Boolean? {
         val actual = sha256() ?: return null
+        return checkSha256(actual, expected)
+    }
 
+    /**
+     * Checks that the [actual] sha256 sum matches the [expected] one.
+     * Returns null if we can't decide.
+     */
+    @OptIn(ExperimentalEncodingApi::class, ExperimentalStdlibApi::class)
+    private fun checkSha256(actual: ByteArray, expected: String): Boolean? {
         // Supports hexadecimal encoding for compatibility.
         // See https://github.com/readium/lcp-specs/issues/52
         return when (expected.length) {
@@ -315,9 +368,11 @@ internal class LicensesService(
             device = this.device,
             network = this.network,
             passphrases = this.passphrases,
+            statusDocuments = this.statusDocuments,
             context = this.context,
             allowUserInteraction = allowUserInteraction,
-            ignoreInternetErrors = container is WritableLicenseContainer
+            ignoreInternetErrors = container is WritableLicenseContainer,
+            offlineFirst = offlineFirstValidation
         ) { licenseDocument ->
             try {
                 launch {
@@ -347,6 +402,13 @@ internal class LicensesService(
                 Timber.d("validated documents $it")
                 try {
                     documents.getContext()
+                    if (validation.hasDeferredNetworkRequests) {
+                        // Refreshes the license in the background, the License will observe
+                        // the updated documents.
+                        launch(Dispatchers.Default) {
+                            validation.refresh()
+                        }
+                    }
                     launch {
                         completion(
                             License(
@@ -370,4 +432,15 @@ internal class LicensesService(
             }
         }
     }
+
+    private fun downloadMutex(partialFile: File): Mutex =
+        downloadMutexes[partialFile.name.hashCode().mod(downloadMutexes.size)]
+
+    private companion object {
+
+        /**
+         * Locks striped by partial download file, shared by all the [LicensesService]s.
+         */
+        val downloadMutexes: Array<Mutex> = Array(16) { Mutex() }
+    }
 }
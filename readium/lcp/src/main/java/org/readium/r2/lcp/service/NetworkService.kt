@@ -10,13 +10,12 @@
 package org.readium.r2.lcp.service
 
 import android.net.Uri
-import java.io.BufferedInputStream
 import java.io.File
-import java.io.FileOutputStream
 import java.net.HttpURLConnection
 import java.net.URL
-import kotlin.math.round
+import kotlin.coroutines.coroutineContext
 import kotlin.time.Duration
+import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.ensureActive
 import kotlinx.coroutines.withContext
@@ -34,7 +33,9 @@ internal class NetworkException(val status: Int?, cause: Throwable? = null) : Ex
     cause
 )
 
-internal class NetworkService {
+internal class NetworkService(
+    private val downloader: RangeDownloader = RangeDownloader(),
+) {
     enum class Method(val value: String) {
         GET("GET"),
         POST("POST"),
@@ -93,65 +94,38 @@ internal class NetworkService {
             }
         }
 
+    /**
+     * Downloads [url] to [destination], resuming a previous interrupted download to the same
+     * [destination] if possible.
+     */
     suspend fun download(
         url: Url,
         destination: File,
         mediaType: MediaType? = null,
         onProgress: (Double) -> Unit,
-    ): MediaType? = withContext(Dispatchers.IO) {
+    ): Download {
         coroutineContext.ensureActive()
         try {
-            val connection = URL(url.toString()).openConnection() as HttpURLConnection
-            if (connection.responseCode >= 400) {
-                throw LcpException(LcpError.Network(NetworkException(connection.responseCode)))
-            }
-
-            var readLength = 0L
-            val expectedLength =
-                if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.N) {
-                    connection.contentLengthLong.toDouble()
-                } else {
-                    connection.contentLength.toDouble()
-                }
-            var lastProgress = 0.0
-
-            BufferedInputStream(connection.inputStream).use { input ->
-                FileOutputStream(destination).use { output ->
-                    val buf = ByteArray(2048)
-                    var n: Int
-                    while (-1 != input.read(buf).also { n = it }) {
-                        coroutineContext.ensureActive()
-                        output.write(buf, 0, n)
-                        readLength += n
-
-                        if (expectedLength > 0) {
-                            // Rounds the progress to avoid notifying too much which my decrease
-                            // performances.
-                            val progress = (readLength / expectedLength)
-                                .coerceIn(0.0, 1.0).roundToDecimals(2)
-                            if (lastProgress < progress) {
-                                withContext(Dispatchers.Main) {
-                                    onProgress(progress)
-                                }
-                            }
-                            lastProgress = progress
-                        }
-                    }
-                }
-            }
-
-            connection.contentType
-                ?.let { MediaType(it) }
-                ?: mediaType
+            val result = downloader.download(url, destination, onProgress)
+
+            return Download(
+                mediaType = result.contentType?.let { MediaType(it) } ?: mediaType,
+                sha256 = result.sha256
+            )
+        } catch (e: CancellationException) {
+            throw e
         } catch (e: Exception) {
             Timber.e(e)
             throw LcpException(LcpError.Network(e))
         }
     }
-}
 
-private fun Double.roundToDecimals(decimals: Int): Double {
-    var multiplier = 1.0
-    repeat(decimals) { multiplier *= 10 }
-    return round(this * multiplier) / multiplier
+    /**
+     * @param mediaType Media type of the downloaded file.
+     * @param sha256 SHA-256 sum of the downloaded file.
+     */
+    class Download(
+        val mediaType: MediaType?,
+        val sha256: ByteArray,
+    )
 }
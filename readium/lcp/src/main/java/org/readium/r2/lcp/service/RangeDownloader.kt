@@ -0,0 +1,496 @@
+/*
+ * Copyright 2024 Readium Foundation. All rights reserved.
+ * Use of this source code is governed by the BSD-style license
+ * available in the top-level LICENSE file of the project.
+ */
+
+@file:OptIn(InternalReadiumApi::class)
+
+package org.readium.r2.lcp.service
+
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.net.HttpURLConnection
+import java.net.URL
+import java.nio.ByteBuffer
+import java.nio.channels.Channels
+import java.nio.channels.FileChannel
+import java.security.MessageDigest
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.coroutines.coroutineContext
+import kotlin.math.round
+import kotlin.time.Duration
+import kotlin.time.Duration.Companion.milliseconds
+import kotlin.time.Duration.Companion.minutes
+import kotlin.time.Duration.Companion.seconds
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+import org.readium.r2.shared.InternalReadiumApi
+import org.readium.r2.shared.extensions.tryOrLog
+import org.readium.r2.shared.extensions.tryOrNull
+import org.readium.r2.shared.util.Url
+
+/**
+ * Downloads a file with several parallel HTTP range requests, computing its SHA-256 sum while it
+ * is written.
+ *
+ * The progress of an interrupted download is kept next to the destination file, so that a new
+ * download of the same URL to the same destination resumes it, as long as the server identifies
+ * the content with an `ETag` or `Last-Modified` header. Dropped connections and error responses
+ * are also retried during a download, up to [maxRetries] times in a row, with an exponential
+ * backoff or after the delay requested by the server with `Retry-After`. The download is aborted
+ * only if the content changed, that is when the server answers with `200` or `412`.
+ *
+ * When the server doesn't support range requests, the file is downloaded with a single request.
+ *
+ * @param maxConnections Maximum number of parallel requests.
+ * @param minSegmentLength Minimum length of the segment downloaded by each request.
+ * @param bufferSize Size of the direct buffers used to write and hash the file.
+ * @param connectTimeout Timeout used when establishing a connection.
+ * @param readTimeout Timeout used when reading a response, after which a stalled request is
+ *        retried.
+ */
+internal class RangeDownloader(
+    private val maxConnections: Int = 4,
+    private val minSegmentLength: Long = 8L * 1024 * 1024,
+    private val bufferSize: Int = 256 * 1024,
+    private val maxRetries: Int = 3,
+    private val connectTimeout: Duration = 15.seconds,
+    private val readTimeout: Duration = 30.seconds,
+) {
+
+    /**
+     * @param contentType Media type declared by the server.
+     * @param sha256 SHA-256 sum of the downloaded file.
+     */
+    class Result(
+        val contentType: String?,
+        val sha256: ByteArray,
+    )
+
+    /**
+     * Range of the file downloaded by a single request, of which [written] bytes are already
+     * in the destination file.
+     */
+    private class Segment(
+        val start: Long,
+        val end: Long,
+        val written: AtomicLong,
+    ) {
+        val isComplete: Boolean get() =
+            start + written.get() >= end
+    }
+
+    /**
+     * Downloads [url] to [destination], resuming a previous download if possible.
+     *
+     * @throws NetworkException if the server responded with an error.
+     * @throws IOException if the download failed, in which case it can be resumed.
+     */
+    suspend fun download(
+        url: Url,
+        destination: File,
+        onProgress: (Double) -> Unit,
+    ): Result = withContext(Dispatchers.IO) {
+        val stateFile = File(destination.path + ".parts")
+
+        // The first byte is requested to know whether the server supports range requests.
+        val probe = openConnection(url, range = 0L..0L)
+        val status = probe.responseCode
+        if (status >= 400) {
+            probe.disconnect()
+            throw NetworkException(status)
+        }
+        val contentType = probe.contentType
+        val length = probe.getHeaderField("Content-Range")
+            ?.takeIf { status == HttpURLConnection.HTTP_PARTIAL }
+            ?.substringAfterLast('/')
+            ?.toLongOrNull()
+
+        val validator = probe.getHeaderField("ETag")?.takeUnless { it.startsWith("W/") }
+            ?: probe.getHeaderField("Last-Modified")
+
+        if (length == null) {
+            tryOrLog { stateFile.delete() }
+            val sha256 =
+                if (status == HttpURLConnection.HTTP_OK) {
+                    downloadSequentially(probe, destination, onProgress)
+                } else {
+                    probe.disconnect()
+                    downloadSequentially(openConnection(url), destination, onProgress)
+                }
+            return@withContext Result(contentType, sha256)
+        }
+        probe.disconnect()
+
+        val segments = loadState(stateFile, destination, url, length, validator)
+            ?: createSegments(length).also {
+                RandomAccessFile(destination, "rw").use { file -> file.setLength(length) }
+                saveState(stateFile, url, length, validator, it)
+            }
+
+        val sha256 = RandomAccessFile(destination, "rw").use { file ->
+            downloadSegments(url, file.channel, length, validator, segments, stateFile, onProgress)
+        }
+
+        tryOrLog { stateFile.delete() }
+        Result(contentType, sha256)
+    }
+
+    private fun createSegments(length: Long): List<Segment> {
+        val count = (length / minSegmentLength).toInt().coerceIn(1, maxConnections)
+        val segmentLength = length / count
+        return List(count) { i ->
+            Segment(
+                start = i * segmentLength,
+                end = if (i == count - 1) length else (i + 1) * segmentLength,
+                written = AtomicLong(0)
+            )
+        }
+    }
+
+    private suspend fun downloadSegments(
+        url: Url,
+        file: FileChannel,
+        length: Long,
+        validator: String?,
+        segments: List<Segment>,
+        stateFile: File,
+        onProgress: (Double) -> Unit,
+    ): ByteArray = coroutineScope {
+        val writtenSignal = Channel<Unit>(Channel.CONFLATED)
+        val lock = Any()
+        var lastProgress = 0.0
+        var lastSavedWritten = 0L
+
+        suspend fun onWritten() {
+            writtenSignal.trySend(Unit)
+
+            val written = segments.sumOf { it.written.get() }
+            val progress = (written.toDouble() / length).coerceIn(0.0, 1.0).roundToDecimals(2)
+            val notify = synchronized(lock) {
+                if (written - lastSavedWritten >= STATE_SAVE_INTERVAL) {
+                    lastSavedWritten = written
+                    tryOrLog { saveState(stateFile, url, length, validator, segments) }
+                }
+                (lastProgress < progress).also { if (it) lastProgress = progress }
+            }
+            if (notify) {
+                withContext(Dispatchers.Main) {
+                    onProgress(progress)
+                }
+            }
+        }
+
+        val hash = async { hash(file, segments, writtenSignal) }
+
+        try {
+            segments
+                .filterNot { it.isComplete }
+                .map { segment ->
+                    launch { downloadSegment(url, file, validator, segment) { onWritten() } }
+                }
+                .forEach { it.join() }
+        } finally {
+            synchronized(lock) {
+                tryOrLog { saveState(stateFile, url, length, validator, segments) }
+            }
+        }
+
+        writtenSignal.close()
+        hash.await()
+    }
+
+    private suspend fun downloadSegment(
+        url: Url,
+        file: FileChannel,
+        validator: String?,
+        segment: Segment,
+        onWritten: suspend () -> Unit,
+    ) {
+        val buffer = ByteBuffer.allocateDirect(bufferSize)
+        var failures = 0
+
+        while (!segment.isComplete) {
+            coroutineContext.ensureActive()
+            val connection = openConnection(
+                url,
+                range = (segment.start + segment.written.get()) until segment.end,
+                ifRange = validator
+            )
+            try {
+                val status = connection.responseCode
+                if (status == HttpURLConnection.HTTP_OK ||
+                    status == HttpURLConnection.HTTP_PRECON_FAILED
+                ) {
+                    // The content changed since the download started.
+                    throw NetworkException(status)
+                }
+                if (status != HttpURLConnection.HTTP_PARTIAL) {
+                    // Overloaded or failing servers are retried like dropped connections.
+                    throw UnexpectedStatusException(status, connection.retryAfter())
+                }
+
+                Channels.newChannel(connection.inputStream).use { input ->
+                    while (!segment.isComplete) {
+                        coroutineContext.ensureActive()
+                        buffer.clear()
+                        if (input.read(buffer) == -1) {
+                            break
+                        }
+                        buffer.flip()
+
+                        var position = segment.start + segment.written.get()
+                        val remaining = segment.end - position
+                        if (buffer.remaining() > remaining) {
+                            buffer.limit(remaining.toInt())
+                        }
+                        val read = buffer.remaining()
+                        while (buffer.hasRemaining()) {
+                            position += file.write(buffer, position)
+                        }
+                        segment.written.addAndGet(read.toLong())
+                        failures = 0
+                        onWritten()
+                    }
+                }
+
+                if (!segment.isComplete) {
+                    throw IOException("The connection was closed before the end of the segment.")
+                }
+            } catch (e: IOException) {
+                if (++failures > maxRetries) {
+                    throw (e as? UnexpectedStatusException)
+                        ?.let { NetworkException(it.status) }
+                        ?: e
+                }
+                delay(
+                    (e as? UnexpectedStatusException)?.retryAfter?.coerceAtMost(MAX_RETRY_DELAY)
+                        ?: (1L shl (failures - 1)).seconds
+                )
+            } finally {
+                connection.disconnect()
+            }
+        }
+    }
+
+    /**
+     * Response of a range request with an error [status], which can be retried after the delay
+     * requested by the server.
+     */
+    private class UnexpectedStatusException(
+        val status: Int,
+        val retryAfter: Duration?,
+    ) : IOException("Unexpected HTTP status $status.")
+
+    /**
+     * Reads the `Retry-After` header, given either as a number of seconds or as an HTTP date.
+     */
+    private fun HttpURLConnection.retryAfter(): Duration? {
+        val value = getHeaderField("Retry-After") ?: return null
+        value.trim().toLongOrNull()?.let { return it.coerceAtLeast(0).seconds }
+        val date = getHeaderFieldDate("Retry-After", 0).takeIf { it > 0 } ?: return null
+        return (date - System.currentTimeMillis()).coerceAtLeast(0).milliseconds
+    }
+
+    /**
+     * Computes the SHA-256 sum of the file, following the bytes written contiguously from its
+     * start.
+     */
+    private suspend fun hash(
+        file: FileChannel,
+        segments: List<Segment>,
+        writtenSignal: Channel<Unit>,
+    ): ByteArray {
+        val digest = MessageDigest.getInstance("SHA-256")
+        val buffer = ByteBuffer.allocateDirect(bufferSize)
+        var position = 0L
+
+        for (segment in segments) {
+            while (position < segment.end) {
+                val available = segment.start + segment.written.get()
+                if (position >= available) {
+                    // Waits for more bytes to be written.
+                    writtenSignal.receiveCatching()
+                        .onClosed { throw IOException("The download was interrupted.") }
+                    continue
+                }
+
+                buffer.clear()
+                buffer.limit(minOf(bufferSize.toLong(), available - position).toInt())
+                val read = file.read(buffer, position)
+                if (read <= 0) {
+                    throw IOException("Cannot read the downloaded file.")
+                }
+                buffer.flip()
+                digest.update(buffer)
+                position += read
+            }
+        }
+
+        return digest.digest()
+    }
+
+    private suspend fun downloadSequentially(
+        connection: HttpURLConnection,
+        destination: File,
+        onProgress: (Double) -> Unit,
+    ): ByteArray {
+        try {
+            val status = connection.responseCode
+            if (status >= 400) {
+                throw NetworkException(status)
+            }
+
+            val expectedLength =
+                if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.N) {
+                    connection.contentLengthLong.toDouble()
+                } else {
+                    connection.contentLength.toDouble()
+                }
+            val digest = MessageDigest.getInstance("SHA-256")
+            val buffer = ByteBuffer.allocateDirect(bufferSize)
+            var readLength = 0L
+            var lastProgress = 0.0
+
+            RandomAccessFile(destination, "rw").use { file ->
+                file.setLength(0)
+                val output = file.channel
+                Channels.newChannel(connection.inputStream).use { input ->
+                    while (true) {
+                        coroutineContext.ensureActive()
+                        buffer.clear()
+                        if (input.read(buffer) == -1) {
+                            break
+                        }
+                        buffer.flip()
+                        buffer.mark()
+                        digest.update(buffer)
+                        buffer.reset()
+                        while (buffer.hasRemaining()) {
+                            readLength += output.write(buffer)
+                        }
+
+                        if (expectedLength > 0) {
+                            val progress = (readLength / expectedLength)
+                                .coerceIn(0.0, 1.0).roundToDecimals(2)
+                            if (lastProgress < progress) {
+                                withContext(Dispatchers.Main) {
+                                    onProgress(progress)
+                                }
+                            }
+                            lastProgress = progress
+                        }
+                    }
+                }
+            }
+
+            return digest.digest()
+        } finally {
+            connection.disconnect()
+        }
+    }
+
+    private fun openConnection(
+        url: Url,
+        range: LongRange? = null,
+        ifRange: String? = null,
+    ): HttpURLConnection =
+        (URL(url.toString()).openConnection() as HttpURLConnection).apply {
+            connectTimeout = this@RangeDownloader.connectTimeout.inWholeMilliseconds.toInt()
+            readTimeout = this@RangeDownloader.readTimeout.inWholeMilliseconds.toInt()
+            if (range != null) {
+                setRequestProperty("Range", "bytes=${range.first}-${range.last}")
+                // Prevents an unexpected compression from changing the byte offsets.
+                setRequestProperty("Accept-Encoding", "identity")
+            }
+            if (ifRange != null) {
+                setRequestProperty("If-Range", ifRange)
+            }
+        }
+
+    /**
+     * Reads the segments of a previous download of the same content, or returns null if it
+     * can't be resumed.
+     */
+    private fun loadState(
+        stateFile: File,
+        destination: File,
+        url: Url,
+        length: Long,
+        validator: String?,
+    ): List<Segment>? {
+        if (validator == null || !stateFile.exists() || destination.length() != length) {
+            return null
+        }
+
+        return tryOrNull {
+            DataInputStream(stateFile.inputStream().buffered()).use { input ->
+                if (input.readInt() != STATE_VERSION ||
+                    input.readUTF() != url.toString() ||
+                    input.readLong() != length ||
+                    input.readUTF() != validator
+                ) {
+                    return null
+                }
+                List(input.readInt()) {
+                    Segment(
+                        start = input.readLong(),
+                        end = input.readLong(),
+                        written = AtomicLong(input.readLong())
+                    )
+                }
+            }
+        }
+    }
+
+    private fun saveState(
+        stateFile: File,
+        url: Url,
+        length: Long,
+        validator: String?,
+        segments: List<Segment>,
+    ) {
+        if (validator == null) {
+            return
+        }
+
+        DataOutputStream(stateFile.outputStream().buffered()).use { output ->
+            output.writeInt(STATE_VERSION)
+            output.writeUTF(url.toString())
+            output.writeLong(length)
+            output.writeUTF(validator)
+            output.writeInt(segments.size)
+            for (segment in segments) {
+                output.writeLong(segment.start)
+                output.writeLong(segment.end)
+                output.writeLong(segment.written.get())
+            }
+        }
+    }
+
+    private companion object {
+        const val STATE_VERSION = 2
+        const val STATE_SAVE_INTERVAL = 4L * 1024 * 1024
+
+        /**
+         * Longest delay requested by a server with `Retry-After` that the download waits for.
+         */
+        val MAX_RETRY_DELAY = 1.minutes
+    }
+}
+
+private fun Double.roundToDecimals(decimals: Int): Double {
+    var multiplier = 1.0
+    repeat(decimals) { multiplier *= 10 }
+    return round(this * multiplier) / multiplier
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2024 Readium Foundation. All rights reserved.
+ * Use of this source code is governed by the BSD-style license
+ * available in the top-level LICENSE file of the project.
+ */
+
+package org.readium.r2.lcp.service
+
+import android.content.Context
+import android.content.SharedPreferences
+
+/**
+ * Persists the last Status Document retrieved for each license, to validate a license without
+ * waiting for the network.
+ *
+ * The Status Documents of the licenses unknown to the License Status server are removed, and
+ * only the [maxEntries] most recently used ones are kept, as the licenses deleted by the reading
+ * app are never reported.
+ */
+internal class StatusDocumentCache(
+    context: Context,
+    private val maxEntries: Int = DEFAULT_MAX_ENTRIES,
+) {
+
+    private val preferences: SharedPreferences = context.getSharedPreferences(
+        "org.readium.r2.lcp.status",
+        Context.MODE_PRIVATE
+    )
+
+    /**
+     * Last time each cached Status Document was used, by license ID.
+     */
+    private val accessTimes: SharedPreferences = context.getSharedPreferences(
+        "org.readium.r2.lcp.status.access",
+        Context.MODE_PRIVATE
+    )
+
+    @Synchronized
+    fun get(licenseId: String): ByteArray? =
+        preferences.getString(licenseId, null)
+            ?.also { accessTimes.edit().putLong(licenseId, System.currentTimeMillis()).apply() }
+            ?.toByteArray()
+
+    @Synchronized
+    fun put(licenseId: String, data: ByteArray) {
+        preferences.edit().putString(licenseId, data.decodeToString()).apply()
+        accessTimes.edit().putLong(licenseId, System.currentTimeMillis()).apply()
+        evictIfNeeded(keep = licenseId)
+    }
+
+    @Synchronized
+    fun remove(licenseId: String) {
+        preferences.edit().remove(licenseId).apply()
+        accessTimes.edit().remove(licenseId).apply()
+    }
+
+    private fun evictIfNeeded(keep: String) {
+        val licenseIds = preferences.all.keys
+        if (licenseIds.size <= maxEntries) {
+            return
+        }
+
+        licenseIds
+            .filter { it != keep }
+            .sortedBy { accessTimes.getLong(it, 0) }
+            .take(licenseIds.size - maxEntries)
+            .forEach { remove(it) }
+    }
+
+    companion object {
+        const val DEFAULT_MAX_ENTRIES: Int = 500
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2024 Readium Foundation. All rights reserved.
+ * Use of this source code is governed by the BSD-style license
+ * available in the top-level LICENSE file of the project.
+ */
+
+package org.readium.r2.lcp
+
+import io.mockk.coEvery
+import io.mockk.mockk
+import io.mockk.slot
+import java.io.ByteArrayOutputStream
+import java.util.zip.Deflater
+import java.util.zip.DeflaterOutputStream
+import kotlin.random.Random
+import kotlin.test.Test
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlinx.coroutines.test.runTest
+import org.readium.r2.shared.util.Try
+import org.readium.r2.shared.util.checkSuccess
+import org.readium.r2.shared.util.resource.InMemoryResource
+import org.readium.r2.shared.util.resource.Resource
+
+class StreamingLcpResourceTest {
+
+    private val content: ByteArray =
+        Random(42).let { random ->
+            // Compressible content spanning several chunks once deflated.
+            ByteArray(50_000) { ('a' + random.nextInt(8)).code.toByte() }
+        }
+
+    /**
+     * Number of calls to [LcpLicense.decrypt] made by the last created resource.
+     */
+    private var decryptCount: Int = 0
+
+    /**
+     * Number of chunks of encrypted data of the last created resource.
+     */
+    private var encryptedChunkCount: Int = 0
+
+    private fun createResource(
+        originalLength: Long?,
+        maxFullyCachedLength: Long = 0,
+    ): StreamingLcpResource {
+        val slot = slot<ByteArray>()
+        val license = mockk<LcpLicense>()
+
+        decryptCount = 0
+        coEvery { license.decrypt(capture(slot)) } answers {
+            decryptCount++
+            // Assume the encryption function is the identity and decrypt only removes IV
+            Try.success(slot.captured.sliceArray(16 until slot.captured.size))
+        }
+
+        val deflated = ByteArrayOutputStream().also { output ->
+            DeflaterOutputStream(output, Deflater(Deflater.DEFAULT_COMPRESSION, true))
+                .use { it.write(content) }
+        }.toByteArray()
+
+        val paddingLength = 16 - deflated.size % 16
+        val encrypted = ByteArray(16) + deflated + ByteArray(paddingLength) { paddingLength.toByte() }
+        encryptedChunkCount = (encrypted.size - 16 + 1023) / 1024
+
+        val encryptedResource = InMemoryResource(
+            sourceUrl = null,
+            properties = Resource.Properties(),
+            bytes = { Try.success(encrypted) }
+        )
+
+        return StreamingLcpResource(
+            resource = encryptedResource,
+            license = license,
+            originalLength = originalLength,
+            chunkSize = 1024,
+            maxFullyCachedLength = maxFullyCachedLength
+        )
+    }
+
+    @Test
+    fun `read the whole resource`() = runTest {
+        val resource = createResource(originalLength = content.size.toLong())
+        assertContentEquals(content, resource.read().checkSuccess())
+    }
+
+    @Test
+    fun `compute the length when the original length is missing`() = runTest {
+        val resource = createResource(originalLength = null)
+        assertEquals(content.size.toLong(), resource.length().checkSuccess())
+    }
+
+    @Test
+    fun `read contiguous ranges`() = runTest {
+        val resource = createResource(originalLength = content.size.toLong())
+        for (start in 0 until content.size step 3000) {
+            val range = start until start + 3000L
+            assertContentEquals(
+                content.sliceArray(start until minOf(start + 3000, content.size)),
+                resource.read(range).checkSuccess()
+            )
+        }
+    }
+
+    @Test
+    fun `contiguous ranges decrypt each chunk once`() = runTest {
+        val resource = createResource(originalLength = content.size.toLong())
+        for (start in 0 until content.size step 3000) {
+            resource.read(start until start + 3000L).checkSuccess()
+        }
+        assertEquals(encryptedChunkCount, decryptCount)
+    }
+
+    @Test
+    fun `read ranges backward`() = runTest {
+        val resource = createResource(originalLength = content.size.toLong())
+        assertContentEquals(
+            content.sliceArray(40_000 until 40_100),
+            resource.read(40_000 until 40_100L).checkSuccess()
+        )
+        assertContentEquals(
+            content.sliceArray(10 until 20),
+            resource.read(10 until 20L).checkSuccess()
+        )
+    }
+
+    @Test
+    fun `read a range exceeding the end`() = runTest {
+        val resource = createResource(originalLength = null)
+        assertContentEquals(
+            content.sliceArray(49_990 until content.size),
+            resource.read(49_990 until 60_000L).checkSuccess()
+        )
+        assertContentEquals(
+            ByteArray(0),
+            resource.read(60_000 until 60_010L).checkSuccess()
+        )
+    }
+
+    @Test
+    fun `read ranges backward from a fully cached resource`() = runTest {
+        val resource = createResource(
+            originalLength = content.size.toLong(),
+            maxFullyCachedLength = content.size.toLong()
+        )
+        assertContentEquals(
+            content.sliceArray(40_000 until 40_100),
+            resource.read(40_000 until 40_100L).checkSuccess()
+        )
+        assertContentEquals(
+            content.sliceArray(10 until 20),
+            resource.read(10 until 20L).checkSuccess()
+        )
+        assertContentEquals(
+            content.sliceArray(49_990 until content.size),
+            resource.read(49_990 until 60_000L).checkSuccess()
+        )
+    }
+
+    @Test
+    fun `the chunk size must be a multiple of the AES block size`() {
+        assertFailsWith<IllegalArgumentException> {
+            StreamingLcpResource(
+                resource = InMemoryResource(ByteArray(0)),
+                license = mockk(),
+                chunkSize = 1000
+            )
+        }
+    }
+}
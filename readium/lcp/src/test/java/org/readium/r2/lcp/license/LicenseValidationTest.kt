@@ -0,0 +1,272 @@
+/*
+ * Copyright 2024 Readium Foundation. All rights reserved.
+ * Use of this source code is governed by the BSD-style license
+ * available in the top-level LICENSE file of the project.
+ */
+
+package org.readium.r2.lcp.license
+
+import io.mockk.coEvery
+import io.mockk.coVerify
+import io.mockk.every
+import io.mockk.mockk
+import io.mockk.mockkObject
+import io.mockk.unmockkObject
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertIs
+import kotlin.test.assertNotNull
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+import kotlinx.coroutines.runBlocking
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.readium.r2.lcp.LcpError
+import org.readium.r2.lcp.LcpException
+import org.readium.r2.lcp.license.model.LicenseDocument
+import org.readium.r2.lcp.service.CRLService
+import org.readium.r2.lcp.service.DeviceService
+import org.readium.r2.lcp.service.LcpClient
+import org.readium.r2.lcp.service.NetworkException
+import org.readium.r2.lcp.service.NetworkService
+import org.readium.r2.lcp.service.PassphrasesService
+import org.readium.r2.lcp.service.StatusDocumentCache
+import org.readium.r2.shared.util.Try
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+
+@RunWith(RobolectricTestRunner::class)
+class LicenseValidationTest {
+
+    private val licenseId = "license-1"
+    private val statusUrl = "https://lsd.example.com/licenses/license-1/status"
+    private val licenseUrl = "https://lsd.example.com/licenses/license-1"
+
+    private val issued = "2024-01-01T00:00:00Z"
+    private val updated = "2024-02-01T00:00:00Z"
+
+    private val crl = mockk<CRLService>()
+    private val device = mockk<DeviceService>()
+    private val network = mockk<NetworkService>()
+    private val passphrases = mockk<PassphrasesService>()
+    private val statusDocuments = StatusDocumentCache(RuntimeEnvironment.getApplication())
+
+    private val lcpContext = LcpClient.Context(
+        hashedPassphrase = "passphrase",
+        encryptedContentKey = "key",
+        token = "token",
+        profile = "http://readium.org/lcp/basic-profile"
+    )
+
+    @Before
+    fun setUp() {
+        mockkObject(LcpClient)
+        // Not the production profile.
+        every { LcpClient.findOneValidPassphrase(any(), any()) } throws
+            LcpException(LcpError.Runtime("No production passphrase"))
+        every { LcpClient.createContext(any(), any(), any()) } returns lcpContext
+
+        every { crl.retrieveLocal() } returns "local-crl"
+        coEvery { crl.retrieve() } returns "remote-crl"
+        coEvery { crl.refreshIfExpired() } returns Unit
+        coEvery { device.registerLicense(any(), any()) } returns null
+        coEvery { passphrases.request(any(), any(), any()) } returns "passphrase"
+        coEvery { network.fetch(any(), any(), any(), any(), any()) } returns
+            Try.failure(NetworkException(status = null))
+    }
+
+    @After
+    fun tearDown() {
+        unmockkObject(LcpClient)
+        statusDocuments.remove(licenseId)
+    }
+
+    @Test
+    fun `open a license with its cached Status Document and no network`() {
+        statusDocuments.put(licenseId, statusData(licenseUpdated = updated, status = "active"))
+        val validation = createValidation()
+
+        val documents = validate(validation, licenseData(updated = issued))
+
+        assertEquals(issued, documents.license.json.getString("issued"))
+        assertEquals(lcpContext, documents.getContext())
+        assertTrue(validation.hasDeferredNetworkRequests)
+        coVerify(exactly = 0) { network.fetch(any(), any(), any(), any(), any()) }
+        coVerify(exactly = 0) { crl.retrieve() }
+        coVerify(exactly = 0) { device.registerLicense(any(), any()) }
+    }
+
+    @Test
+    fun `apply a license update when refreshing in the background`() = runBlocking {
+        statusDocuments.put(licenseId, statusData(licenseUpdated = updated, status = "active"))
+        val validatedLicenses = mutableListOf<LicenseDocument>()
+        val validation = createValidation(onLicenseValidated = { validatedLicenses.add(it) })
+        validate(validation, licenseData(updated = issued))
+
+        val notifiedLicenses = mutableListOf<LicenseDocument>()
+        LicenseValidation.observe(validation) { documents, _ ->
+            documents?.let { notifiedLicenses.add(it.license) }
+        }
+        fetching(statusUrl, statusData(licenseUpdated = updated, status = "active"))
+        fetching(licenseUrl, licenseData(updated = updated))
+
+        validation.refresh()
+
+        val license = (validation.state as State.valid).documents.license
+        assertEquals(updated, license.json.getString("updated"))
+        assertEquals(updated, validatedLicenses.last().json.getString("updated"))
+        assertEquals(updated, notifiedLicenses.last().json.getString("updated"))
+        coVerify { crl.retrieve() }
+        coVerify { device.registerLicense(any(), any()) }
+    }
+
+    @Test
+    fun `apply a revocation when refreshing in the background`() = runBlocking {
+        statusDocuments.put(licenseId, statusData(licenseUpdated = issued, status = "active"))
+        val validation = createValidation()
+        validate(validation, licenseData(updated = issued))
+
+        fetching(statusUrl, statusData(licenseUpdated = updated, status = "revoked"))
+        fetching(licenseUrl, licenseData(updated = updated, end = updated))
+
+        validation.refresh()
+
+        val documents = (validation.state as State.valid).documents
+        val exception = assertFailsWith<LcpException> { documents.getContext() }
+        assertIs<LcpError.LicenseStatus.Revoked>(exception.error)
+        assertEquals("revoked", documents.status?.json?.getString("status"))
+    }
+
+    @Test
+    fun `forget the Status Document of a license unknown to the server`() = runBlocking {
+        statusDocuments.put(licenseId, statusData(licenseUpdated = issued, status = "active"))
+        val validation = createValidation()
+        validate(validation, licenseData(updated = issued))
+
+        coEvery { network.fetch(statusUrl, any(), any(), any(), any()) } returns
+            Try.failure(NetworkException(status = 404))
+
+        validation.refresh()
+
+        assertNull(statusDocuments.get(licenseId))
+    }
+
+    private fun createValidation(
+        onLicenseValidated: (LicenseDocument) -> Unit = {},
+    ): LicenseValidation {
+        val context = mockk<android.content.Context>()
+        every { context.assets.open(any()) } answers { licenseData(updated = issued).inputStream() }
+
+        return LicenseValidation(
+            authentication = null,
+            allowUserInteraction = false,
+            ignoreInternetErrors = false,
+            crl = crl,
+            device = device,
+            network = network,
+            passphrases = passphrases,
+            statusDocuments = statusDocuments,
+            context = context,
+            offlineFirst = true,
+            onLicenseValidated = onLicenseValidated
+        )
+    }
+
+    private fun validate(validation: LicenseValidation, data: ByteArray): ValidatedDocuments {
+        var result: ValidatedDocuments? = null
+        var error: Exception? = null
+        validation.validate(LicenseValidation.Document.license(data)) { documents, e ->
+            result = documents
+            error = e
+        }
+        assertNull(error)
+        return assertNotNull(result)
+    }
+
+    private fun fetching(url: String, data: ByteArray) {
+        coEvery { network.fetch(url, any(), any(), any(), any()) } returns Try.success(data)
+    }
+
+    private fun licenseData(updated: String, end: String? = null): ByteArray =
+        JSONObject()
+            .put("provider", "https://provider.example.com")
+            .put("id", licenseId)
+            .put("issued", issued)
+            .put("updated", updated)
+            .put(
+                "encryption",
+                JSONObject()
+                    .put("profile", "http://readium.org/lcp/basic-profile")
+                    .put(
+                        "content_key",
+                        JSONObject()
+                            .put("algorithm", "http://www.w3.org/2001/04/xmlenc#aes256-cbc")
+                            .put("encrypted_value", "Y29udGVudCBrZXk=")
+                    )
+                    .put(
+                        "user_key",
+                        JSONObject()
+                            .put("algorithm", "http://www.w3.org/2001/04/xmlenc#sha256")
+                            .put("text_hint", "Hint")
+                            .put("key_check", "a2V5IGNoZWNr")
+                    )
+            )
+            .put(
+                "links",
+                JSONArray()
+                    .put(link("hint", "https://provider.example.com/hint"))
+                    .put(
+                        link("publication", "https://provider.example.com/publication.epub")
+                            .put("type", "application/epub+zip")
+                    )
+                    .put(
+                        link("status", statusUrl)
+                            .put("type", "application/vnd.readium.license.status.v1.0+json")
+                    )
+            )
+            .put("rights", JSONObject().apply { end?.let { put("end", it) } })
+            .put(
+                "signature",
+                JSONObject()
+                    .put("algorithm", "http://www.w3.org/2001/04/xmldsig-more#ecdsa-sha256")
+                    .put("certificate", "Y2VydGlmaWNhdGU=")
+                    .put("value", "c2lnbmF0dXJl")
+            )
+            .toString()
+            .toByteArray()
+
+    private fun statusData(licenseUpdated: String, status: String): ByteArray =
+        JSONObject()
+            .put("id", licenseId)
+            .put("status", status)
+            .put("message", "The license is $status.")
+            .put(
+                "updated",
+                JSONObject()
+                    .put("license", licenseUpdated)
+                    .put("status", licenseUpdated)
+            )
+            .put(
+                "links",
+                JSONArray()
+                    .put(
+                        link("license", licenseUrl)
+                            .put("type", "application/vnd.readium.lcp.license.v1.0+json")
+                    )
+                    .put(
+                        link("register", "$statusUrl/register{?id,name}")
+                            .put("templated", true)
+                    )
+            )
+            .toString()
+            .toByteArray()
+
+    private fun link(rel: String, href: String): JSONObject =
+        JSONObject()
+            .put("rel", rel)
+            .put("href", href)
+}
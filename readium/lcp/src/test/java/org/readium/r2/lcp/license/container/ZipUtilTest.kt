@@ -8,15 +8,21 @@ package org.readium.r2.lcp.license.container
 
 import java.io.ByteArrayInputStream
 import java.io.ByteArrayOutputStream
-import java.io.FileInputStream
+import java.io.File
 import java.util.zip.ZipFile
 import java.util.zip.ZipInputStream
 import kotlin.test.Test
 import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
 import kotlin.test.assertNotNull
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
 
 class ZipUtilTest {
 
+    @get:Rule
+    val tmpFolder = TemporaryFolder()
+
     private val zipPath: String =
         ZipUtilTest::class.java.getResource("futuristic_tales.cbz")!!.path
 
@@ -58,9 +64,9 @@ class ZipUtilTest {
 
         val modifiedZip = run {
             val outStream = ByteArrayOutputStream()
-            zipFile.addOrReplaceEntry(
+            File(zipPath).addOrReplaceEntry(
                 entryToAdd,
-                FileInputStream(aFcPath),
+                File(aFcPath).readBytes(),
                 outStream
             )
             outStream.toByteArray()
@@ -88,9 +94,9 @@ class ZipUtilTest {
 
         val modifiedZip = run {
             val outStream = ByteArrayOutputStream()
-            zipFile.addOrReplaceEntry(
+            File(zipPath).addOrReplaceEntry(
                 entryToReplace,
-                FileInputStream(aFcPath),
+                File(aFcPath).readBytes(),
                 outStream
             )
             outStream.toByteArray()
@@ -110,4 +116,22 @@ class ZipUtilTest {
             assertContentEquals(expected, modifiedEntry)
         }
     }
+
+    @Test
+    fun copiedEntriesKeepTheirCompressedData() {
+        val entryToAdd = "META-INF/license.lcpl"
+        val file = tmpFolder.newFile()
+        File(zipPath).addOrReplaceEntry(entryToAdd, "license".toByteArray(), file)
+
+        ZipFile(file).use { modifiedZip ->
+            for (name in entryNames) {
+                val expected = zipFile.getEntry(name)
+                val entry = assertNotNull(modifiedZip.getEntry(name))
+                assertEquals(expected.method, entry.method)
+                assertEquals(expected.compressedSize, entry.compressedSize)
+                assertEquals(expected.crc, entry.crc)
+            }
+            assertContentEquals("license".toByteArray(), modifiedZip.readEntry(entryToAdd))
+        }
+    }
 }
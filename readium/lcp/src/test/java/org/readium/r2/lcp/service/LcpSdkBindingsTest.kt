@@ -0,0 +1,103 @@
+/*
+ * Copyright 2024 Readium Foundation. All rights reserved.
+ * Use of this source code is governed by the BSD-style license
+ * available in the top-level LICENSE file of the project.
+ */
+
+package org.readium.r2.lcp.service
+
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import org.junit.Test
+
+/**
+ * Stand-in for the native `org.readium.lcp.sdk.Lcp` class, which is not available in unit tests.
+ */
+class FakeLcp {
+
+    fun createContext(jsonLicense: String, hashedPassphrases: String, pemCrl: String): FakeDRMContext =
+        FakeDRMContext(hashedPassphrases, jsonLicense, pemCrl, "profile")
+
+    fun decrypt(context: FakeDRMContext, encryptedData: ByteArray): ByteArray {
+        val key = context.encryptedContentKey.toByteArray()
+        return ByteArray(encryptedData.size) { i ->
+            (encryptedData[i].toInt() xor key[i % key.size].toInt()).toByte()
+        }
+    }
+
+    fun findOneValidPassphrase(jsonLicense: String, hashedPassphrases: Array<String>): String =
+        hashedPassphrases.first { it == jsonLicense }
+}
+
+/**
+ * Stand-in for the native `org.readium.lcp.sdk.DRMContext` class.
+ */
+class FakeDRMContext(
+    val hashedPassphrase: String,
+    val encryptedContentKey: String,
+    val token: String,
+    val profile: String,
+)
+
+class LcpSdkBindingsTest {
+
+    private val bindings = LcpSdkBindings(
+        lcpClassName = FakeLcp::class.java.name,
+        drmContextClassName = FakeDRMContext::class.java.name
+    )
+
+    @Test
+    fun `create a context`() {
+        val drmContext = bindings.createContext("license", "passphrase", "crl")
+        assertEquals(
+            LcpClient.Context(
+                hashedPassphrase = "passphrase",
+                encryptedContentKey = "license",
+                token = "crl",
+                profile = "profile"
+            ),
+            bindings.contextOf(drmContext)
+        )
+    }
+
+    @Test
+    fun `decrypt data`() {
+        val drmContext = bindings.newDRMContext("passphrase", "key", "token", "profile")
+        val data = "hello world".toByteArray()
+        val encrypted = FakeLcp().decrypt(drmContext as FakeDRMContext, data)
+        assertContentEquals(data, bindings.decrypt(drmContext, encrypted))
+    }
+
+    @Test
+    fun `find one valid passphrase`() {
+        assertEquals("b", bindings.findOneValidPassphrase("b", arrayOf("a", "b", "c")))
+    }
+
+    @Test
+    fun `cached bindings decrypt like a reflective call`() {
+        val data = ByteArray(64) { it.toByte() }
+        val context = LcpClient.Context("passphrase", "key", "token", "profile")
+
+        val lcpClass = Class.forName(FakeLcp::class.java.name)
+        val drmContextClass = Class.forName(FakeDRMContext::class.java.name)
+        val expected = lcpClass
+            .getMethod("decrypt", drmContextClass, ByteArray::class.java)
+            .invoke(
+                lcpClass.getDeclaredConstructor().newInstance(),
+                drmContextClass
+                    .getConstructor(String::class.java, String::class.java, String::class.java, String::class.java)
+                    .newInstance(context.hashedPassphrase, context.encryptedContentKey, context.token, context.profile),
+                data
+            ) as ByteArray
+
+        val drmContext = bindings.newDRMContext(
+            context.hashedPassphrase,
+            context.encryptedContentKey,
+            context.token,
+            context.profile
+        )
+        repeat(2) {
+            assertContentEquals(expected, bindings.decrypt(drmContext, data))
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2024 Readium Foundation. All rights reserved.
+ * Use of this source code is governed by the BSD-style license
+ * available in the top-level LICENSE file of the project.
+ */
+
+package org.readium.r2.lcp.service
+
+import com.sun.net.httpserver.HttpServer
+import java.io.File
+import java.net.InetSocketAddress
+import java.security.MessageDigest
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.random.Random
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertFalse
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.test.UnconfinedTestDispatcher
+import kotlinx.coroutines.test.resetMain
+import kotlinx.coroutines.test.setMain
+import org.junit.After
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.readium.r2.shared.util.AbsoluteUrl
+import org.robolectric.RobolectricTestRunner
+
+@OptIn(ExperimentalCoroutinesApi::class)
+@RunWith(RobolectricTestRunner::class)
+class RangeDownloaderTest {
+
+    @get:Rule
+    val tmpFolder = TemporaryFolder()
+
+    private val content: ByteArray = Random(42).nextBytes(1_000_000)
+
+    /**
+     * Number of responses which will be cut in the middle.
+     */
+    private val failingResponses = AtomicInteger(0)
+
+    /**
+     * Number of range requests which will be answered with [errorStatus].
+     */
+    private val failingRangeRequests = AtomicInteger(0)
+
+    private var errorStatus = 503
+
+    private val requestCount = AtomicInteger(0)
+
+    private lateinit var server: HttpServer
+
+    private val url: AbsoluteUrl get() =
+        AbsoluteUrl("http://localhost:${server.address.port}/publication")!!
+
+    @Before
+    fun setUp() {
+        Dispatchers.setMain(UnconfinedTestDispatcher())
+
+        server = HttpServer.create(InetSocketAddress("localhost", 0), 0)
+        server.createContext("/publication") { exchange ->
+            requestCount.incrementAndGet()
+            val range = exchange.requestHeaders.getFirst("Range")
+                ?.removePrefix("bytes=")
+                ?.split("-")
+                ?.let { it[0].toLong()..it[1].toLong().coerceAtMost(content.size - 1L) }
+
+            if (range != null && range.last > 0 && failingRangeRequests.getAndDecrement() > 0) {
+                exchange.responseHeaders.add("Retry-After", "0")
+                exchange.sendResponseHeaders(errorStatus, -1)
+                exchange.close()
+                return@createContext
+            }
+
+            exchange.responseHeaders.add("ETag", "\"v1\"")
+            exchange.responseHeaders.add("Content-Type", "application/epub+zip")
+            val body = if (range != null) {
+                exchange.responseHeaders.add(
+                    "Content-Range",
+                    "bytes ${range.first}-${range.last}/${content.size}"
+                )
+                exchange.sendResponseHeaders(206, range.last - range.first + 1)
+                content.copyOfRange(range.first.toInt(), range.last.toInt() + 1)
+            } else {
+                exchange.sendResponseHeaders(200, content.size.toLong())
+                content
+            }
+
+            exchange.responseBody.use { output ->
+                if (body.size > 1 && failingResponses.getAndDecrement() > 0) {
+                    output.write(body, 0, body.size / 2)
+                } else {
+                    output.write(body)
+                }
+            }
+        }
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.stop(0)
+        Dispatchers.resetMain()
+    }
+
+    private val downloader = RangeDownloader(
+        maxConnections = 4,
+        minSegmentLength = 100_000,
+        bufferSize = 8 * 1024
+    )
+
+    @Test
+    fun `download with parallel ranges`() = runBlocking {
+        val destination = File(tmpFolder.root, "publication")
+
+        val result = downloader.download(url, destination) {}
+
+        assertContentEquals(content, destination.readBytes())
+        assertContentEquals(MessageDigest.getInstance("SHA-256").digest(content), result.sha256)
+        assertEquals("application/epub+zip", result.contentType)
+        // The probe and one request per segment.
+        assertEquals(5, requestCount.get())
+        assertFalse(File(destination.path + ".parts").exists())
+    }
+
+    @Test
+    fun `resume interrupted ranges`() = runBlocking {
+        val destination = File(tmpFolder.root, "publication")
+        failingResponses.set(3)
+
+        val result = downloader.download(url, destination) {}
+
+        assertContentEquals(content, destination.readBytes())
+        assertContentEquals(MessageDigest.getInstance("SHA-256").digest(content), result.sha256)
+    }
+
+    @Test
+    fun `retry the ranges answered with a server error`() = runBlocking {
+        val destination = File(tmpFolder.root, "publication")
+        failingRangeRequests.set(3)
+
+        val result = downloader.download(url, destination) {}
+
+        assertContentEquals(content, destination.readBytes())
+        assertContentEquals(MessageDigest.getInstance("SHA-256").digest(content), result.sha256)
+        assertEquals(8, requestCount.get())
+    }
+
+    @Test
+    fun `abort the download when the content changed`(): Unit = runBlocking {
+        val destination = File(tmpFolder.root, "publication")
+        failingRangeRequests.set(1)
+        errorStatus = 412
+
+        val exception = assertFailsWith<NetworkException> {
+            downloader.download(url, destination) {}
+        }
+        assertEquals(412, exception.status)
+    }
+}
@@ -208,6 +208,23 @@ public class EpubNavigatorFragment internal constructor(
         @DelicateReadiumApi
         var disableSelectionWhenProtected: Boolean,
 
+        /**
+         * Number of reading order resources before and after the current one which are prepared
+         * ahead of time, to reduce the latency when moving to another resource.
+         *
+         * The prepared HTML resources are kept in memory already decrypted and injected, within
+         * the limit of [prefetchCacheSize] bytes. Disabled when 0.
+         */
+        @ExperimentalReadiumApi
+        var prefetchedResourceCount: Int = 0,
+
+        /**
+         * Maximum size in bytes of the resources prepared ahead of time, see
+         * [prefetchedResourceCount].
+         */
+        @ExperimentalReadiumApi
+        var prefetchCacheSize: Long = 16L * 1024 * 1024,
+
         internal var fontFamilyDeclarations: List<FontFamilyDeclaration>,
         internal var javascriptInterfaces: Map<String, JavascriptInterfaceFactory>,
     ) {
@@ -1095,6 +1112,7 @@ public class EpubNavigatorFragment internal constructor(
             )
 
             _currentLocator.value = currentLocator
+            viewModel.prefetchAround(link)
 
             // Deprecated notifications
             reflowableWebView?.let {
@@ -16,6 +16,7 @@ import android.webkit.WebResourceResponse
 import androidx.lifecycle.AndroidViewModel
 import androidx.lifecycle.viewModelScope
 import kotlin.reflect.KClass
+import kotlinx.coroutines.Job
 import kotlinx.coroutines.channels.Channel
 import kotlinx.coroutines.flow.*
 import kotlinx.coroutines.launch
@@ -34,6 +35,7 @@ import org.readium.r2.shared.publication.Href
 import org.readium.r2.shared.publication.Link
 import org.readium.r2.shared.publication.Publication
 import org.readium.r2.shared.publication.epub.EpubLayout
+import org.readium.r2.shared.publication.indexOfFirstWithHref
 import org.readium.r2.shared.util.AbsoluteUrl
 import org.readium.r2.shared.util.RelativeUrl
 import org.readium.r2.shared.util.Url
@@ -141,6 +143,11 @@ internal class EpubNavigatorViewModel(
                     )
                 }
 
+                if (previousCss != css) {
+                    // The prefetched resources were injected with the previous Readium CSS.
+                    invalidatePrefetchedResources()
+                }
+
                 previousCss = css
             }
             .launchIn(viewModelScope)
@@ -224,6 +231,56 @@ internal class EpubNavigatorViewModel(
     fun shouldInterceptRequest(request: WebResourceRequest): WebResourceResponse? =
         server.shouldInterceptRequest(request, css.value)
 
+    /**
+     * Reading order resource around which the resources were last prefetched.
+     */
+    private var prefetchedAround: Link? = null
+
+    private var prefetchJob: Job? = null
+
+    /**
+     * Prepares the reading order resources around [link] ahead of time, according to
+     * [EpubNavigatorFragment.Configuration.prefetchedResourceCount].
+     */
+    fun prefetchAround(link: Link) {
+        val count = config.prefetchedResourceCount
+        val url = link.url()
+        if (count <= 0 || url == prefetchedAround?.url()) {
+            return
+        }
+        val readingOrder = publication.readingOrder
+        val index = readingOrder.indexOfFirstWithHref(url)
+            ?: return
+
+        prefetchedAround = link
+
+        // The closest resources are prefetched first, the next one before the previous one.
+        val links = (1..count).flatMap { distance ->
+            listOfNotNull(
+                readingOrder.getOrNull(index + distance),
+                readingOrder.getOrNull(index - distance)
+            )
+        }
+
+        prefetchJob?.cancel()
+        prefetchJob = viewModelScope.launch {
+            server.prefetch(links, css.value)
+        }
+    }
+
+    /**
+     * Releases the prefetched resources and prefetches them again with the current Readium CSS.
+     */
+    private fun invalidatePrefetchedResources() {
+        prefetchJob?.cancel()
+        prefetchJob = null
+        server.clearPrefetchedResources()
+
+        val link = prefetchedAround ?: return
+        prefetchedAround = null
+        prefetchAround(link)
+    }
+
     fun submitPreferences(preferences: EpubPreferences) = viewModelScope.launch {
         val oldSettings = settings.value
 
@@ -390,6 +447,7 @@ internal class EpubNavigatorViewModel(
                     publication,
                     servedAssets = config.servedAssets,
                     disableSelectionWhenProtected = config.disableSelectionWhenProtected,
+                    prefetchCacheSize = config.prefetchCacheSize,
                     onResourceLoadFailed = { url, error ->
                         listener?.onResourceLoadFailed(url, error)
                     }
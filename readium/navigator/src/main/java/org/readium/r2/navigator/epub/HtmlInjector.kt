@@ -6,6 +6,7 @@
 
 package org.readium.r2.navigator.epub
 
+import org.readium.r2.navigator.epub.css.HtmlSplicer
 import org.readium.r2.navigator.epub.css.ReadiumCss
 import org.readium.r2.shared.ExperimentalReadiumApi
 import org.readium.r2.shared.publication.Publication
@@ -39,7 +40,11 @@ internal fun Resource.injectHtml(
             return@TransformingResource Try.success(bytes)
         }
 
-        var content = bytes.toString(mediaType.charset ?: Charsets.UTF_8).trim()
+        val html = HtmlSplicer(
+            bytes = bytes,
+            charset = mediaType.charset ?: Charsets.UTF_8,
+            trim = true
+        )
         val injectables = mutableListOf<String>()
 
         if (publication.metadata.presentation.layout == EpubLayout.FIXED) {
@@ -47,8 +52,8 @@ internal fun Resource.injectHtml(
                 script(baseHref.resolve(Url("readium/scripts/readium-fixed.js")!!))
             )
         } else {
-            content = try {
-                css.injectHtml(content)
+            try {
+                css.injectHtml(html)
             } catch (e: Exception) {
                 return@TransformingResource Try.failure(ReadError.Decoding(e))
             }
@@ -75,16 +80,14 @@ internal fun Resource.injectHtml(
             )
         }
 
-        val headEndIndex = content.indexOf("</head>", 0, true)
+        val headEndIndex = html.indexOf("</head>")
         if (headEndIndex == -1) {
             Timber.e("</head> closing tag not found in resource with href: $sourceUrl")
         } else {
-            content = StringBuilder(content)
-                .insert(headEndIndex, "\n" + injectables.joinToString("\n") + "\n")
-                .toString()
+            html.insert(headEndIndex, "\n" + injectables.joinToString("\n") + "\n")
         }
 
-        Try.success(content.toByteArray())
+        Try.success(html.build())
     }
 
 private fun script(src: Url): String =
@@ -14,6 +14,7 @@ import android.webkit.WebResourceRequest
 import android.webkit.WebResourceResponse
 import androidx.webkit.WebViewAssetLoader
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.runBlocking
 import kotlinx.coroutines.withContext
 import org.readium.r2.navigator.epub.css.ReadiumCss
 import org.readium.r2.shared.ExperimentalReadiumApi
@@ -26,11 +27,14 @@ import org.readium.r2.shared.util.Try
 import org.readium.r2.shared.util.Url
 import org.readium.r2.shared.util.data.ReadError
 import org.readium.r2.shared.util.data.asInputStream
+import org.readium.r2.shared.util.getOrElse
 import org.readium.r2.shared.util.http.HttpHeaders
 import org.readium.r2.shared.util.http.HttpRange
+import org.readium.r2.shared.util.resource.InMemoryResource
 import org.readium.r2.shared.util.resource.Resource
 import org.readium.r2.shared.util.resource.StringResource
 import org.readium.r2.shared.util.resource.fallback
+import org.readium.r2.shared.util.use
 
 /**
  * Serves the publication resources and application assets in the EPUB navigator web views.
@@ -41,6 +45,7 @@ internal class WebViewServer(
     private val publication: Publication,
     servedAssets: List<String>,
     private val disableSelectionWhenProtected: Boolean,
+    private val prefetchCacheSize: Long,
     private val onResourceLoadFailed: (Url, ReadError) -> Unit,
 ) {
     companion object {
@@ -93,62 +98,183 @@ internal class WebViewServer(
         // Drop anchor because it is meant to be interpreted by the client.
         val urlWithoutAnchor = href.removeFragment()
 
-        var resource = publication
-            .get(urlWithoutAnchor)
-            ?.fallback {
-                onResourceLoadFailed(urlWithoutAnchor, it)
-                errorResource()
-            } ?: run {
-            val error = ReadError.Decoding(
-                "Resource not found at $urlWithoutAnchor in publication."
-            )
-            onResourceLoadFailed(urlWithoutAnchor, error)
-            errorResource()
-        }
-
-        link.mediaType
-            ?.takeIf { it.isHtml }
-            ?.let {
-                resource = resource.injectHtml(
-                    publication,
-                    mediaType = it,
-                    css,
-                    baseHref = assetsBaseHref,
-                    disableSelectionWhenProtected = disableSelectionWhenProtected
+        val resource = prefetchedResource(urlWithoutAnchor, css)
+            ?: publication
+                .get(urlWithoutAnchor)
+                ?.fallback {
+                    onResourceLoadFailed(urlWithoutAnchor, it)
+                    errorResource()
+                }
+                ?.let { injectHtml(it, link, css) }
+            ?: run {
+                val error = ReadError.Decoding(
+                    "Resource not found at $urlWithoutAnchor in publication."
                 )
+                onResourceLoadFailed(urlWithoutAnchor, error)
+                injectHtml(errorResource(), link, css)
             }
 
         val headers = mutableMapOf(
             "Accept-Ranges" to "bytes"
         )
 
+        val mediaType = link.mediaType?.toString()
+
         if (range == null) {
             return WebResourceResponse(
-                link.mediaType?.toString(),
+                mediaType,
                 null,
                 200,
                 "OK",
                 headers,
                 resource.asInputStream()
             )
-        } else { // Byte range request
-            val stream = resource.asInputStream()
-            val length = stream.available()
-            val longRange = range.toLongRange(length.toLong())
-            headers["Content-Range"] = "bytes ${longRange.first}-${longRange.last}/$length"
-            // Content-Length will automatically be filled by the WebView using the Content-Range header.
-            // headers["Content-Length"] = (longRange.last - longRange.first + 1).toString()
-            // Weirdly, the WebView will call itself stream.skip to skip to the requested range.
+        }
+
+        // Byte range request
+        val length = runBlocking { resource.length() }
+            .getOrElse {
+                // Without the length, the range can't be resolved so we serve the whole resource.
+                return WebResourceResponse(
+                    mediaType,
+                    null,
+                    200,
+                    "OK",
+                    headers,
+                    resource.asInputStream()
+                )
+            }
+
+        val longRange = range.toLongRange(length)
+            .let { it.first..minOf(it.last, length - 1) }
+
+        if (longRange.first >= length || longRange.isEmpty()) {
+            resource.close()
+            headers["Content-Range"] = "bytes */$length"
             return WebResourceResponse(
-                link.mediaType?.toString(),
+                mediaType,
                 null,
-                206,
-                "Partial Content",
+                416,
+                "Range Not Satisfiable",
                 headers,
-                stream
+                null
             )
         }
+
+        headers["Content-Range"] = "bytes ${longRange.first}-${longRange.last}/$length"
+        headers["Content-Length"] = (longRange.last - longRange.first + 1).toString()
+
+        // The WebView skips itself to the start of the requested range, so the stream must begin
+        // at the start of the resource. Skipping is free with this stream, which reads from the
+        // resource only the bytes requested by the WebView, up to the end of the range.
+        return WebResourceResponse(
+            mediaType,
+            null,
+            206,
+            "Partial Content",
+            headers,
+            resource.asInputStream(range = 0..longRange.last)
+        )
+    }
+
+    /**
+     * Injects the required JavaScript and CSS files in [resource], if it is an HTML document.
+     */
+    private fun injectHtml(resource: Resource, link: Link, css: ReadiumCss): Resource {
+        val mediaType = link.mediaType
+            ?.takeIf { it.isHtml }
+            ?: return resource
+
+        return resource.injectHtml(
+            publication,
+            mediaType = mediaType,
+            css,
+            baseHref = assetsBaseHref,
+            disableSelectionWhenProtected = disableSelectionWhenProtected
+        )
+    }
+
+    /**
+     * HTML resource read and injected ahead of time by [prefetch].
+     */
+    private class PrefetchedResource(val css: ReadiumCss, val bytes: ByteArray)
+
+    private val prefetchedResources = mutableMapOf<Url, PrefetchedResource>()
+
+    private var prefetchedSize: Long = 0
+
+    /**
+     * Returns the resource at [url] if it was prefetched with the same [css].
+     */
+    private fun prefetchedResource(url: Url, css: ReadiumCss): Resource? =
+        synchronized(prefetchedResources) {
+            prefetchedResources[url]
+                ?.takeIf { it.css == css }
+                ?.let { InMemoryResource(it.bytes) }
+        }
+
+    /**
+     * Reads, decrypts and injects the HTML resources of [links] ahead of time, to serve them
+     * without delay when they are requested by a web view.
+     *
+     * The resources prefetched previously which are not part of [links] are released. The
+     * prefetched resources are kept in memory within the limit of [prefetchCacheSize] bytes, so
+     * [links] should be ordered by priority: the prefetching stops when the limit is reached.
+     */
+    suspend fun prefetch(links: List<Link>, css: ReadiumCss) {
+        val urls = links.map { it.url().removeFragment() }
+
+        synchronized(prefetchedResources) {
+            val iterator = prefetchedResources.iterator()
+            while (iterator.hasNext()) {
+                val (url, prefetched) = iterator.next()
+                if (url !in urls || prefetched.css != css) {
+                    prefetchedSize -= prefetched.bytes.size
+                    iterator.remove()
+                }
+            }
+        }
+
+        for ((link, url) in links.zip(urls)) {
+            if (link.mediaType?.isHtml != true) {
+                continue
+            }
+
+            val isPrefetched = synchronized(prefetchedResources) {
+                prefetchedResources.containsKey(url)
+            }
+            if (isPrefetched) {
+                continue
+            }
+
+            val bytes = withContext(Dispatchers.IO) {
+                publication.get(url)
+                    ?.let { injectHtml(it, link, css) }
+                    ?.use { it.read().getOrNull() }
+            }
+                ?: continue
+
+            synchronized(prefetchedResources) {
+                if (prefetchedSize + bytes.size > prefetchCacheSize) {
+                    return
+                }
+                prefetchedResources.put(url, PrefetchedResource(css, bytes))
+                    ?.let { prefetchedSize -= it.bytes.size }
+                prefetchedSize += bytes.size
+            }
+        }
     }
+
+    /**
+     * Releases the resources prefetched by [prefetch].
+     */
+    fun clearPrefetchedResources() {
+        synchronized(prefetchedResources) {
+            prefetchedResources.clear()
+            prefetchedSize = 0
+        }
+    }
+
     private fun errorResource(): Resource =
         StringResource {
             withContext(Dispatchers.IO) {
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2024 Readium Foundation. All rights reserved.
+ * Use of this source code is governed by the BSD-style license
+ * available in the top-level LICENSE file of the project.
+ */
+
+package org.readium.r2.navigator.epub.css
+
+import java.nio.charset.Charset
+
+/**
+ * Splices text into an HTML document kept as raw bytes, without decoding or parsing it.
+ *
+ * Tags and attributes are looked up as ASCII byte sequences, ignoring case. The edits are recorded
+ * until [build] is called, which copies the bytes outside of the edited locations unchanged, in a
+ * single pass. The edited document is always encoded in UTF-8.
+ *
+ * @param charset Encoding of [bytes]. Documents in another encoding than UTF-8 are transcoded to
+ * UTF-8 first, so that the ASCII lookups work with any encoding.
+ * @param trim Whether the leading and trailing whitespaces of the document are dropped.
+ */
+internal class HtmlSplicer(
+    bytes: ByteArray,
+    charset: Charset = Charsets.UTF_8,
+    trim: Boolean = false,
+) {
+
+    private val bytes: ByteArray =
+        if (charset == Charsets.UTF_8) bytes else String(bytes, charset).toByteArray()
+
+    private class Edit(
+        val index: Int,
+        val removedLength: Int,
+        val inserted: ByteArray,
+        val order: Int,
+    )
+
+    private val start: Int
+
+    private val end: Int
+
+    init {
+        var start = 0
+        var end = bytes.size
+        if (trim) {
+            while (start < end && bytes[start].isWhitespace()) {
+                start++
+            }
+            while (end > start && bytes[end - 1].isWhitespace()) {
+                end--
+            }
+        }
+        this.start = start
+        this.end = end
+    }
+
+    private val edits = mutableListOf<Edit>()
+
+    /**
+     * Returns the index of the first occurrence of the ASCII [pattern] in the document, ignoring
+     * case, or -1 if not found.
+     */
+    fun indexOf(pattern: String, from: Int = start): Int {
+        val needle = pattern.lowercase().toByteArray(Charsets.US_ASCII)
+        val last = end - needle.size
+        var i = from.coerceAtLeast(start)
+        while (i <= last) {
+            if (matchesAt(i, needle)) {
+                return i
+            }
+            i++
+        }
+        return -1
+    }
+
+    private fun matchesAt(index: Int, pattern: ByteArray): Boolean {
+        if (index < start || index + pattern.size > end) {
+            return false
+        }
+        for (j in pattern.indices) {
+            if (bytes[index + j].lowercase() != pattern[j]) {
+                return false
+            }
+        }
+        return true
+    }
+
+    /**
+     * Returns the index of the first opening or self-closing tag [name] in the document, ignoring
+     * case, or -1 if not found.
+     *
+     * Unlike [indexOf], `<head` doesn't match a `<header>` tag.
+     */
+    fun indexOfTag(name: String, from: Int = start): Int {
+        var i = from
+        while (true) {
+            i = indexOf("<$name", i)
+            if (i == -1) {
+                return -1
+            }
+            val next = i + name.length + 1
+            if (next >= end || bytes[next] == GT || bytes[next] == SLASH || bytes[next].isWhitespace()) {
+                return i
+            }
+            i++
+        }
+    }
+
+    private class Attribute(
+        val name: String,
+        val value: String,
+        val range: IntRange,
+    )
+
+    /**
+     * Reads the attributes of the tag starting at [index], with lowercased names.
+     *
+     * The range of each attribute includes its leading whitespaces.
+     */
+    private fun attributesAt(index: Int): List<Attribute> {
+        val attributes = mutableListOf<Attribute>()
+
+        // Skips the tag name.
+        var i = index + 1
+        while (i < end && !bytes[i].isWhitespace() && bytes[i] != GT && bytes[i] != SLASH) {
+            i++
+        }
+
+        while (i < end) {
+            val attributeStart = i
+            while (i < end && (bytes[i].isWhitespace() || bytes[i] == SLASH)) {
+                i++
+            }
+            if (i >= end || bytes[i] == GT) {
+                break
+            }
+
+            val nameStart = i
+            while (
+                i < end && !bytes[i].isWhitespace() &&
+                bytes[i] != EQUAL && bytes[i] != GT && bytes[i] != SLASH
+            ) {
+                i++
+            }
+            val name = decode(nameStart, i).lowercase()
+            var attributeEnd = i
+
+            var value = ""
+            while (i < end && bytes[i].isWhitespace()) {
+                i++
+            }
+            if (i >= end || bytes[i] != EQUAL) {
+                // Attribute without value, the whitespaces belong to the next one.
+                i = attributeEnd
+            } else {
+                i++
+                while (i < end && bytes[i].isWhitespace()) {
+                    i++
+                }
+                if (i < end && (bytes[i] == QUOTE || bytes[i] == APOSTROPHE)) {
+                    val quote = bytes[i++]
+                    val valueStart = i
+                    while (i < end && bytes[i] != quote) {
+                        i++
+                    }
+                    value = decode(valueStart, i)
+                    i = (i + 1).coerceAtMost(end)
+                } else {
+                    val valueStart = i
+                    while (i < end && !bytes[i].isWhitespace() && bytes[i] != GT) {
+                        i++
+                    }
+                    value = decode(valueStart, i)
+                }
+                attributeEnd = i
+            }
+
+            if (name.isEmpty()) {
+                // Unexpected character, skips it to avoid looping forever.
+                i++
+            } else {
+                attributes.add(Attribute(name, value, attributeStart until attributeEnd))
+            }
+        }
+
+        return attributes
+    }
+
+    /**
+     * Returns the attributes of the tag starting at [index], with lowercased names.
+     *
+     * Only the first occurrence of an attribute is kept, as an HTML parser would.
+     */
+    fun attributesOfTagAt(index: Int): Map<String, String> =
+        attributesAt(index)
+            .reversed()
+            .associate { it.name to it.value }
+
+    /**
+     * Returns the ranges of all the attributes [name] of the tag starting at [index], including
+     * their leading whitespaces.
+     */
+    fun attributeRangesOfTagAt(index: Int, name: String): List<IntRange> =
+        attributesAt(index)
+            .filter { it.name == name.lowercase() }
+            .map { it.range }
+
+    /**
+     * Inserts [text] at [index] of the document.
+     *
+     * Texts inserted at the same index are kept in the order of the calls.
+     */
+    fun insert(index: Int, text: String) {
+        edits.add(Edit(index, 0, text.toByteArray(), edits.size))
+    }
+
+    /**
+     * Removes the bytes in [range] from the document.
+     */
+    fun remove(range: IntRange) {
+        edits.add(Edit(range.first, range.last - range.first + 1, ByteArray(0), edits.size))
+    }
+
+    /**
+     * Builds the edited document.
+     */
+    fun build(): ByteArray {
+        val sortedEdits = edits.sortedWith(
+            compareBy({ it.index }, { it.removedLength }, { it.order })
+        )
+
+        val output = ByteArray(end - start + sortedEdits.sumOf { it.inserted.size - it.removedLength })
+        var position = start
+        var offset = 0
+        for (edit in sortedEdits) {
+            bytes.copyInto(output, offset, position, edit.index)
+            offset += edit.index - position
+            edit.inserted.copyInto(output, offset)
+            offset += edit.inserted.size
+            position = edit.index + edit.removedLength
+        }
+        bytes.copyInto(output, offset, position, end)
+
+        return output
+    }
+
+    private fun decode(from: Int, to: Int): String =
+        String(bytes, from, to - from, Charsets.UTF_8)
+
+    private fun Byte.lowercase(): Byte =
+        if (toInt() in 'A'.code..'Z'.code) (toInt() + CASE_OFFSET).toByte() else this
+
+    private fun Byte.isWhitespace(): Boolean =
+        toInt().let { it == ' '.code || it in 0x09..0x0D || it in 0x1C..0x1F }
+
+    private companion object {
+        const val GT: Byte = 0x3E // >
+        const val SLASH: Byte = 0x2F // /
+        const val EQUAL: Byte = 0x3D // =
+        const val QUOTE: Byte = 0x22 // "
+        const val APOSTROPHE: Byte = 0x27 // '
+        const val CASE_OFFSET: Int = 0x20
+    }
+}
@@ -7,9 +7,6 @@
 package org.readium.r2.navigator.epub.css
 
 import android.net.Uri
-import org.jsoup.Jsoup
-import org.jsoup.nodes.Document
-import org.jsoup.nodes.Element
 import org.readium.r2.navigator.preferences.FontFamily
 import org.readium.r2.navigator.preferences.ReadingProgression
 import org.readium.r2.shared.ExperimentalReadiumApi
@@ -30,26 +27,49 @@ internal data class ReadiumCss(
      *
      * https://github.com/readium/readium-css/blob/develop/docs/CSS06-stylesheets_order.md
      */
+    @Throws
+    internal fun injectHtml(html: String): String =
+        HtmlSplicer(html.toByteArray())
+            .also { injectHtml(it) }
+            .build()
+            .decodeToString()
+
+    /**
+     * Injects Readium CSS in the HTML document edited by the given [html] splicer.
+     *
+     * The document is neither decoded nor parsed: only its opening `html`, `head` and `body`
+     * tags and the closing `head` tag are looked up, so the cost doesn't depend on the size of
+     * the document body.
+     */
     // FIXME: Replace existing attributes instead of adding new ones
     @Throws
-    internal fun injectHtml(html: String): String {
-        val document = Jsoup.parse(html)
-        val content = StringBuilder(html)
-        injectStyles(content)
-        injectCssProperties(content)
-        injectDir(content)
-        injectLang(content, document)
-        return content.toString()
+    internal fun injectHtml(html: HtmlSplicer) {
+        injectStyles(html)
+
+        // Attributes injected in the same tag are prepended, as if they were inserted one after
+        // the other at the start of the tag.
+        val htmlAttributes = StringBuilder()
+        val bodyAttributes = StringBuilder()
+        injectCssProperties(htmlAttributes)
+        injectDir(html, htmlAttributes, bodyAttributes)
+        injectLang(html, htmlAttributes, bodyAttributes)
+
+        if (htmlAttributes.isNotEmpty()) {
+            html.insert(html.indexForTagAttributes("html"), htmlAttributes.toString())
+        }
+        if (bodyAttributes.isNotEmpty()) {
+            html.insert(html.indexForTagAttributes("body"), bodyAttributes.toString())
+        }
     }
 
     /**
      * Inject the Readium CSS stylesheets and font face declarations.
      */
-    private fun injectStyles(content: StringBuilder) {
-        val hasStyles = content.hasStyles()
+    private fun injectStyles(html: HtmlSplicer) {
+        val hasStyles = html.hasStyles()
 
-        val headBeforeIndex = content.indexForOpeningTag("head")
-        content.insert(
+        val headBeforeIndex = html.indexForOpeningTag("head")
+        html.insert(
             headBeforeIndex,
             "\n" + buildList {
                 addAll(fontsInjectableLinks)
@@ -79,8 +99,8 @@ internal data class ReadiumCss(
             }.joinToString("\n") + "\n"
         )
 
-        val endHeadIndex = content.indexForClosingTag("head")
-        content.insert(
+        val endHeadIndex = html.indexForClosingTag("head")
+        html.insert(
             endHeadIndex,
             "\n" + buildList {
                 add(stylesheetLink(afterCss))
@@ -152,16 +172,14 @@ internal data class ReadiumCss(
         assetsBaseHref.resolve(url)
 
     /**
-     * Returns whether the [String] receiver has any CSS styles.
+     * Returns whether the HTML document has any CSS styles.
      *
      * https://github.com/readium/readium-css/blob/develop/docs/CSS06-stylesheets_order.md#append-if-there-is-no-authors-styles
      */
-    private fun CharSequence.hasStyles(): Boolean {
-        return indexOf("<link ", 0, true) != -1 ||
-            indexOf(" style=", 0, true) != -1 ||
-            Regex("<style.*?>", setOf(RegexOption.IGNORE_CASE, RegexOption.DOT_MATCHES_ALL)).containsMatchIn(
-                this
-            )
+    private fun HtmlSplicer.hasStyles(): Boolean {
+        return indexOfTag("link") != -1 ||
+            indexOf(" style=") != -1 ||
+            indexOfTag("style").let { it != -1 && indexOf(">", it) != -1 }
     }
 
     private fun stylesheetLink(href: Url): String =
@@ -173,14 +191,13 @@ internal data class ReadiumCss(
      * We inject them instead of using JavaScript to make sure they are taken into account during
      * the first layout pass.
      */
-    private fun injectCssProperties(content: StringBuilder) {
+    private fun injectCssProperties(htmlAttributes: StringBuilder) {
         var css = rsProperties.toCss() + userProperties.toCss()
         if (css.isBlank()) {
             return
         }
         css = css.replace("\"", "&quot;")
-        val index = content.indexForTagAttributes("html")
-        content.insert(index, " style=\"$css\"")
+        htmlAttributes.insert(0, " style=\"$css\"")
     }
 
     /**
@@ -188,7 +205,11 @@ internal data class ReadiumCss(
      *
      * https://github.com/readium/readium-css/blob/develop/docs/CSS16-internationalization.md#direction
      */
-    private fun injectDir(content: StringBuilder) {
+    private fun injectDir(
+        html: HtmlSplicer,
+        htmlAttributes: StringBuilder,
+        bodyAttributes: StringBuilder,
+    ) {
         val dir = when (layout.stylesheets.htmlDir) {
             Layout.HtmlDir.Unspecified -> null
             Layout.HtmlDir.Ltr -> "ltr"
@@ -196,11 +217,17 @@ internal data class ReadiumCss(
         } ?: return
 
         // Removes any dir attributes in html/body.
-        content.replace(0, content.length, content.replace(dirRegex, "$1"))
+        for (tag in listOf("html", "body")) {
+            val index = html.indexOfTag(tag)
+            if (index != -1) {
+                html.attributeRangesOfTagAt(index, "dir")
+                    .forEach { html.remove(it) }
+            }
+        }
 
         val injectable = " dir=\"$dir\""
-        content.insert(content.indexForTagAttributes("html"), injectable)
-        content.insert(content.indexForTagAttributes("body"), injectable)
+        htmlAttributes.insert(0, injectable)
+        bodyAttributes.insert(0, injectable)
     }
 
     /**
@@ -208,55 +235,57 @@ internal data class ReadiumCss(
      *
      * https://github.com/readium/readium-css/blob/develop/docs/CSS16-internationalization.md#language
      */
-    private fun injectLang(content: StringBuilder, document: Document) {
+    private fun injectLang(
+        html: HtmlSplicer,
+        htmlAttributes: StringBuilder,
+        bodyAttributes: StringBuilder,
+    ) {
         val language = layout.language?.code ?: return
 
-        fun Element.hasLang(): Boolean =
-            hasAttr("xml:lang") || hasAttr("lang")
+        fun Map<String, String>.hasLang(): Boolean =
+            containsKey("xml:lang") || containsKey("lang")
 
-        fun Element.lang(): String? =
-            attr("xml:lang").takeIf { it.isNotEmpty() }
-                ?: attr("lang").takeIf { it.isNotEmpty() }
+        fun Map<String, String>.lang(): String? =
+            get("xml:lang")?.takeIf { it.isNotEmpty() }
+                ?: get("lang")?.takeIf { it.isNotEmpty() }
 
-        val html = document.selectFirst("html")
-        if (html?.hasLang() == true) {
+        if (html.attributesOfOpeningTag("html").hasLang()) {
             return
         }
 
-        val body = document.body()
+        val body = html.attributesOfOpeningTag("body")
         if (body.hasLang()) {
-            content.insert(
-                content.indexForTagAttributes("html"),
-                " xml:lang=\"${body.lang() ?: language}\""
-            )
+            htmlAttributes.insert(0, " xml:lang=\"${body.lang() ?: language}\"")
         } else {
             val injectable = " xml:lang=\"$language\""
-            content.insert(content.indexForTagAttributes("html"), injectable)
-            content.insert(content.indexForTagAttributes("body"), injectable)
+            htmlAttributes.insert(0, injectable)
+            bodyAttributes.insert(0, injectable)
         }
     }
 
-    private fun CharSequence.indexForOpeningTag(tag: String): Int =
-        (
-            Regex("""<$tag.*?>""", setOf(RegexOption.IGNORE_CASE, RegexOption.DOT_MATCHES_ALL))
-                .find(this, 0)
-                ?: throw IllegalArgumentException("No <$tag> opening tag found in this resource")
-            ).range.last + 1
+    private fun HtmlSplicer.attributesOfOpeningTag(tag: String): Map<String, String> =
+        indexOfTag(tag)
+            .takeIf { it != -1 }
+            ?.let { attributesOfTagAt(it) }
+            .orEmpty()
+
+    private fun HtmlSplicer.indexForOpeningTag(tag: String): Int =
+        indexOfTag(tag)
+            .takeIf { it != -1 }
+            ?.let { indexOf(">", it) }
+            ?.takeIf { it != -1 }
+            ?.let { it + 1 }
+            ?: throw IllegalArgumentException("No <$tag> opening tag found in this resource")
 
-    private fun CharSequence.indexForClosingTag(tag: String): Int =
-        indexOf("</$tag>", 0, true)
+    private fun HtmlSplicer.indexForClosingTag(tag: String): Int =
+        indexOf("</$tag>")
             .takeIf { it != -1 }
-            ?: throw IllegalArgumentException("No </head> closing tag found in this resource")
+            ?: throw IllegalArgumentException("No </$tag> closing tag found in this resource")
 
-    private fun CharSequence.indexForTagAttributes(tag: String): Int =
+    private fun HtmlSplicer.indexForTagAttributes(tag: String): Int =
         (
-            indexOf("<$tag", 0, true)
+            indexOfTag(tag)
                 .takeIf { it != -1 }
                 ?: throw IllegalArgumentException("No <$tag> opening tag found in this resource")
             ) + tag.length + 1
 }
-
-private val dirRegex = Regex(
-    """(<(?:html|body)[^\>]*)\s+dir=[\"']\w*[\"']""",
-    setOf(RegexOption.IGNORE_CASE, RegexOption.MULTILINE)
-)
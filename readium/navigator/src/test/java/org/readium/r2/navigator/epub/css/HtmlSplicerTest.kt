@@ -0,0 +1,108 @@
+/*
+ * Copyright 2024 Readium Foundation. All rights reserved.
+ * Use of this source code is governed by the BSD-style license
+ * available in the top-level LICENSE file of the project.
+ */
+
+package org.readium.r2.navigator.epub.css
+
+import kotlin.test.assertEquals
+import org.junit.Test
+
+class HtmlSplicerTest {
+
+    private fun splicer(html: String, trim: Boolean = false): HtmlSplicer =
+        HtmlSplicer(html.toByteArray(), trim = trim)
+
+    @Test
+    fun `Find tags ignoring case`() {
+        val sut = splicer("<HTML><Head><TITLE>Title</TITLE></HEAD><BODY></BODY></HTML>")
+        assertEquals(0, sut.indexOfTag("html"))
+        assertEquals(6, sut.indexOfTag("head"))
+        assertEquals(32, sut.indexOf("</head>"))
+        assertEquals(39, sut.indexOfTag("body"))
+    }
+
+    @Test
+    fun `Find a tag followed by attributes, a slash or the end of the document`() {
+        assertEquals(0, splicer("<body\nclass=\"a\">").indexOfTag("body"))
+        assertEquals(0, splicer("<body/>").indexOfTag("body"))
+        assertEquals(0, splicer("<body").indexOfTag("body"))
+    }
+
+    @Test
+    fun `A header tag is not a head tag`() {
+        val sut = splicer("<html><!-- <header> --><header></header><head></head></html>")
+        assertEquals(40, sut.indexOfTag("head"))
+        assertEquals(-1, splicer("<html><header></header></html>").indexOfTag("head"))
+    }
+
+    @Test
+    fun `Missing tags are not found`() {
+        val sut = splicer("<html><head><title>Title</title><body></body></html>")
+        assertEquals(-1, sut.indexOf("</head>"))
+        assertEquals(-1, sut.indexOfTag("link"))
+    }
+
+    @Test
+    fun `Read double-quoted, single-quoted and unquoted attributes`() {
+        val sut = splicer(
+            "<html xmlns=\"http://www.w3.org/1999/xhtml\" XML:LANG='fr' dir=rtl hidden data-a = \"b > c\">"
+        )
+        assertEquals(
+            mapOf(
+                "xmlns" to "http://www.w3.org/1999/xhtml",
+                "xml:lang" to "fr",
+                "dir" to "rtl",
+                "hidden" to "",
+                "data-a" to "b > c"
+            ),
+            sut.attributesOfTagAt(0)
+        )
+    }
+
+    @Test
+    fun `Keep the first occurrence of duplicate attributes`() {
+        val sut = splicer("<body lang=\"fr\" dir=\"rtl\" LANG=\"en\" dir=\"ltr\">")
+        assertEquals(mapOf("lang" to "fr", "dir" to "rtl"), sut.attributesOfTagAt(0))
+    }
+
+    @Test
+    fun `Remove all the occurrences of an attribute`() {
+        val sut = splicer("<body dir=\"rtl\" hidden\n  DIR='ltr' class=\"a\" dir=auto><p dir=\"rtl\"></p></body>")
+        sut.attributeRangesOfTagAt(0, "dir").forEach { sut.remove(it) }
+        assertEquals(
+            "<body hidden class=\"a\"><p dir=\"rtl\"></p></body>",
+            sut.build().decodeToString()
+        )
+    }
+
+    @Test
+    fun `Insert and remove in a single pass`() {
+        val sut = splicer("  <html dir=\"rtl\"><head></head></html>\n", trim = true)
+        val html = sut.indexOfTag("html")
+        sut.attributeRangesOfTagAt(html, "dir").forEach { sut.remove(it) }
+        sut.insert(html + 5, " dir=\"ltr\"")
+        sut.insert(sut.indexOf("</head>"), "<style/>")
+        sut.insert(sut.indexOf("</head>"), "<link/>")
+        assertEquals(
+            "<html dir=\"ltr\"><head><style/><link/></head></html>",
+            sut.build().decodeToString()
+        )
+    }
+
+    @Test
+    fun `Transcode documents in another encoding than UTF-8`() {
+        val html = "<html><head><title>Élan – ça</title></head><body lang=\"fr\"></body></html>"
+        for (charset in listOf(Charsets.ISO_8859_1, Charsets.UTF_16)) {
+            val source = if (charset == Charsets.ISO_8859_1) html.replace(" – ", " - ") else html
+            val sut = HtmlSplicer(source.toByteArray(charset), charset = charset)
+            assertEquals(mapOf("lang" to "fr"), sut.attributesOfTagAt(sut.indexOfTag("body")))
+            sut.insert(sut.indexOf("</head>"), "<style/>")
+            assertEquals(
+                source.replace("</head>", "<style/></head>"),
+                sut.build().toString(Charsets.UTF_8)
+            )
+        }
+    }
+}
@@ -7,6 +7,7 @@
 package org.readium.r2.navigator.epub.css
 
 import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
 import kotlin.test.assertFalse
 import org.junit.Test
 import org.junit.runner.RunWith
@@ -701,4 +702,29 @@ class ReadiumCssTest {
             )
         )
     }
+
+    @Test
+    fun `Fail without a HEAD closing tag`() {
+        val sut = ReadiumCss(
+            layout = Layout(
+                language = null,
+                stylesheets = Layout.Stylesheets.Default,
+                readingProgression = ReadingProgression.LTR
+            ),
+            assetsBaseHref = Url("/assets/")!!
+        )
+        assertFailsWith<IllegalArgumentException> {
+            sut.injectHtml(
+                """
+                    <?xml version="1.0" encoding="utf-8"?>
+                    <html xmlns="http://www.w3.org/1999/xhtml">
+                        <header></header>
+                        <head>
+                            <title>Publication</title>
+                        <body></body>
+                    </html>
+                """.trimIndent()
+            )
+        }
+    }
 }
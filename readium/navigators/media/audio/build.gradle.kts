@@ -24,4 +24,7 @@ dependencies {
 
     implementation(libs.timber)
     implementation(libs.kotlinx.coroutines.android)
+
+    // Tests
+    testImplementation(libs.junit)
 }
@@ -0,0 +1,323 @@
+/*
+ * Copyright 2024 Readium Foundation. All rights reserved.
+ * Use of this source code is governed by the BSD-style license
+ * available in the top-level LICENSE file of the project.
+ */
+
+package org.readium.navigator.media.audio
+
+import kotlin.time.Duration
+import kotlin.time.Duration.Companion.seconds
+import kotlinx.coroutines.CancellationException
+import org.readium.r2.shared.util.resource.Resource
+import timber.log.Timber
+
+/**
+ * Computes the duration of an audio resource from the headers of its container, reading only a
+ * few KB of the resource instead of preparing a media decoder.
+ *
+ * Supports MP3 (Xing, Info and VBRI headers, or the frame size of CBR files), MP4 (`mvhd` box),
+ * Ogg Vorbis and Opus (granule position of the last page) and WAV files.
+ */
+internal object AudioHeaderParser {
+
+    /**
+     * Returns the duration of the audio [resource], or null if its format is not supported or
+     * its headers are incomplete.
+     */
+    suspend fun duration(resource: Resource): Duration? =
+        try {
+            val header = resource.readAt(0, 12)
+            when {
+                header == null || header.size < 12 -> null
+                header.matches(0, "ID3") || header.mpegFrameAt(0) != null -> mp3Duration(resource, header)
+                header.matches(4, "ftyp") -> mp4Duration(resource)
+                header.matches(0, "RIFF") && header.matches(8, "WAVE") -> wavDuration(resource)
+                header.matches(0, "OggS") -> oggDuration(resource)
+                else -> null
+            }
+                ?.takeIf { it.isPositive() && it.isFinite() }
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            Timber.w(e, "Cannot parse the audio headers.")
+            null
+        }
+
+    private suspend fun mp3Duration(resource: Resource, header: ByteArray): Duration? {
+        var audioStart = 0L
+        if (header.matches(0, "ID3")) {
+            val hasFooter = header[5].toInt() and 0x10 != 0
+            audioStart = 10 + header.syncSafeInt(6) + if (hasFooter) 10 else 0
+        }
+
+        val data = resource.readAt(audioStart, 4096) ?: return null
+        var offset = 0
+        var frame: MpegFrame? = null
+        while (frame == null && offset < data.size - 4) {
+            frame = data.mpegFrameAt(offset)
+            if (frame == null) {
+                offset++
+            }
+        }
+        frame ?: return null
+
+        // Variable bitrate files start with a frame holding their frame count.
+        val xingOffset = offset + 4 + frame.sideInfoLength
+        if (data.matches(xingOffset, "Xing") || data.matches(xingOffset, "Info")) {
+            val flags = data.uInt32(xingOffset + 4)
+            if (flags and 0x1 != 0L) {
+                return frame.duration(frameCount = data.uInt32(xingOffset + 8))
+            }
+        }
+        val vbriOffset = offset + 4 + 32
+        if (data.matches(vbriOffset, "VBRI")) {
+            return frame.duration(frameCount = data.uInt32(vbriOffset + 14))
+        }
+
+        // Otherwise, the bitrate is assumed to be constant.
+        val length = resource.length().getOrNull() ?: return null
+        return ((length - audioStart - offset) * 8.0 / frame.bitrate).seconds
+    }
+
+    private class MpegFrame(
+        val bitrate: Int,
+        val sampleRate: Int,
+        val samplesPerFrame: Int,
+        val sideInfoLength: Int,
+    ) {
+        fun duration(frameCount: Long): Duration =
+            (frameCount.toDouble() * samplesPerFrame / sampleRate).seconds
+    }
+
+    /**
+     * Parses the header of an MPEG audio frame at [offset], or returns null if there is none.
+     */
+    private fun ByteArray.mpegFrameAt(offset: Int): MpegFrame? {
+        if (offset + 4 > size) {
+            return null
+        }
+        val b1 = this[offset + 1].toInt() and 0xFF
+        val b2 = this[offset + 2].toInt() and 0xFF
+        val b3 = this[offset + 3].toInt() and 0xFF
+        if (this[offset].toInt() and 0xFF != 0xFF || b1 and 0xE0 != 0xE0) {
+            return null
+        }
+
+        // 3: MPEG 1, 2: MPEG 2, 0: MPEG 2.5
+        val version = (b1 shr 3) and 0x3
+        // 3: Layer I, 2: Layer II, 1: Layer III
+        val layer = (b1 shr 1) and 0x3
+        val bitrateIndex = b2 shr 4
+        val sampleRateIndex = (b2 shr 2) and 0x3
+        if (version == 1 || layer == 0 || bitrateIndex == 0 || bitrateIndex == 15 || sampleRateIndex == 3) {
+            return null
+        }
+
+        val isMpeg1 = version == 3
+        val isMono = b3 shr 6 == 3
+        val bitrates = when {
+            isMpeg1 && layer == 3 -> MPEG1_LAYER1_BITRATES
+            isMpeg1 && layer == 2 -> MPEG1_LAYER2_BITRATES
+            isMpeg1 -> MPEG1_LAYER3_BITRATES
+            layer == 3 -> MPEG2_LAYER1_BITRATES
+            else -> MPEG2_LAYER2_3_BITRATES
+        }
+        val sampleRate = SAMPLE_RATES[sampleRateIndex] / when (version) {
+            3 -> 1
+            2 -> 2
+            else -> 4
+        }
+
+        return MpegFrame(
+            bitrate = bitrates[bitrateIndex] * 1000,
+            sampleRate = sampleRate,
+            samplesPerFrame = when {
+                layer == 3 -> 384
+                layer == 2 || isMpeg1 -> 1152
+                else -> 576
+            },
+            sideInfoLength = when {
+                isMpeg1 -> if (isMono) 17 else 32
+                else -> if (isMono) 9 else 17
+            }
+        )
+    }
+
+    private suspend fun mp4Duration(resource: Resource): Duration? {
+        val length = resource.length().getOrNull() ?: return null
+        val moov = resource.findBox("moov", 0 until length) ?: return null
+        val mvhd = resource.findBox("mvhd", moov) ?: return null
+        val data = resource.readAt(mvhd.first, 32) ?: return null
+
+        val (timescale, duration) =
+            if (data[0].toInt() == 1) {
+                data.uInt32(20) to data.int64(24)
+            } else {
+                data.uInt32(12) to data.uInt32(16).takeUnless { it == 0xFFFFFFFFL }
+            }
+
+        if (timescale == 0L || duration == null) {
+            return null
+        }
+        return (duration.toDouble() / timescale).seconds
+    }
+
+    /**
+     * Finds the first MP4 box of the given [type] among the boxes contained in [range], and
+     * returns the range of its content.
+     *
+     * Only the headers of the boxes are read, to skip the media data.
+     */
+    private suspend fun Resource.findBox(type: String, range: LongRange): LongRange? {
+        var position = range.first
+        repeat(MAX_BOXES) {
+            if (position + 8 > range.last + 1) {
+                return null
+            }
+            val header = readAt(position, 16) ?: return null
+            if (header.size < 8) {
+                return null
+            }
+
+            var boxSize = header.uInt32(0)
+            var headerSize = 8
+            if (boxSize == 1L) {
+                boxSize = header.int64(8)
+                headerSize = 16
+            } else if (boxSize == 0L) {
+                boxSize = range.last + 1 - position
+            }
+            if (boxSize < headerSize) {
+                return null
+            }
+
+            if (header.matches(4, type)) {
+                return (position + headerSize) until (position + boxSize)
+            }
+            position += boxSize
+        }
+        return null
+    }
+
+    private suspend fun wavDuration(resource: Resource): Duration? {
+        var position = 12L
+        var byteRate: Long? = null
+        repeat(MAX_BOXES) {
+            val chunk = resource.readAt(position, 20) ?: return null
+            if (chunk.size < 8) {
+                return null
+            }
+            val chunkSize = chunk.uInt32LE(4)
+            when {
+                chunk.matches(0, "fmt ") && chunk.size >= 20 ->
+                    byteRate = chunk.uInt32LE(16)
+                chunk.matches(0, "data") ->
+                    return byteRate
+                        ?.takeIf { it > 0 }
+                        ?.let { (chunkSize.toDouble() / it).seconds }
+            }
+            // Chunks are padded to an even size.
+            position += 8 + chunkSize + (chunkSize and 1)
+        }
+        return null
+    }
+
+    private suspend fun oggDuration(resource: Resource): Duration? {
+        val firstPage = resource.readAt(0, 128) ?: return null
+        if (firstPage.size < 28) {
+            return null
+        }
+        val packet = 27 + (firstPage[26].toInt() and 0xFF)
+
+        val (sampleRate, preSkip) = when {
+            firstPage.matches(packet, "\u0001vorbis") ->
+                firstPage.uInt32LE(packet + 12) to 0
+            // Opus granule positions are always expressed at 48 kHz.
+            firstPage.matches(packet, "OpusHead") ->
+                48000L to firstPage.uInt16LE(packet + 10)
+            else ->
+                return null
+        }
+        if (sampleRate == 0L) {
+            return null
+        }
+
+        // The granule position of the last page is the number of samples of the stream.
+        val length = resource.length().getOrNull() ?: return null
+        val tailStart = (length - OGG_TAIL_LENGTH).coerceAtLeast(0)
+        val tail = resource.readAt(tailStart, OGG_TAIL_LENGTH.toInt()) ?: return null
+        var page = tail.size - 14
+        while (page >= 0) {
+            if (tail.matches(page, "OggS") && tail[page + 4].toInt() == 0) {
+                val granule = tail.int64LE(page + 6)
+                if (granule > 0) {
+                    return ((granule - preSkip).toDouble() / sampleRate).seconds
+                }
+            }
+            page--
+        }
+        return null
+    }
+
+    private suspend fun Resource.readAt(position: Long, length: Int): ByteArray? =
+        read(position until position + length).getOrNull()
+
+    private fun ByteArray.matches(offset: Int, string: String): Boolean =
+        offset >= 0 && offset + string.length <= size &&
+            string.indices.all { this[offset + it].toInt() and 0xFF == string[it].code }
+
+    private fun ByteArray.byteAt(offset: Int): Long =
+        (this[offset].toLong() and 0xFF)
+
+    private fun ByteArray.uInt32(offset: Int): Long =
+        (byteAt(offset) shl 24) or (byteAt(offset + 1) shl 16) or
+            (byteAt(offset + 2) shl 8) or byteAt(offset + 3)
+
+    private fun ByteArray.int64(offset: Int): Long =
+        (uInt32(offset) shl 32) or uInt32(offset + 4)
+
+    private fun ByteArray.uInt16LE(offset: Int): Int =
+        (byteAt(offset) or (byteAt(offset + 1) shl 8)).toInt()
+
+    private fun ByteArray.uInt32LE(offset: Int): Long =
+        byteAt(offset) or (byteAt(offset + 1) shl 8) or
+            (byteAt(offset + 2) shl 16) or (byteAt(offset + 3) shl 24)
+
+    private fun ByteArray.int64LE(offset: Int): Long =
+        uInt32LE(offset) or (uInt32LE(offset + 4) shl 32)
+
+    /**
+     * Size of an ID3v2 tag, stored on 7 bits per byte.
+     */
+    private fun ByteArray.syncSafeInt(offset: Int): Long =
+        (byteAt(offset) and 0x7F shl 21) or (byteAt(offset + 1) and 0x7F shl 14) or
+            (byteAt(offset + 2) and 0x7F shl 7) or (byteAt(offset + 3) and 0x7F)
+
+    /**
+     * Maximum number of MP4 boxes or WAV chunks visited, to bail out of corrupted files.
+     */
+    private const val MAX_BOXES = 1000
+
+    /**
+     * Length read at the end of an Ogg file to find its last page, which is at most 64 KB.
+     */
+    private const val OGG_TAIL_LENGTH = 65_307L
+
+    private val SAMPLE_RATES = intArrayOf(44100, 48000, 32000)
+
+    private val MPEG1_LAYER1_BITRATES =
+        intArrayOf(0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448)
+
+    private val MPEG1_LAYER2_BITRATES =
+        intArrayOf(0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384)
+
+    private val MPEG1_LAYER3_BITRATES =
+        intArrayOf(0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320)
+
+    private val MPEG2_LAYER1_BITRATES =
+        intArrayOf(0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256)
+
+    private val MPEG2_LAYER2_3_BITRATES =
+        intArrayOf(0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160)
+}
@@ -8,8 +8,7 @@
 
 package org.readium.navigator.media.audio
 
-import android.os.Build
-import kotlin.time.Duration
+import java.io.File
 import kotlin.time.Duration.Companion.seconds
 import kotlin.time.ExperimentalTime
 import org.readium.r2.navigator.extensions.normalizeLocator
@@ -34,10 +33,21 @@ public class AudioNavigatorFactory<
     > private constructor(
     private val publication: Publication,
     private val audioEngineProvider: AudioEngineProvider<S, P, E>,
+    private val durationProbe: DurationProbe,
 ) {
 
     public companion object {
 
+        /**
+         * Creates a factory for the given audiobook [publication].
+         *
+         * The durations of the tracks missing from the manifest are computed when creating a
+         * navigator. Provide a [durationCacheDirectory] to store them, so that the tracks are
+         * not probed again the next time the publication is opened.
+         *
+         * @param durationCacheDirectory Directory where the durations of the tracks are stored.
+         * Share the same directory between all the publications.
+         */
         public operator fun <
             S : Configurable.Settings,
             P : Configurable.Preferences<P>,
@@ -45,6 +55,7 @@ public class AudioNavigatorFactory<
             > invoke(
             publication: Publication,
             audioEngineProvider: AudioEngineProvider<S, P, E>,
+            durationCacheDirectory: File? = null,
         ): AudioNavigatorFactory<S, P, E>? {
             if (!publication.conformsTo(Publication.Profile.AUDIOBOOK)) {
                 return null
@@ -60,7 +71,11 @@ public class AudioNavigatorFactory<
 
             return AudioNavigatorFactory(
                 publication,
-                audioEngineProvider
+                audioEngineProvider,
+                DurationProbe(
+                    publication = publication,
+                    cache = durationCacheDirectory?.let { DurationProbe.createCache(it) }
+                )
             )
         }
     }
@@ -84,24 +99,11 @@ public class AudioNavigatorFactory<
         initialPreferences: P? = null,
         readingOrder: List<Link> = publication.readingOrder,
     ): Try<AudioNavigator<S, P>, Error> {
-        fun duration(link: Link, publication: Publication): Duration? {
-            var duration: Duration? = link.duration?.seconds
-                .takeUnless { it == Duration.ZERO }
-
-            if (duration == null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                val resource = requireNotNull(publication.get(link))
-                val metadataRetriever = MetadataRetriever(resource)
-                duration = metadataRetriever.duration()
-                metadataRetriever.close()
-            }
-
-            return duration
-        }
-
-        val items = readingOrder.map {
+        val durations = durationProbe.durations(readingOrder)
+        val items = readingOrder.mapIndexed { i, link ->
             AudioNavigator.ReadingOrder.Item(
-                href = it.url(),
-                duration = duration(it, publication)
+                href = link.url(),
+                duration = durations[i]
             )
         }
         val totalDuration = publication.metadata.duration?.seconds
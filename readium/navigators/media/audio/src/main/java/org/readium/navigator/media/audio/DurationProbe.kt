@@ -0,0 +1,118 @@
+/*
+ * Copyright 2024 Readium Foundation. All rights reserved.
+ * Use of this source code is governed by the BSD-style license
+ * available in the top-level LICENSE file of the project.
+ */
+
+@file:OptIn(InternalReadiumApi::class)
+
+package org.readium.navigator.media.audio
+
+import android.os.Build
+import java.io.File
+import kotlin.time.Duration
+import kotlin.time.Duration.Companion.seconds
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import org.readium.r2.shared.InternalReadiumApi
+import org.readium.r2.shared.publication.Link
+import org.readium.r2.shared.publication.Publication
+import org.readium.r2.shared.publication.services.readingOrderFingerprint
+import org.readium.r2.shared.util.cache.Cache
+import org.readium.r2.shared.util.cache.FileCache
+import org.readium.r2.shared.util.use
+
+/**
+ * Finds the durations of the audio tracks of a [publication] missing from its manifest.
+ *
+ * The tracks are probed concurrently, with at most [parallelism] of them at the same time. Their
+ * duration is read from the container headers with [AudioHeaderParser], falling back on a
+ * [MetadataRetriever] for the unsupported formats.
+ *
+ * The probed durations are stored in the persistent [cache], to open the publication again
+ * without reading any track.
+ */
+internal class DurationProbe(
+    private val publication: Publication,
+    private val cache: Cache<List<Duration?>>?,
+    private val parallelism: Int = 4,
+) {
+
+    suspend fun durations(readingOrder: List<Link>): List<Duration?> {
+        val declared = readingOrder.map { link ->
+            link.duration?.seconds?.takeUnless { it == Duration.ZERO }
+        }
+        if (declared.all { it != null }) {
+            return declared
+        }
+
+        val key = cacheKey(readingOrder)
+        if (cache != null && key != null) {
+            cache.transaction { get(key) }
+                ?.takeIf { it.size == readingOrder.size }
+                ?.let { cached -> return declared.zip(cached) { d, c -> d ?: c } }
+        }
+
+        val semaphore = Semaphore(parallelism)
+        val durations = coroutineScope {
+            readingOrder.mapIndexed { i, link ->
+                async(Dispatchers.IO) {
+                    declared[i] ?: semaphore.withPermit { probe(link) }
+                }
+            }.awaitAll()
+        }
+
+        if (cache != null && key != null) {
+            cache.transaction { put(key, durations) }
+        }
+        return durations
+    }
+
+    private suspend fun probe(link: Link): Duration? {
+        val resource = publication.get(link) ?: return null
+        return resource.use {
+            AudioHeaderParser.duration(it)
+                ?: if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                    val metadataRetriever = MetadataRetriever(it)
+                    val duration = metadataRetriever.duration()
+                    metadataRetriever.close()
+                    duration
+                } else {
+                    null
+                }
+        }
+    }
+
+    /**
+     * The durations are cached only for publications having an identifier, together with the
+     * tracks of the reading order and their lengths, so that another edition of the publication
+     * doesn't reuse stale durations.
+     */
+    private suspend fun cacheKey(readingOrder: List<Link>): String? {
+        val identifier = publication.metadata.identifier ?: return null
+        return identifier + "\n" + publication.readingOrderFingerprint(readingOrder)
+    }
+
+    companion object {
+
+        fun createCache(directory: File): Cache<List<Duration?>> =
+            FileCache(
+                directory = directory,
+                encode = { durations ->
+                    durations
+                        .joinToString("\n") { it?.inWholeMicroseconds?.toString().orEmpty() }
+                        .toByteArray()
+                },
+                decode = { bytes ->
+                    bytes.decodeToString()
+                        .split("\n")
+                        .map { it.toLongOrNull()?.let { micros -> (micros / 1_000_000.0).seconds } }
+                },
+                maxSize = 1024 * 1024
+            )
+    }
+}
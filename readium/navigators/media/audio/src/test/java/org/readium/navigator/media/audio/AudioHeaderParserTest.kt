@@ -0,0 +1,331 @@
+package org.readium.navigator.media.audio
+
+import java.io.ByteArrayOutputStream
+import kotlin.time.Duration
+import kotlin.time.Duration.Companion.seconds
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.readium.r2.shared.util.resource.InMemoryResource
+
+class AudioHeaderParserTest {
+
+    private class Sample(val name: String, val bytes: ByteArray, val duration: Duration?)
+
+    private fun assertDurations(samples: List<Sample>) = runBlocking {
+        for (sample in samples) {
+            assertEquals(
+                sample.name,
+                sample.duration,
+                AudioHeaderParser.duration(InMemoryResource(sample.bytes))
+            )
+        }
+    }
+
+    @Test
+    fun `parse the duration of MP3 files`() {
+        assertDurations(
+            listOf(
+                Sample(
+                    "ID3 tag and Xing header",
+                    bytes {
+                        id3Tag(size = 100)
+                        mpegFrameHeader()
+                        zeros(32)
+                        ascii("Xing")
+                        be32(0x1) // Flags: frame count.
+                        be32(1000)
+                        zeros(1000)
+                    },
+                    (1000 * 1152.0 / 44100).seconds
+                ),
+                Sample(
+                    "VBRI header",
+                    bytes {
+                        mpegFrameHeader()
+                        zeros(32)
+                        ascii("VBRI")
+                        zeros(10) // Version, delay, quality and byte count.
+                        be32(500)
+                        zeros(1000)
+                    },
+                    (500 * 1152.0 / 44100).seconds
+                ),
+                Sample(
+                    "ID3 tag and constant bitrate",
+                    bytes {
+                        id3Tag(size = 100)
+                        mpegFrameHeader()
+                        // 1 second at 128 kbps.
+                        zeros(16_000 - 4)
+                    },
+                    1.seconds
+                )
+            )
+        )
+    }
+
+    @Test
+    fun `parse the duration of MP4 files`() {
+        assertDurations(
+            listOf(
+                Sample(
+                    "mdat before moov",
+                    bytes {
+                        ftypBox()
+                        box("mdat", ByteArray(1000))
+                        box(
+                            "moov",
+                            bytes {
+                                box(
+                                    "mvhd",
+                                    bytes {
+                                        u8(0, 0, 0, 0) // Version and flags.
+                                        be32(0) // Creation time.
+                                        be32(0) // Modification time.
+                                        be32(1000) // Timescale.
+                                        be32(5500) // Duration.
+                                        zeros(80)
+                                    }
+                                )
+                            }
+                        )
+                    },
+                    5.5.seconds
+                ),
+                Sample(
+                    "version 1 mvhd and 64-bit mdat size",
+                    bytes {
+                        ftypBox()
+                        be32(1)
+                        ascii("mdat")
+                        be64(16L + 500)
+                        zeros(500)
+                        box(
+                            "moov",
+                            bytes {
+                                box(
+                                    "mvhd",
+                                    bytes {
+                                        u8(1, 0, 0, 0) // Version and flags.
+                                        be64(0) // Creation time.
+                                        be64(0) // Modification time.
+                                        be32(44100) // Timescale.
+                                        be64(3L * 44100) // Duration.
+                                        zeros(80)
+                                    }
+                                )
+                            }
+                        )
+                    },
+                    3.seconds
+                )
+            )
+        )
+    }
+
+    @Test
+    fun `parse the duration of Ogg files`() {
+        assertDurations(
+            listOf(
+                Sample(
+                    "Vorbis",
+                    bytes {
+                        oggPage(
+                            granule = 0,
+                            packet = bytes {
+                                u8(1)
+                                ascii("vorbis")
+                                le32(0) // Version.
+                                u8(2) // Channels.
+                                le32(44100) // Sample rate.
+                                zeros(14) // Bitrates, block sizes and framing.
+                            }
+                        )
+                        zeros(1000)
+                        oggPage(granule = 10L * 44100, packet = ByteArray(10))
+                    },
+                    10.seconds
+                ),
+                Sample(
+                    "Opus with pre-skip",
+                    bytes {
+                        oggPage(
+                            granule = 0,
+                            packet = bytes {
+                                ascii("OpusHead")
+                                u8(1) // Version.
+                                u8(2) // Channels.
+                                le16(312) // Pre-skip.
+                                le32(44100) // Input sample rate.
+                                zeros(3) // Output gain and mapping family.
+                            }
+                        )
+                        zeros(1000)
+                        oggPage(granule = 2L * 48000 + 312, packet = ByteArray(10))
+                    },
+                    2.seconds
+                )
+            )
+        )
+    }
+
+    @Test
+    fun `parse the duration of WAV files`() {
+        assertDurations(
+            listOf(
+                Sample(
+                    "odd-sized chunk",
+                    bytes {
+                        ascii("RIFF")
+                        le32(0)
+                        ascii("WAVE")
+                        ascii("fmt ")
+                        le32(16)
+                        le16(1) // PCM.
+                        le16(2) // Channels.
+                        le32(44100) // Sample rate.
+                        le32(44100L * 2 * 2) // Byte rate.
+                        le16(4) // Block align.
+                        le16(16) // Bits per sample.
+                        ascii("LIST")
+                        le32(5)
+                        zeros(5 + 1) // Content and padding byte.
+                        ascii("data")
+                        le32(2L * 44100 * 2 * 2)
+                        zeros(100)
+                    },
+                    2.seconds
+                )
+            )
+        )
+    }
+
+    @Test
+    fun `truncated or unknown files have no duration`() {
+        assertDurations(
+            listOf(
+                Sample("empty", ByteArray(0), null),
+                Sample("unknown", ByteArray(100) { 1 }, null),
+                Sample(
+                    "MP3",
+                    bytes {
+                        id3Tag(size = 100)
+                        zeros(10)
+                    },
+                    null
+                ),
+                Sample(
+                    "MP4",
+                    bytes {
+                        ftypBox()
+                        be32(100)
+                        ascii("moov")
+                    },
+                    null
+                ),
+                Sample(
+                    "Ogg",
+                    bytes {
+                        ascii("OggS")
+                        zeros(16)
+                    },
+                    null
+                ),
+                Sample(
+                    "WAV",
+                    bytes {
+                        ascii("RIFF")
+                        le32(0)
+                        ascii("WAVE")
+                        ascii("fmt ")
+                        le32(16)
+                    },
+                    null
+                )
+            )
+        )
+    }
+
+    private fun bytes(block: ByteArrayOutputStream.() -> Unit): ByteArray =
+        ByteArrayOutputStream().apply(block).toByteArray()
+
+    private fun ByteArrayOutputStream.u8(vararg values: Int) {
+        values.forEach { write(it) }
+    }
+
+    private fun ByteArrayOutputStream.zeros(count: Int) {
+        write(ByteArray(count))
+    }
+
+    private fun ByteArrayOutputStream.ascii(string: String) {
+        write(string.toByteArray(Charsets.US_ASCII))
+    }
+
+    private fun ByteArrayOutputStream.be32(value: Long) {
+        u8(*IntArray(4) { (value shr (24 - 8 * it)).toInt() and 0xFF })
+    }
+
+    private fun ByteArrayOutputStream.be64(value: Long) {
+        be32(value ushr 32)
+        be32(value and 0xFFFFFFFFL)
+    }
+
+    private fun ByteArrayOutputStream.le16(value: Int) {
+        u8(value and 0xFF, (value shr 8) and 0xFF)
+    }
+
+    private fun ByteArrayOutputStream.le32(value: Long) {
+        u8(*IntArray(4) { (value shr (8 * it)).toInt() and 0xFF })
+    }
+
+    private fun ByteArrayOutputStream.le64(value: Long) {
+        le32(value and 0xFFFFFFFFL)
+        le32(value ushr 32)
+    }
+
+    /**
+     * ID3v2 tag of [size] bytes, without footer.
+     */
+    private fun ByteArrayOutputStream.id3Tag(size: Int) {
+        ascii("ID3")
+        u8(3, 0, 0)
+        u8(*IntArray(4) { (size shr (21 - 7 * it)) and 0x7F })
+        zeros(size)
+    }
+
+    /**
+     * MPEG 1 Layer III frame header, at 128 kbps, 44.1 kHz and in stereo.
+     */
+    private fun ByteArrayOutputStream.mpegFrameHeader() {
+        u8(0xFF, 0xFB, 0x90, 0x00)
+    }
+
+    private fun ByteArrayOutputStream.box(type: String, content: ByteArray) {
+        be32(8L + content.size)
+        ascii(type)
+        write(content)
+    }
+
+    private fun ByteArrayOutputStream.ftypBox() {
+        box(
+            "ftyp",
+            bytes {
+                ascii("isom")
+                be32(0x200)
+            }
+        )
+    }
+
+    private fun ByteArrayOutputStream.oggPage(granule: Long, packet: ByteArray) {
+        ascii("OggS")
+        u8(0) // Version.
+        u8(0) // Header type.
+        le64(granule)
+        le32(1) // Serial number.
+        le32(0) // Sequence number.
+        le32(0) // Checksum.
+        u8(1, packet.size) // Segment table.
+        write(packet)
+    }
+}
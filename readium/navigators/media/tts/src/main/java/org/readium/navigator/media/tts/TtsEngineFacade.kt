@@ -7,15 +7,14 @@
 package org.readium.navigator.media.tts
 
 import java.util.*
-import kotlinx.coroutines.CancellableContinuation
-import kotlinx.coroutines.ExperimentalCoroutinesApi
-import kotlinx.coroutines.suspendCancellableCoroutine
+import java.util.concurrent.ConcurrentHashMap
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CompletableDeferred
 import org.readium.r2.navigator.preferences.Configurable
 import org.readium.r2.shared.ExperimentalReadiumApi
 import org.readium.r2.shared.util.Language
 
 @ExperimentalReadiumApi
-@OptIn(ExperimentalCoroutinesApi::class)
 internal class TtsEngineFacade<
     S : TtsEngine.Settings,
     P : TtsEngine.Preferences<P>,
@@ -25,6 +24,12 @@ internal class TtsEngineFacade<
     private val engine: TtsEngine<S, P, E, V>,
 ) : Configurable<S, P> by engine {
 
+    /**
+     * Utterances submitted to the engine and not spoken yet, indexed by their request ID.
+     */
+    private val tasks: MutableMap<TtsEngine.RequestId, UtteranceTask<E>> =
+        ConcurrentHashMap()
+
     init {
         val listener = EngineListener()
         engine.setListener(listener)
@@ -33,34 +38,62 @@ internal class TtsEngineFacade<
     val voices: Set<V>
         get() = engine.voices
 
-    suspend fun speak(text: String, language: Language?, onRange: (IntRange) -> Unit): E? =
-        suspendCancellableCoroutine { continuation ->
-            continuation.invokeOnCancellation { engine.stop() }
-            currentTask?.continuation?.cancel()
-            val id = TtsEngine.RequestId(UUID.randomUUID().toString())
-            currentTask = UtteranceTask(id, continuation, onRange)
-            engine.speak(id, text, language)
+    /**
+     * Submits an utterance to the engine, which queues it after the pending ones.
+     *
+     * The returned [UtteranceTask] completes when the utterance is spoken.
+     */
+    fun enqueue(text: String, language: Language?, onRange: (IntRange) -> Unit): UtteranceTask<E> {
+        val id = TtsEngine.RequestId(UUID.randomUUID().toString())
+        val task = UtteranceTask<E>(id, CompletableDeferred(), onRange)
+        tasks[id] = task
+        engine.speak(id, text, language)
+        return task
+    }
+
+    /**
+     * Waits for the given [task] to be spoken, and returns the engine error if it failed.
+     *
+     * All the pending utterances are stopped if the caller is cancelled.
+     */
+    suspend fun await(task: UtteranceTask<E>): E? =
+        try {
+            task.result.await()
+        } catch (e: CancellationException) {
+            stop()
+            throw e
         }
 
+    /**
+     * Stops the engine and cancels all the pending utterances.
+     */
+    fun stop() {
+        engine.stop()
+        cancelTasks()
+    }
+
     fun close() {
-        currentTask?.continuation?.cancel()
+        cancelTasks()
         engine.close()
     }
 
-    private var currentTask: UtteranceTask<E>? = null
-
-    private data class UtteranceTask<E : TtsEngine.Error>(
+    class UtteranceTask<E : TtsEngine.Error>(
         val requestId: TtsEngine.RequestId,
-        val continuation: CancellableContinuation<E?>,
+        val result: CompletableDeferred<E?>,
         val onRange: (IntRange) -> Unit,
     )
 
+    private fun cancelTasks() {
+        for (id in tasks.keys.toList()) {
+            popTask(id)?.result?.cancel()
+        }
+    }
+
     private fun getTask(id: TtsEngine.RequestId) =
-        currentTask?.takeIf { it.requestId == id }
+        tasks[id]
 
     private fun popTask(id: TtsEngine.RequestId) =
-        getTask(id)
-            ?.also { currentTask = null }
+        tasks.remove(id)
 
     private inner class EngineListener : TtsEngine.Listener<E> {
 
@@ -72,19 +105,19 @@ internal class TtsEngineFacade<
         }
 
         override fun onInterrupted(requestId: TtsEngine.RequestId) {
-            popTask(requestId)?.continuation?.cancel()
+            popTask(requestId)?.result?.cancel()
         }
 
         override fun onFlushed(requestId: TtsEngine.RequestId) {
-            popTask(requestId)?.continuation?.cancel()
+            popTask(requestId)?.result?.cancel()
         }
 
         override fun onDone(requestId: TtsEngine.RequestId) {
-            popTask(requestId)?.continuation?.resume(null) { _, _, _ -> }
+            popTask(requestId)?.result?.complete(null)
         }
 
         override fun onError(requestId: TtsEngine.RequestId, error: E) {
-            popTask(requestId)?.continuation?.resume(error) { _, _, _ -> }
+            popTask(requestId)?.result?.complete(error)
         }
     }
 }
@@ -11,6 +11,7 @@ package org.readium.navigator.media.tts
 import android.app.Application
 import androidx.media3.common.MediaItem
 import androidx.media3.common.PlaybackParameters
+import java.io.File
 import kotlinx.coroutines.MainScope
 import org.readium.navigator.media.common.DefaultMediaMetadataProvider
 import org.readium.navigator.media.common.MediaMetadataProvider
@@ -61,11 +62,13 @@ public class TtsNavigatorFactory<
             metadataProvider: MediaMetadataProvider = defaultMediaMetadataProvider,
             defaults: AndroidTtsDefaults = AndroidTtsDefaults(),
             voiceSelector: (Language?, Set<AndroidTtsEngine.Voice>) -> AndroidTtsEngine.Voice? = defaultVoiceSelector,
+            renderedAudioDirectory: File? = null,
         ): AndroidTtsNavigatorFactory? {
             val engineProvider = AndroidTtsEngineProvider(
                 context = application,
                 defaults = defaults,
-                voiceSelector = voiceSelector
+                voiceSelector = voiceSelector,
+                renderedAudioDirectory = renderedAudioDirectory
             )
 
             return createNavigatorFactory(
@@ -150,11 +153,21 @@ public class TtsNavigatorFactory<
         ) : Error("Failed to initialize TTS engine.", cause)
     }
 
+    /**
+     * Creates a [TtsNavigator] starting at [initialLocator].
+     *
+     * @param lookAheadUtteranceCount Number of utterances submitted to the engine ahead of the one
+     * being spoken, so that it starts them without pausing between sentences. Set it to 0 if the
+     * engine doesn't queue the utterances passed to [TtsEngine.speak].
+     */
     public suspend fun createNavigator(
         listener: TtsNavigator.Listener,
         initialLocator: Locator? = null,
         initialPreferences: P? = null,
+        lookAheadUtteranceCount: Int = 2,
     ): Try<TtsNavigator<S, P, F, V>, Error> {
+        require(lookAheadUtteranceCount >= 0)
+
         if (publication.findService(ContentService::class) == null) {
             return Try.failure(
                 Error.UnsupportedPublication(
@@ -204,7 +217,7 @@ public class TtsNavigatorFactory<
             }
 
         val ttsPlayer =
-            TtsPlayer(ttsEngine, contentIterator, actualInitialPreferences)
+            TtsPlayer(ttsEngine, contentIterator, actualInitialPreferences, lookAheadUtteranceCount)
                 ?: return Try.failure(
                     Error.UnsupportedPublication(DebugError("Empty content."))
                 )
@@ -50,6 +50,7 @@ internal class TtsPlayer<
     private val contentIterator: TtsUtteranceIterator,
     initialWindow: UtteranceWindow,
     initialPreferences: P,
+    private val lookAheadCount: Int,
 ) : Configurable<S, P> {
 
     companion object {
@@ -63,6 +64,7 @@ internal class TtsPlayer<
             engine: TtsEngine<S, P, E, V>,
             contentIterator: TtsUtteranceIterator,
             initialPreferences: P,
+            lookAheadCount: Int,
         ): TtsPlayer<S, P, E, V>? {
             val initialContext = tryOrNull { contentIterator.startContext() }
                 ?: return null
@@ -76,7 +78,8 @@ internal class TtsPlayer<
                 ttsEngineFacade,
                 contentIterator,
                 initialContext,
-                initialPreferences
+                initialPreferences,
+                lookAheadCount
             )
         }
 
@@ -167,6 +170,13 @@ internal class TtsPlayer<
     private var utteranceWindow: UtteranceWindow =
         initialWindow
 
+    /**
+     * Utterances following [utteranceWindow] already read from [contentIterator], to be queued in
+     * the engine ahead of the playback.
+     */
+    private val lookAheadUtterances: ArrayDeque<TtsUtteranceIterator.Utterance> =
+        ArrayDeque()
+
     private var playbackJob: Job? =
         null
 
@@ -328,6 +338,14 @@ internal class TtsPlayer<
     }
 
     fun restartUtterance() {
+        restartUtterance(discardLookAhead = false)
+    }
+
+    /**
+     * @param discardLookAhead Whether the utterances read ahead are discarded, to read them again
+     * with new settings of the content iterator.
+     */
+    private fun restartUtterance(discardLookAhead: Boolean) {
         if (playbackMutable.value.state == State.Ended) {
             playbackMutable.value = playbackMutable.value.copy(state = State.Ready)
         }
@@ -336,6 +354,14 @@ internal class TtsPlayer<
             mutex.withLock {
                 playbackJob?.cancel()
                 playbackJob?.join()
+                if (discardLookAhead) {
+                    try {
+                        rewindLookAhead()
+                    } catch (e: Exception) {
+                        onContentException(e)
+                        return@withLock
+                    }
+                }
                 utteranceMutable.value = utteranceMutable.value.copy(range = null)
                 playIfReadyAndNotPaused()
             }
@@ -442,6 +468,8 @@ internal class TtsPlayer<
 
         val previousUtterance =
             try {
+                rewindLookAhead()
+
                 // Get previously currentUtterance once more
                 contentIterator.previous()
 
@@ -484,7 +512,8 @@ internal class TtsPlayer<
         }
 
         val nextUtterance = try {
-            contentIterator.next()
+            lookAheadUtterances.removeFirstOrNull()
+                ?: contentIterator.next()
         } catch (e: Exception) {
             onContentException(e)
             return
@@ -502,6 +531,9 @@ internal class TtsPlayer<
     }
 
     private suspend fun resetContext() {
+        // The content iterator was moved, the look-ahead utterances are obsolete.
+        lookAheadUtterances.clear()
+
         val startContext = try {
             contentIterator.startContext()
         } catch (e: Exception) {
@@ -521,22 +553,78 @@ internal class TtsPlayer<
         playbackJob?.cancel()
     }
 
-    private suspend fun playContinuous() {
-        if (!coroutineContext.isActive) {
-            return
+    /**
+     * Moves the content iterator back to the end of [utteranceWindow].
+     */
+    private suspend fun rewindLookAhead() {
+        repeat(lookAheadUtterances.size) {
+            contentIterator.previous()
         }
+        lookAheadUtterances.clear()
+    }
 
-        val error = speakUtterance(utteranceWindow.currentUtterance)
+    private suspend fun playContinuous() {
+        // Utterances submitted to the engine, starting with the current one. The following ones
+        // are queued ahead so that the engine starts them without delay.
+        val queue = ArrayDeque<TtsEngineFacade.UtteranceTask<E>>()
+
+        try {
+            while (coroutineContext.isActive) {
+                mutex.withLock { enqueueUtterances(queue) }
+                val task = queue.firstOrNull() ?: return
+                val error = engineFacade.await(task)
+                queue.removeFirst()
+
+                mutex.withLock {
+                    error?.let { exception -> onEngineError(exception) }
+                    tryLoadNextContext()
+                }
+            }
+        } finally {
+            if (queue.isNotEmpty()) {
+                engineFacade.stop()
+            }
+        }
+    }
 
-        mutex.withLock {
-            error?.let { exception -> onEngineError(exception) }
-            tryLoadNextContext()
+    /**
+     * Submits to the engine the current utterance and up to [lookAheadCount] following ones,
+     * besides the ones already in the [queue].
+     */
+    private suspend fun enqueueUtterances(queue: ArrayDeque<TtsEngineFacade.UtteranceTask<E>>) {
+        val window = utteranceWindow
+        while (queue.size <= lookAheadCount) {
+            val utterance = when (val index = queue.size) {
+                0 -> window.currentUtterance
+                1 -> window.nextUtterance
+                else -> lookAheadUtterance(index - 2)
+            } ?: return
+
+            val task = engineFacade.enqueue(utterance.utterance, utterance.language) { range ->
+                // Ignores the ranges received before the player moved to this utterance.
+                if (utteranceWindow.currentUtterance === utterance) {
+                    onRangeChanged(range)
+                }
+            }
+            queue.addLast(task)
         }
-        playContinuous()
     }
 
-    private suspend fun speakUtterance(utterance: TtsUtteranceIterator.Utterance): E? =
-        engineFacade.speak(utterance.utterance, utterance.language, ::onRangeChanged)
+    private suspend fun lookAheadUtterance(index: Int): TtsUtteranceIterator.Utterance? {
+        while (lookAheadUtterances.size <= index) {
+            val utterance =
+                try {
+                    contentIterator.next()
+                } catch (e: Exception) {
+                    onContentException(e)
+                    return null
+                }
+                    ?: return null
+
+            lookAheadUtterances.addLast(utterance)
+        }
+        return lookAheadUtterances[index]
+    }
 
     private fun onEngineError(error: E) {
         playbackMutable.value = playbackMutable.value.copy(
@@ -578,7 +666,8 @@ internal class TtsPlayer<
         }
 
         submitPreferencesForSure(preferences)
-        restartUtterance()
+        // The utterances read ahead may have been split with the former language.
+        restartUtterance(discardLookAhead = true)
     }
 
     private fun submitPreferencesForSure(preferences: P) {
@@ -8,6 +8,8 @@
 
 package org.readium.navigator.media.tts
 
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
 import org.readium.r2.shared.ExperimentalReadiumApi
 import org.readium.r2.shared.InternalReadiumApi
 import org.readium.r2.shared.publication.Locator
@@ -156,9 +158,13 @@ internal class TtsUtteranceIterator(
         val content = publicationIterator.nextIn(direction)
             ?: return false
 
-        val nextUtterances = content
-            .tokenize()
-            .flatMap { it.utterances() }
+        // Tokenizing is CPU-bound, it must not block the playback on the main thread.
+        val tokenizer = contentTokenizer()
+        val nextUtterances = withContext(Dispatchers.Default) {
+            tokenizer
+                .tokenize(content)
+                .flatMap { it.utterances() }
+        }
 
         if (nextUtterances.isEmpty()) {
             return loadNextUtterances(direction)
@@ -176,18 +182,17 @@ internal class TtsUtteranceIterator(
     }
 
     /**
-     * Splits a publication [Content.Element] item into smaller chunks using the provided tokenizer.
+     * Creates a tokenizer splitting a publication [Content.Element] item into smaller chunks with
+     * the current language settings.
      *
      * This is used to split a paragraph into sentences, for example.
      */
-    private fun Content.Element.tokenize(): List<Content.Element> {
-        val contentTokenizer = TextContentTokenizer(
-            language = this@TtsUtteranceIterator.language,
+    private fun contentTokenizer(): TextContentTokenizer =
+        TextContentTokenizer(
+            language = language,
             textTokenizerFactory = tokenizerFactory,
             overrideContentLanguage = overrideContentLanguage
         )
-        return contentTokenizer.tokenize(this)
-    }
 
     /**
      * Splits a publication [Content.Element] item into the utterances to be spoken.
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2024 Readium Foundation. All rights reserved.
+ * Use of this source code is governed by the BSD-style license
+ * available in the top-level LICENSE file of the project.
+ */
+
+@file:OptIn(InternalReadiumApi::class)
+
+package org.readium.navigator.media.tts.android
+
+import java.io.File
+import java.io.RandomAccessFile
+import java.security.MessageDigest
+import kotlin.time.Duration
+import kotlin.time.Duration.Companion.seconds
+import org.readium.r2.shared.ExperimentalReadiumApi
+import org.readium.r2.shared.InternalReadiumApi
+import org.readium.r2.shared.extensions.tryOrNull
+import org.readium.r2.shared.util.Language
+
+/**
+ * Audio files of utterances pre-rendered by [AndroidTtsRenderer], stored in [directory].
+ *
+ * A clip is identified by the engine settings (voices, pitch, speed, etc.), the utterance language
+ * and its text, so that it is played only with the settings it was rendered with.
+ *
+ * When the total size of the clips exceeds [maxSize] bytes, the least recently played or rendered
+ * clips are evicted until the cache is back under [evictedSizeRatio] of [maxSize], like a
+ * `FileCache`.
+ */
+@ExperimentalReadiumApi
+internal class AndroidTtsClipCache(
+    private val directory: File,
+    private val maxSize: Long = Long.MAX_VALUE,
+    private val evictedSizeRatio: Double = 0.9,
+) {
+
+    init {
+        require(evictedSizeRatio in 0.0..1.0)
+    }
+
+    /**
+     * Name of the clip of an utterance.
+     */
+    fun key(settings: AndroidTtsSettings, language: Language?, text: String): String =
+        sha256("$settings\n${language?.code}\n$text")
+
+    fun file(key: String): File =
+        File(directory, "$key.wav")
+
+    /**
+     * Timing index of the clips of the publication with the given [identifier], rendered with
+     * [settings].
+     */
+    fun indexFile(identifier: String, settings: AndroidTtsSettings): File =
+        File(directory, "index-${sha256("$identifier\n$settings")}.json")
+
+    private fun sha256(value: String): String =
+        MessageDigest.getInstance("SHA-256")
+            .digest(value.toByteArray())
+            .joinToString("") { "%02x".format(it) }
+
+    /**
+     * Returns the file of the clip with the given [key], if it was rendered.
+     */
+    fun existingFile(key: String): File? =
+        file(key)
+            .takeIf { it.exists() }
+            ?.also { it.setLastModified(System.currentTimeMillis()) }
+
+    /**
+     * Evicts the least recently used clips when the cache exceeds [maxSize], except the clips in
+     * [keep].
+     */
+    fun evictIfNeeded(keep: Set<File> = emptySet()) {
+        if (maxSize == Long.MAX_VALUE) {
+            return
+        }
+
+        val files = directory.listFiles { file -> file.extension == "wav" }
+            .orEmpty()
+            .toList()
+        var remainingSize = files.sumOf { it.length() }
+        if (remainingSize <= maxSize) {
+            return
+        }
+
+        val targetSize = (maxSize * evictedSizeRatio).toLong()
+        for (file in files.filterNot { it in keep }.sortedBy { it.lastModified() }) {
+            if (remainingSize <= targetSize) {
+                break
+            }
+            val length = file.length()
+            if (file.delete()) {
+                remainingSize -= length
+            }
+        }
+    }
+
+    companion object {
+
+        /**
+         * Reads the duration of a WAV file from its `fmt ` and `data` chunks.
+         */
+        fun wavDuration(file: File): Duration? = tryOrNull {
+            RandomAccessFile(file, "r").use { wav ->
+                var position = 12L
+                var byteRate = 0L
+                while (position + 8 <= wav.length()) {
+                    wav.seek(position)
+                    val id = ByteArray(4).also { wav.readFully(it) }.decodeToString()
+                    val size = wav.readIntLE()
+                    when (id) {
+                        "fmt " -> {
+                            // Skips the audio format, channel count and sample rate.
+                            wav.skipBytes(8)
+                            byteRate = wav.readIntLE()
+                        }
+                        "data" -> {
+                            // Some engines leave the size unset while streaming the file.
+                            val dataSize = size.takeIf { it in 1..(wav.length() - position - 8) }
+                                ?: (wav.length() - position - 8)
+                            return@tryOrNull byteRate.takeIf { it > 0 }
+                                ?.let { (dataSize.toDouble() / it).seconds }
+                        }
+                    }
+                    position += 8 + size + (size and 1)
+                }
+                null
+            }
+        }
+
+        private fun RandomAccessFile.readIntLE(): Long =
+            Integer.reverseBytes(readInt()).toLong() and 0xFFFFFFFFL
+    }
+}
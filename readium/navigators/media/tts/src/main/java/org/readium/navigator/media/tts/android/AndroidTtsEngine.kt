@@ -13,11 +13,16 @@ import android.content.Context
 import android.content.Intent
 import android.content.pm.PackageManager
 import android.os.Build
+import android.os.Bundle
 import android.speech.tts.TextToSpeech
 import android.speech.tts.TextToSpeech.*
 import android.speech.tts.UtteranceProgressListener
 import android.speech.tts.Voice as AndroidVoice
 import android.speech.tts.Voice.*
+import java.io.File
+import java.util.Collections
+import java.util.UUID
+import java.util.concurrent.ConcurrentHashMap
 import kotlinx.coroutines.*
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
@@ -27,6 +32,7 @@ import org.readium.r2.shared.ExperimentalReadiumApi
 import org.readium.r2.shared.InternalReadiumApi
 import org.readium.r2.shared.extensions.tryOrNull
 import org.readium.r2.shared.util.Language
+import org.readium.r2.shared.util.Try
 
 /*
  * On some Android implementations (i.e. on Oppo A9 2020 running Android 11),
@@ -47,6 +53,7 @@ public class AndroidTtsEngine private constructor(
     private val voiceSelector: VoiceSelector,
     override val voices: Set<Voice>,
     initialPreferences: AndroidTtsPreferences,
+    private val clipCache: AndroidTtsClipCache?,
 ) : TtsEngine<
     AndroidTtsSettings,
     AndroidTtsPreferences,
@@ -56,11 +63,24 @@ public class AndroidTtsEngine private constructor(
 
     public companion object {
 
+        /**
+         * Earcon name under which the pre-rendered clips are played.
+         */
+        private const val CLIP_EARCON = "org.readium.navigator.media.tts.clip"
+
+        /**
+         * Creates an [AndroidTtsEngine], or returns null if the TTS service is not available.
+         *
+         * @param renderedAudioDirectory Directory of the utterances pre-rendered with an
+         * [AndroidTtsRenderer]. The engine plays the rendered audio files instead of synthesizing
+         * the utterances, when they were rendered with the current settings.
+         */
         public suspend operator fun invoke(
             context: Context,
             settingsResolver: SettingsResolver,
             voiceSelector: VoiceSelector,
             initialPreferences: AndroidTtsPreferences,
+            renderedAudioDirectory: File? = null,
         ): AndroidTtsEngine? {
             val textToSpeech = initializeTextToSpeech(context)
                 ?: return null
@@ -76,7 +96,8 @@ public class AndroidTtsEngine private constructor(
                 settingsResolver,
                 voiceSelector,
                 voices,
-                initialPreferences
+                initialPreferences,
+                renderedAudioDirectory?.let { AndroidTtsClipCache(it) }
             )
         }
 
@@ -267,6 +288,19 @@ public class AndroidTtsEngine private constructor(
     private var state: State =
         State.EngineAvailable(engine)
 
+    /**
+     * Requests queued in the [TextToSpeech] engine and not completed yet, to submit them again if
+     * the engine gets disconnected.
+     */
+    private val queuedRequests: MutableMap<TtsEngine.RequestId, Request> =
+        Collections.synchronizedMap(LinkedHashMap())
+
+    /**
+     * Utterances being rendered by [synthesizeToFile], completed with the synthesis error if any.
+     */
+    private val pendingSyntheses: MutableMap<TtsEngine.RequestId, CompletableDeferred<Error?>> =
+        ConcurrentHashMap()
+
     private var isClosed: Boolean =
         false
 
@@ -301,12 +335,17 @@ public class AndroidTtsEngine private constructor(
                 stateNow.pendingRequests.add(request)
             }
             is State.Failure -> {
-                tryReconnect(request)
+                tryReconnect(listOf(request))
             }
             is State.EngineAvailable -> {
                 if (!doSpeak(stateNow.engine, request)) {
                     cleanEngine(stateNow.engine)
-                    tryReconnect(request)
+                    // The requests queued ahead were lost with the engine.
+                    val lostRequests = synchronized(queuedRequests) {
+                        queuedRequests.values.toList()
+                            .also { queuedRequests.clear() }
+                    }
+                    tryReconnect(lostRequests + request)
                 }
             }
         }
@@ -316,6 +355,7 @@ public class AndroidTtsEngine private constructor(
         when (val stateNow = state) {
             is State.EngineAvailable -> {
                 stateNow.engine.stop()
+                queuedRequests.clear()
             }
             is State.Failure -> {
                 // Do nothing
@@ -354,18 +394,80 @@ public class AndroidTtsEngine private constructor(
         engine: TextToSpeech,
         request: Request,
     ): Boolean {
-        return engine.setupVoice(settings.value, request.id, request.language, voices) &&
-            (engine.speak(request.text, QUEUE_ADD, null, request.id.value) == SUCCESS)
+        val settingsNow = settings.value
+        engine.setupVoice(settingsNow, request.language, voices)
+            ?.let { error ->
+                utteranceListener?.onError(request.id, error)
+                return false
+            }
+
+        // Pre-rendered utterances are played as earcons, in the same queue as the synthesized
+        // ones.
+        val clip = clipCache
+            ?.let { it.existingFile(it.key(settingsNow, request.language, request.text)) }
+
+        // The utterances are queued after the pending ones, so that the engine starts them
+        // without delay when the caller submits them ahead.
+        val result =
+            if (clip != null) {
+                // The engine resolves the earcon when it is queued, so a single registration is
+                // reused for all the clips.
+                engine.addEarcon(CLIP_EARCON, clip)
+                engine.playEarcon(CLIP_EARCON, QUEUE_ADD, null, request.id.value)
+            } else {
+                engine.speak(request.text, QUEUE_ADD, null, request.id.value)
+            }
+
+        val success = result == SUCCESS
+        if (success) {
+            queuedRequests[request.id] = request
+        }
+        return success
     }
 
-    private fun setupListener(engine: TextToSpeech) {
-        if (utteranceListener == null) {
-            engine.setOnUtteranceProgressListener(null)
-        } else {
-            engine.setOnUtteranceProgressListener(UtteranceListener(utteranceListener))
+    /**
+     * Synthesizes the given [text] into a WAV [file], with the current settings.
+     *
+     * The synthesis is queued after the utterances being spoken, so prefer using a dedicated
+     * engine to render audio files in the background.
+     */
+    public suspend fun synthesizeToFile(
+        text: String,
+        language: Language?,
+        file: File,
+    ): Try<Unit, Error> {
+        check(!isClosed) { "Engine is closed." }
+        val engine = (state as? State.EngineAvailable)?.engine
+            ?: return Try.failure(Error.Service)
+
+        engine.setupVoice(settings.value, language, voices)
+            ?.let { return Try.failure(it) }
+
+        val id = TtsEngine.RequestId(UUID.randomUUID().toString())
+        val result = CompletableDeferred<Error?>()
+        pendingSyntheses[id] = result
+
+        try {
+            if (engine.synthesizeToFile(text, Bundle(), file, id.value) != SUCCESS) {
+                return Try.failure(Error.Synthesis)
+            }
+
+            return result.await()
+                ?.let { Try.failure(it) }
+                ?: Try.success(Unit)
+        } catch (e: CancellationException) {
+            engine.stop()
+            throw e
+        } finally {
+            pendingSyntheses.remove(id)
         }
     }
 
+    private fun setupListener(engine: TextToSpeech) {
+        // The listener is always needed to complete the syntheses.
+        engine.setOnUtteranceProgressListener(UtteranceListener(utteranceListener))
+    }
+
     private fun onReconnectionSucceeded(engine: TextToSpeech) {
         val previousState = state as State.WaitingForService
         setupListener(engine)
@@ -390,8 +492,8 @@ public class AndroidTtsEngine private constructor(
         }
     }
 
-    private fun tryReconnect(request: Request) {
-        state = State.WaitingForService(mutableListOf(request))
+    private fun tryReconnect(requests: List<Request>) {
+        state = State.WaitingForService(requests.toMutableList())
         coroutineScope.launch {
             initializeTextToSpeech(context)
                 ?.let { onReconnectionSucceeded(it) }
@@ -409,12 +511,14 @@ public class AndroidTtsEngine private constructor(
         setPitch(settings.pitch.toFloat())
     }
 
+    /**
+     * Selects the voice for an utterance, or returns an error if the language is not available.
+     */
     private fun TextToSpeech.setupVoice(
         settings: AndroidTtsSettings,
-        id: TtsEngine.RequestId,
         utteranceLanguage: Language?,
         voices: Set<Voice>,
-    ): Boolean {
+    ): Error? {
         val language = utteranceLanguage
             .takeUnless { settings.overrideContentLanguage }
             // We take utterance language if data are missing but not if the language is not supported
@@ -425,13 +529,11 @@ public class AndroidTtsEngine private constructor(
 
         if (language == null) {
             // We don't know what to do.
-            utteranceListener?.onError(id, Error.Unknown)
-            return false
+            return Error.Unknown
         }
 
         if (isLanguageAvailable(language.locale) < LANG_AVAILABLE) {
-            utteranceListener?.onError(id, Error.LanguageMissingData(language))
-            return false
+            return Error.LanguageMissingData(language)
         }
 
         val preferredVoiceWithRegion =
@@ -454,22 +556,28 @@ public class AndroidTtsEngine private constructor(
             ?.let { this.voice = it }
             ?: run { this.language = language.locale }
 
-        return true
+        return null
     }
 
     private fun TextToSpeech.voiceForName(name: String) =
         voices.firstOrNull { it.name == name }
 
-    private class UtteranceListener(
+    private inner class UtteranceListener(
         private val listener: TtsEngine.Listener<Error>?,
     ) : UtteranceProgressListener() {
         override fun onStart(utteranceId: String) {
-            listener?.onStart(TtsEngine.RequestId(utteranceId))
+            val requestId = TtsEngine.RequestId(utteranceId)
+            if (requestId !in pendingSyntheses) {
+                listener?.onStart(requestId)
+            }
         }
 
         override fun onStop(utteranceId: String, interrupted: Boolean) {
+            val requestId = TtsEngine.RequestId(utteranceId)
+            if (onCompleted(requestId, Error.Unknown)) {
+                return
+            }
             listener?.let {
-                val requestId = TtsEngine.RequestId(utteranceId)
                 if (interrupted) {
                     it.onInterrupted(requestId)
                 } else {
@@ -479,7 +587,11 @@ public class AndroidTtsEngine private constructor(
         }
 
         override fun onDone(utteranceId: String) {
-            listener?.onDone(TtsEngine.RequestId(utteranceId))
+            val requestId = TtsEngine.RequestId(utteranceId)
+            if (onCompleted(requestId, null)) {
+                return
+            }
+            listener?.onDone(requestId)
         }
 
         @Deprecated(
@@ -492,14 +604,26 @@ public class AndroidTtsEngine private constructor(
         }
 
         override fun onError(utteranceId: String, errorCode: Int) {
-            listener?.onError(
-                TtsEngine.RequestId(utteranceId),
-                Error.fromNativeError(errorCode)
-            )
+            val requestId = TtsEngine.RequestId(utteranceId)
+            val error = Error.fromNativeError(errorCode)
+            if (onCompleted(requestId, error)) {
+                return
+            }
+            listener?.onError(requestId, error)
         }
 
         override fun onRangeStart(utteranceId: String, start: Int, end: Int, frame: Int) {
             listener?.onRange(TtsEngine.RequestId(utteranceId), start until end)
         }
+
+        /**
+         * Forgets the completed request, and returns whether it was a synthesis to a file.
+         */
+        private fun onCompleted(requestId: TtsEngine.RequestId, error: Error?): Boolean {
+            queuedRequests.remove(requestId)
+            val synthesis = pendingSyntheses[requestId] ?: return false
+            synthesis.complete(error)
+            return true
+        }
     }
 }
@@ -10,6 +10,7 @@ import android.content.Context
 import androidx.media3.common.PlaybackException
 import androidx.media3.common.PlaybackException.*
 import androidx.media3.common.PlaybackParameters
+import java.io.File
 import org.readium.navigator.media.tts.TtsEngineProvider
 import org.readium.r2.shared.ExperimentalReadiumApi
 import org.readium.r2.shared.publication.Publication
@@ -17,12 +18,19 @@ import org.readium.r2.shared.util.DebugError
 import org.readium.r2.shared.util.Error
 import org.readium.r2.shared.util.Try
 
+/**
+ * Provides [AndroidTtsEngine]s.
+ *
+ * @param renderedAudioDirectory Directory of the utterances pre-rendered with an
+ * [AndroidTtsRenderer], played instead of being synthesized.
+ */
 @ExperimentalReadiumApi
 @androidx.annotation.OptIn(androidx.media3.common.util.UnstableApi::class)
 public class AndroidTtsEngineProvider(
     private val context: Context,
     private val defaults: AndroidTtsDefaults = AndroidTtsDefaults(),
     private val voiceSelector: AndroidTtsEngine.VoiceSelector = AndroidTtsEngine.VoiceSelector { _, _ -> null },
+    private val renderedAudioDirectory: File? = null,
 ) : TtsEngineProvider<
     AndroidTtsSettings,
     AndroidTtsPreferences,
@@ -42,7 +50,8 @@ public class AndroidTtsEngineProvider(
             context,
             settingsResolver,
             voiceSelector,
-            initialPreferences
+            initialPreferences,
+            renderedAudioDirectory
         ) ?: return Try.failure(
             DebugError("Initialization of Android Tts service failed.")
         )
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2024 Readium Foundation. All rights reserved.
+ * Use of this source code is governed by the BSD-style license
+ * available in the top-level LICENSE file of the project.
+ */
+
+@file:OptIn(InternalReadiumApi::class)
+
+package org.readium.navigator.media.tts.android
+
+import java.io.File
+import kotlin.time.Duration
+import kotlin.time.Duration.Companion.seconds
+import kotlin.time.DurationUnit
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+import org.json.JSONArray
+import org.json.JSONObject
+import org.readium.navigator.media.tts.TtsUtteranceIterator
+import org.readium.r2.shared.ExperimentalReadiumApi
+import org.readium.r2.shared.InternalReadiumApi
+import org.readium.r2.shared.extensions.tryOrNull
+import org.readium.r2.shared.publication.Locator
+import org.readium.r2.shared.publication.Publication
+import org.readium.r2.shared.publication.services.content.ContentService
+import org.readium.r2.shared.util.DebugError
+import org.readium.r2.shared.util.Error
+import org.readium.r2.shared.util.Language
+import org.readium.r2.shared.util.Try
+import org.readium.r2.shared.util.tokenizer.DefaultTextContentTokenizer
+import org.readium.r2.shared.util.tokenizer.TextTokenizer
+import org.readium.r2.shared.util.tokenizer.TextUnit
+
+/**
+ * Renders the utterances of a [publication] to audio files in [directory] ahead of the playback.
+ *
+ * An [AndroidTtsEngine] created with the same `renderedAudioDirectory` plays the rendered files
+ * instead of synthesizing the utterances, as long as they were rendered with its current
+ * settings. The [tokenizerFactory] must be the one given to the navigator, so that the utterances
+ * match. Each clip is played whole in place of its utterance: the TTS navigator does not seek
+ * inside the clips, and the timing index returned by [clips] is not used for the playback.
+ *
+ * When the rendered clips exceed [maxSize] bytes, the least recently used ones are deleted after
+ * each rendering, except the clips of the rendered publication.
+ *
+ * The rendering is slower than real time on most engines, so prefer running it with a dedicated
+ * [engine] in the background.
+ */
+@ExperimentalReadiumApi
+public class AndroidTtsRenderer(
+    private val publication: Publication,
+    private val engine: AndroidTtsEngine,
+    private val directory: File,
+    private val tokenizerFactory: (language: Language?) -> TextTokenizer = { language ->
+        DefaultTextContentTokenizer(TextUnit.Sentence, language)
+    },
+    private val maxSize: Long = DEFAULT_MAX_SIZE,
+) {
+
+    public companion object {
+
+        /**
+         * Default size of the rendered clips, about 90 minutes of speech at 24 kHz.
+         */
+        public const val DEFAULT_MAX_SIZE: Long = 256L * 1024 * 1024
+    }
+
+    /**
+     * Audio file rendered for the utterance at [locator].
+     */
+    public data class Clip(
+        val locator: Locator,
+        val file: File,
+        val duration: Duration?,
+    )
+
+    private val clipCache = AndroidTtsClipCache(directory, maxSize)
+
+    /**
+     * Renders the utterances from [start], or from the beginning of the publication, to its end.
+     *
+     * The utterances already rendered with the current settings are skipped. When the publication
+     * has an identifier, the clips are recorded in a timing index read back by [clips].
+     *
+     * @param onClipRendered Called after each clip, to report the progress.
+     */
+    public suspend fun render(
+        start: Locator? = null,
+        onClipRendered: (Clip) -> Unit = {},
+    ): Try<List<Clip>, Error> {
+        if (publication.findService(ContentService::class) == null) {
+            return Try.failure(DebugError("No ContentService."))
+        }
+
+        val settings = engine.settings.value
+        val iterator = TtsUtteranceIterator(publication, tokenizerFactory, start).apply {
+            language = settings.language
+            overrideContentLanguage = settings.overrideContentLanguage
+        }
+
+        withContext(Dispatchers.IO) { directory.mkdirs() }
+
+        val clips = mutableListOf<Clip>()
+        while (true) {
+            val utterance = iterator.next() ?: break
+
+            val locator = publication
+                .locatorFromLink(publication.readingOrder[utterance.resourceIndex])
+                ?.copy(locations = utterance.locations, text = utterance.text)
+                ?: continue
+
+            val key = clipCache.key(settings, utterance.language, utterance.utterance)
+            val file = clipCache.file(key)
+            if (!file.exists()) {
+                // Renders to a temporary file, to never play a partial clip.
+                val tmpFile = File(directory, "$key.tmp")
+                engine.synthesizeToFile(utterance.utterance, utterance.language, tmpFile)
+                    .onFailure {
+                        tmpFile.delete()
+                        return Try.failure(it)
+                    }
+                withContext(Dispatchers.IO) { tmpFile.renameTo(file) }
+            }
+
+            val duration = withContext(Dispatchers.IO) { AndroidTtsClipCache.wavDuration(file) }
+            val clip = Clip(locator, file, duration)
+            clips.add(clip)
+            onClipRendered(clip)
+        }
+
+        withContext(Dispatchers.IO) {
+            clipCache.evictIfNeeded(keep = clips.map { it.file }.toSet())
+        }
+
+        publication.metadata.identifier?.let { identifier ->
+            withContext(Dispatchers.IO) {
+                clipCache.indexFile(identifier, settings)
+                    .writeText(clips.toJSON().toString())
+            }
+        }
+
+        return Try.success(clips)
+    }
+
+    /**
+     * Returns the clips rendered with the current engine settings, as recorded in the timing index,
+     * or null if the publication was not rendered.
+     */
+    public suspend fun clips(): List<Clip>? {
+        val identifier = publication.metadata.identifier ?: return null
+        val indexFile = clipCache.indexFile(identifier, engine.settings.value)
+
+        return withContext(Dispatchers.IO) {
+            tryOrNull {
+                val json = JSONArray(indexFile.readText())
+                (0 until json.length()).mapNotNull { i ->
+                    json.optJSONObject(i)?.toClip()
+                }
+            }
+        }
+    }
+
+    private fun List<Clip>.toJSON(): JSONArray =
+        JSONArray(
+            map { clip ->
+                JSONObject().apply {
+                    put("locator", clip.locator.toJSON())
+                    put("file", clip.file.name)
+                    clip.duration?.let { put("duration", it.toDouble(DurationUnit.SECONDS)) }
+                }
+            }
+        )
+
+    private fun JSONObject.toClip(): Clip? {
+        val locator = Locator.fromJSON(optJSONObject("locator")) ?: return null
+        val file = File(directory, optString("file").takeIf { it.isNotEmpty() } ?: return null)
+        val duration = optDouble("duration").takeUnless { it.isNaN() }?.seconds
+        return Clip(locator, file, duration)
+    }
+}
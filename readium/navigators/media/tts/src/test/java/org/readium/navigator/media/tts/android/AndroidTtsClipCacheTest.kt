@@ -0,0 +1,176 @@
+package org.readium.navigator.media.tts.android
+
+import java.io.ByteArrayOutputStream
+import java.io.File
+import kotlin.time.Duration.Companion.seconds
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.readium.r2.shared.ExperimentalReadiumApi
+import org.readium.r2.shared.util.Language
+
+@OptIn(ExperimentalReadiumApi::class)
+class AndroidTtsClipCacheTest {
+
+    @get:Rule
+    val tmp = TemporaryFolder()
+
+    private val settings = AndroidTtsSettings(
+        language = Language("en"),
+        overrideContentLanguage = false,
+        pitch = 1.0,
+        speed = 1.0,
+        voices = emptyMap()
+    )
+
+    @Test
+    fun `the key of a clip is stable`() {
+        val cache = AndroidTtsClipCache(tmp.root)
+        val key = cache.key(settings, Language("en"), "Hello")
+
+        val otherCache = AndroidTtsClipCache(tmp.newFolder())
+        assertEquals(key, otherCache.key(settings, Language("en"), "Hello"))
+        assertTrue(key.matches(Regex("[0-9a-f]{64}")))
+    }
+
+    @Test
+    fun `the key of a clip depends on the settings, language and text`() {
+        val cache = AndroidTtsClipCache(tmp.root)
+        val key = cache.key(settings, Language("en"), "Hello")
+
+        assertNotEquals(key, cache.key(settings.copy(speed = 1.5), Language("en"), "Hello"))
+        val voices = mapOf(Language("en") to AndroidTtsEngine.Voice.Id("voice"))
+        assertNotEquals(key, cache.key(settings.copy(voices = voices), Language("en"), "Hello"))
+        assertNotEquals(key, cache.key(settings, Language("fr"), "Hello"))
+        assertNotEquals(key, cache.key(settings, null, "Hello"))
+        assertNotEquals(key, cache.key(settings, Language("en"), "Hello!"))
+    }
+
+    @Test
+    fun `read the duration of a WAV file`() {
+        assertEquals(2.seconds, AndroidTtsClipCache.wavDuration(wav(dataSize = 2L * BYTE_RATE)))
+    }
+
+    @Test
+    fun `skip the padding byte of odd-sized chunks`() {
+        val file = wav(dataSize = BYTE_RATE.toLong()) {
+            ascii("LIST")
+            le32(5)
+            write(ByteArray(5 + 1)) // Content and padding byte.
+        }
+        assertEquals(1.seconds, AndroidTtsClipCache.wavDuration(file))
+    }
+
+    @Test
+    fun `use the remainder of the file when the data size is unset`() {
+        val file = wav(dataSize = 0, actualDataSize = 3 * BYTE_RATE)
+        assertEquals(3.seconds, AndroidTtsClipCache.wavDuration(file))
+    }
+
+    @Test
+    fun `files without fmt or data chunk have no duration`() {
+        val noFormat = tmp.newFile().apply {
+            writeBytes(
+                bytes {
+                    riffHeader()
+                    ascii("data")
+                    le32(100)
+                    write(ByteArray(100))
+                }
+            )
+        }
+        val truncated = tmp.newFile().apply {
+            writeBytes(
+                bytes {
+                    riffHeader()
+                    formatChunk()
+                }
+            )
+        }
+        val notWav = tmp.newFile().apply { writeBytes(ByteArray(100) { 1 }) }
+
+        assertNull(AndroidTtsClipCache.wavDuration(noFormat))
+        assertNull(AndroidTtsClipCache.wavDuration(truncated))
+        assertNull(AndroidTtsClipCache.wavDuration(notWav))
+        assertNull(AndroidTtsClipCache.wavDuration(File(tmp.root, "missing.wav")))
+    }
+
+    @Test
+    fun `evict the least recently used clips past the maximum size`() {
+        val cache = AndroidTtsClipCache(tmp.root, maxSize = 300)
+        val files = (0 until 4).map { i ->
+            cache.file("clip$i").apply {
+                writeBytes(ByteArray(100))
+                setLastModified(1_000_000L * (i + 1))
+            }
+        }
+        // Playing the first clip makes it the most recently used.
+        cache.existingFile("clip0")
+
+        cache.evictIfNeeded(keep = setOf(files[1]))
+
+        assertEquals(listOf(true, true, false, false), files.map { it.exists() })
+    }
+
+    /**
+     * 16-bit mono PCM WAV file at 24 kHz, with [chunks] written before the `data` chunk.
+     */
+    private fun wav(
+        dataSize: Long,
+        actualDataSize: Int = dataSize.toInt(),
+        chunks: ByteArrayOutputStream.() -> Unit = {},
+    ): File =
+        tmp.newFile().apply {
+            writeBytes(
+                bytes {
+                    riffHeader()
+                    formatChunk()
+                    chunks()
+                    ascii("data")
+                    le32(dataSize)
+                    write(ByteArray(actualDataSize))
+                }
+            )
+        }
+
+    private fun bytes(block: ByteArrayOutputStream.() -> Unit): ByteArray =
+        ByteArrayOutputStream().apply(block).toByteArray()
+
+    private fun ByteArrayOutputStream.ascii(string: String) {
+        write(string.toByteArray(Charsets.US_ASCII))
+    }
+
+    private fun ByteArrayOutputStream.le16(value: Int) {
+        write(value and 0xFF)
+        write((value shr 8) and 0xFF)
+    }
+
+    private fun ByteArrayOutputStream.le32(value: Long) {
+        repeat(4) { write((value shr (8 * it)).toInt() and 0xFF) }
+    }
+
+    private fun ByteArrayOutputStream.riffHeader() {
+        ascii("RIFF")
+        le32(0)
+        ascii("WAVE")
+    }
+
+    private fun ByteArrayOutputStream.formatChunk() {
+        ascii("fmt ")
+        le32(16)
+        le16(1) // PCM.
+        le16(1) // Channels.
+        le32(24_000) // Sample rate.
+        le32(BYTE_RATE.toLong())
+        le16(2) // Block align.
+        le16(16) // Bits per sample.
+    }
+
+    private companion object {
+        const val BYTE_RATE = 24_000 * 2
+    }
+}
@@ -84,116 +84,146 @@ public class OPDS1Parser {
         }
 
         public fun parse(xmlData: ByteArray, url: Url): ParseData {
-            val root = XmlParser().parse(xmlData.inputStream())
-            return if (root.name == "feed") {
-                ParseData(parseFeed(root, url), null, 1)
+            var isFeed = false
+            var entry: ElementNode? = null
+            // The title is set once the whole feed is parsed, as it is not required to come
+            // before the entries.
+            val feed = Feed.Builder(title = "", type = 1, href = url)
+            var feedTitle: String? = null
+
+            // The children of a feed are parsed one at a time, to not hold the whole document
+            // in memory for large catalogs.
+            XmlParser().parse(
+                xmlData.inputStream(),
+                select = { path ->
+                    isFeed = path.first().name == "feed"
+                    path.size == if (isFeed) 2 else 1
+                },
+                onElement = { element ->
+                    when {
+                        !isFeed ->
+                            entry = element
+                        element.name == "title" && element.namespace == Namespaces.Atom ->
+                            feedTitle = feedTitle ?: element.text
+                        else ->
+                            parseFeedElement(feed, element, url)
+                    }
+                }
+            )
+
+            return if (isFeed) {
+                val title = feedTitle
+                    ?: throw Exception(OPDSParserError.MissingTitle.name)
+                feed.metadata.title = title
+                ParseData(feed.copy(title = title).build(), null, 1)
             } else {
-                ParseData(null, parseEntry(root, url), 1)
+                ParseData(null, entry?.let { parseEntry(it, url) }, 1)
             }
         }
 
-        private fun parseFeed(root: ElementNode, url: Url): Feed {
-            val feedTitle = root.getFirst("title", Namespaces.Atom)?.text
-                ?: throw Exception(OPDSParserError.MissingTitle.name)
-            val feed = Feed.Builder(feedTitle, 1, url)
-            val tmpDate = root.getFirst("updated", Namespaces.Atom)?.text
-            feed.metadata.modified = tmpDate?.let { Instant.parse(it) }
-
-            val totalResults = root.getFirst("TotalResults", Namespaces.Search)?.text
-            totalResults?.let {
-                feed.metadata.numberOfItems = totalResults.toString().toInt()
-            }
-            val itemsPerPage = root.getFirst("ItemsPerPage", Namespaces.Search)?.text
-            itemsPerPage?.let {
-                feed.metadata.itemsPerPage = itemsPerPage.toString().toInt()
-            }
-
-            // Parse entries
-            for (entry in root.get("entry", Namespaces.Atom)) {
-                var isNavigation = true
-                var collectionLink: Link? = null
-                val links = entry.get("link", Namespaces.Atom)
-                for (link in links) {
-                    val href = link.getAttr("href")?.let { Url(it) }
-                    val rel = link.getAttr("rel")
-                    if (rel != null) {
-                        if (rel.startsWith("http://opds-spec.org/acquisition")) {
-                            isNavigation = false
-                        }
-                        if (href != null && (rel == "collection" || rel == "http://opds-spec.org/group")) {
-                            collectionLink = Link(
-                                href = feed.href.resolve(href),
-                                title = link.getAttr("title"),
-                                rels = setOf("collection")
-                            )
-                        }
+        private fun parseFeedElement(feed: Feed.Builder, element: ElementNode, url: Url) {
+            when (element.namespace) {
+                Namespaces.Atom -> when (element.name) {
+                    "updated" -> if (feed.metadata.modified == null) {
+                        feed.metadata.modified = element.text?.let { Instant.parse(it) }
                     }
+                    "entry" -> parseFeedEntry(feed, element, url)
+                    "link" -> parseFeedLink(feed, element)
                 }
-                if ((!isNavigation)) {
-                    val publication = parseEntry(entry, baseUrl = url)
-                    if (publication != null) {
-                        collectionLink?.let {
-                            addPublicationInGroup(feed, publication, it)
-                        } ?: run {
-                            feed.publications.add(publication)
-                        }
+                Namespaces.Search -> when (element.name) {
+                    "TotalResults" -> if (feed.metadata.numberOfItems == null) {
+                        feed.metadata.numberOfItems = element.text?.toInt()
                     }
-                } else {
-                    val link = entry.getFirst("link", Namespaces.Atom)
-                    val href = link?.getAttr("href")?.let { Url(it) }
-                    if (href != null) {
-                        val otherProperties = mutableMapOf<String, Any>()
-                        val facetElementCount = link.getAttrNs("count", Namespaces.Thread)?.toInt()
-                        if (facetElementCount != null) {
-                            otherProperties["numberOfItems"] = facetElementCount
-                        }
+                    "ItemsPerPage" -> if (feed.metadata.itemsPerPage == null) {
+                        feed.metadata.itemsPerPage = element.text?.toInt()
+                    }
+                }
+            }
+        }
 
-                        val newLink = Link(
+        private fun parseFeedEntry(feed: Feed.Builder, entry: ElementNode, url: Url) {
+            var isNavigation = true
+            var collectionLink: Link? = null
+            val links = entry.get("link", Namespaces.Atom)
+            for (link in links) {
+                val href = link.getAttr("href")?.let { Url(it) }
+                val rel = link.getAttr("rel")
+                if (rel != null) {
+                    if (rel.startsWith("http://opds-spec.org/acquisition")) {
+                        isNavigation = false
+                    }
+                    if (href != null && (rel == "collection" || rel == "http://opds-spec.org/group")) {
+                        collectionLink = Link(
                             href = feed.href.resolve(href),
-                            mediaType = link.getAttr("type")?.let { MediaType(it) },
-                            title = entry.getFirst("title", Namespaces.Atom)?.text,
-                            rels = listOfNotNull(link.getAttr("rel")).toSet(),
-                            properties = Properties(otherProperties = otherProperties)
+                            title = link.getAttr("title"),
+                            rels = setOf("collection")
                         )
-
-                        collectionLink?.let {
-                            addNavigationInGroup(feed, newLink, it)
-                        } ?: run {
-                            feed.navigation.add(newLink)
-                        }
                     }
                 }
             }
-            // Parse links
-            for (link in root.get("link", Namespaces.Atom)) {
-                val hrefAttr = link.getAttr("href")?.let { Url(it) } ?: continue
-                val href = feed.href.resolve(hrefAttr)
-                val title = link.getAttr("title")
-                val type = link.getAttr("type")?.let { MediaType(it) }
-                val rels = listOfNotNull(link.getAttr("rel")).toSet()
-
-                val facetGroupName = link.getAttrNs("facetGroup", Namespaces.Opds)
-                if (facetGroupName != null && rels.contains("http://opds-spec.org/facet")) {
+            if ((!isNavigation)) {
+                val publication = parseEntry(entry, baseUrl = url)
+                if (publication != null) {
+                    collectionLink?.let {
+                        addPublicationInGroup(feed, publication, it)
+                    } ?: run {
+                        feed.publications.add(publication)
+                    }
+                }
+            } else {
+                val link = entry.getFirst("link", Namespaces.Atom)
+                val href = link?.getAttr("href")?.let { Url(it) }
+                if (href != null) {
                     val otherProperties = mutableMapOf<String, Any>()
                     val facetElementCount = link.getAttrNs("count", Namespaces.Thread)?.toInt()
                     if (facetElementCount != null) {
                         otherProperties["numberOfItems"] = facetElementCount
                     }
+
                     val newLink = Link(
-                        href = href,
-                        mediaType = type,
-                        title = title,
-                        rels = rels,
+                        href = feed.href.resolve(href),
+                        mediaType = link.getAttr("type")?.let { MediaType(it) },
+                        title = entry.getFirst("title", Namespaces.Atom)?.text,
+                        rels = listOfNotNull(link.getAttr("rel")).toSet(),
                         properties = Properties(otherProperties = otherProperties)
                     )
-                    addFacet(feed, newLink, facetGroupName)
-                } else {
-                    feed.links.add(
-                        Link(href = href, mediaType = type, title = title, rels = rels)
-                    )
+
+                    collectionLink?.let {
+                        addNavigationInGroup(feed, newLink, it)
+                    } ?: run {
+                        feed.navigation.add(newLink)
+                    }
+                }
+            }
+        }
+
+        private fun parseFeedLink(feed: Feed.Builder, link: ElementNode) {
+            val hrefAttr = link.getAttr("href")?.let { Url(it) } ?: return
+            val href = feed.href.resolve(hrefAttr)
+            val title = link.getAttr("title")
+            val type = link.getAttr("type")?.let { MediaType(it) }
+            val rels = listOfNotNull(link.getAttr("rel")).toSet()
+
+            val facetGroupName = link.getAttrNs("facetGroup", Namespaces.Opds)
+            if (facetGroupName != null && rels.contains("http://opds-spec.org/facet")) {
+                val otherProperties = mutableMapOf<String, Any>()
+                val facetElementCount = link.getAttrNs("count", Namespaces.Thread)?.toInt()
+                if (facetElementCount != null) {
+                    otherProperties["numberOfItems"] = facetElementCount
                 }
+                val newLink = Link(
+                    href = href,
+                    mediaType = type,
+                    title = title,
+                    rels = rels,
+                    properties = Properties(otherProperties = otherProperties)
+                )
+                addFacet(feed, newLink, facetGroupName)
+            } else {
+                feed.links.add(
+                    Link(href = href, mediaType = type, title = title, rels = rels)
+                )
             }
-            return feed.build()
         }
 
         private fun parseMimeType(mimeTypeString: String): MimeTypeParameters {
@@ -69,27 +69,35 @@ public data class Manifest(
      */
     @OptIn(DelicateReadiumApi::class)
     public fun linkWithHref(href: Url): Link? {
-        fun List<Link>.deepLinkWithHref(href: Url): Link? {
-            for (l in this) {
-                if (l.url().normalize() == href) {
-                    return l
-                } else {
-                    l.alternates.deepLinkWithHref(href)?.let { return it }
-                    l.children.deepLinkWithHref(href)?.let { return it }
+        val normalizedHref = href.normalize()
+        return linksByNormalizedHref[normalizedHref]
+            ?: linksByNormalizedHref[normalizedHref.removeFragment().removeQuery()]
+    }
+
+    /**
+     * Index of the manifest's links by normalized HREF, used by [linkWithHref].
+     *
+     * The links are indexed in the same order as they are searched, keeping only the first link
+     * for a given HREF.
+     */
+    @OptIn(DelicateReadiumApi::class)
+    private val linksByNormalizedHref: Map<Url, Link> by lazy {
+        buildMap {
+            fun indexLinks(items: List<Link>) {
+                for (link in items) {
+                    val href = link.url().normalize()
+                    if (!containsKey(href)) {
+                        put(href, link)
+                    }
+                    indexLinks(link.alternates)
+                    indexLinks(link.children)
                 }
             }
-            return null
-        }
 
-        fun find(href: Url): Link? {
-            return readingOrder.deepLinkWithHref(href)
-                ?: resources.deepLinkWithHref(href)
-                ?: links.deepLinkWithHref(href)
+            indexLinks(readingOrder)
+            indexLinks(resources)
+            indexLinks(links)
         }
-
-        val normalizedHref = href.normalize()
-        return find(normalizedHref)
-            ?: find(normalizedHref.removeFragment().removeQuery())
     }
 
     /**
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2024 Readium Foundation. All rights reserved.
+ * Use of this source code is governed by the BSD-style license
+ * available in the top-level LICENSE file of the project.
+ */
+
+@file:OptIn(InternalReadiumApi::class)
+
+package org.readium.r2.shared.publication.services
+
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.util.Size
+import java.io.ByteArrayOutputStream
+import java.io.File
+import org.readium.r2.shared.ExperimentalReadiumApi
+import org.readium.r2.shared.InternalReadiumApi
+import org.readium.r2.shared.publication.Publication
+import org.readium.r2.shared.util.cache.Cache
+import org.readium.r2.shared.util.cache.FileCache
+
+/**
+ * A [CoverService] decorator storing the thumbnails computed by [service] in a persistent
+ * [cache], to serve them without decoding the cover again.
+ *
+ * Thumbnails are keyed by the publication identifier, a fingerprint of its container and the
+ * requested size.
+ */
+internal class CachingCoverService(
+    private val service: CoverService,
+    private val cache: Cache<Bitmap>,
+    private val context: Publication.Service.Context,
+) : CoverService {
+
+    override suspend fun cover(): Bitmap? =
+        service.cover()
+
+    override suspend fun coverFitting(maxSize: Size): Bitmap? {
+        val key = context.persistentCacheKey(
+            namespace = "${service::class.qualifiedName} ${maxSize.width}x${maxSize.height}"
+        ) ?: return service.coverFitting(maxSize)
+
+        cache.transaction { get(key) }
+            ?.let { return it }
+
+        // The cover is decoded outside of the transaction to not block the other publications
+        // sharing the same cache.
+        val cover = service.coverFitting(maxSize)
+            ?: return null
+        cache.transaction { put(key, cover) }
+        return cover
+    }
+
+    override fun close() {
+        service.close()
+    }
+
+    companion object {
+
+        fun createCache(directory: File, maxSize: Long): Cache<Bitmap> =
+            FileCache(
+                directory = directory,
+                encode = { bitmap ->
+                    val stream = ByteArrayOutputStream()
+                    bitmap.compress(Bitmap.CompressFormat.PNG, 100, stream)
+                    stream.toByteArray()
+                },
+                decode = { bytes -> BitmapFactory.decodeByteArray(bytes, 0, bytes.size) },
+                maxSize = maxSize
+            )
+    }
+}
+
+/**
+ * Stores the thumbnails returned by [Publication.coverFitting] in a persistent cache located in
+ * [directory], to serve them without decoding the cover of the publication again.
+ *
+ * This is useful to display a bookshelf, together with [coversFitting]. It can be set up when
+ * opening a publication with
+ * `PublicationOpener(onCreatePublication = { servicesBuilder.cacheCovers(directory) })`.
+ *
+ * Thumbnails are cached only for publications having an identifier.
+ *
+ * @param directory Directory where the thumbnails are stored. Share the same directory between
+ * all the publications.
+ * @param maxSize Maximum size of the cached thumbnails in bytes, after which the least recently
+ * used ones are evicted.
+ */
+@ExperimentalReadiumApi
+public fun Publication.ServicesBuilder.cacheCovers(
+    directory: File,
+    maxSize: Long = 32L * 1024 * 1024,
+) {
+    val cache = CachingCoverService.createCache(directory, maxSize)
+
+    decorate(CoverService::class) { factory ->
+        // Without a custom cover service, the default one is decorated.
+        val coverFactory = factory ?: ResourceCoverService.createFactory()
+
+        return@decorate { context ->
+            (coverFactory(context) as? CoverService)
+                ?.let { CachingCoverService(it, cache, context) }
+        }
+    }
+}
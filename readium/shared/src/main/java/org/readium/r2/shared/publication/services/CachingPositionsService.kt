@@ -0,0 +1,123 @@
+/*
+ * Copyright 2024 Readium Foundation. All rights reserved.
+ * Use of this source code is governed by the BSD-style license
+ * available in the top-level LICENSE file of the project.
+ */
+
+@file:OptIn(InternalReadiumApi::class)
+
+package org.readium.r2.shared.publication.services
+
+import java.io.File
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+import kotlinx.coroutines.cancel
+import org.json.JSONArray
+import org.readium.r2.shared.ExperimentalReadiumApi
+import org.readium.r2.shared.InternalReadiumApi
+import org.readium.r2.shared.publication.Locator
+import org.readium.r2.shared.publication.Publication
+import org.readium.r2.shared.util.cache.Cache
+import org.readium.r2.shared.util.cache.FileCache
+
+/**
+ * A [PositionsService] decorator storing the positions computed by [service] in a persistent
+ * [cache], to serve them immediately when the same publication is opened again.
+ *
+ * Positions are keyed by the publication identifier and a fingerprint of its container, so that
+ * a modified publication doesn't reuse stale positions. On a cache miss, the positions are
+ * computed by [service] in the background as soon as the publication is opened, unless
+ * [computeInBackground] is false.
+ */
+internal class CachingPositionsService(
+    private val service: PositionsService,
+    private val cache: Cache<List<List<Locator>>>,
+    private val context: Publication.Service.Context,
+    computeInBackground: Boolean,
+) : PositionsService {
+
+    private val coroutineScope: CoroutineScope =
+        CoroutineScope(SupervisorJob() + Dispatchers.Default)
+
+    private val positions: Deferred<List<List<Locator>>> =
+        coroutineScope.async(
+            start = if (computeInBackground) CoroutineStart.DEFAULT else CoroutineStart.LAZY
+        ) {
+            loadPositions()
+        }
+
+    override suspend fun positionsByReadingOrder(): List<List<Locator>> =
+        positions.await()
+
+    private suspend fun loadPositions(): List<List<Locator>> {
+        val key = context.persistentCacheKey(namespace = service::class.qualifiedName.toString())
+            ?: return service.positionsByReadingOrder()
+
+        cache.transaction { get(key) }
+            ?.let { return it }
+
+        // The positions are computed outside of the transaction to not block the other
+        // publications sharing the same cache.
+        val positions = service.positionsByReadingOrder()
+        if (positions.isNotEmpty()) {
+            cache.transaction { put(key, positions) }
+        }
+        return positions
+    }
+
+    override fun close() {
+        coroutineScope.cancel()
+        service.close()
+    }
+
+    companion object {
+
+        fun createCache(directory: File): Cache<List<List<Locator>>> =
+            FileCache(
+                directory = directory,
+                encode = { positions ->
+                    JSONArray(positions.map { locators -> JSONArray(locators.map { it.toJSON() }) })
+                        .toString()
+                        .toByteArray()
+                },
+                decode = { bytes ->
+                    val json = JSONArray(bytes.decodeToString())
+                    (0 until json.length()).map { Locator.fromJSONArray(json.getJSONArray(it)) }
+                }
+            )
+    }
+}
+
+/**
+ * Stores the positions computed by the current positions service in a persistent cache located
+ * in [directory], to serve them immediately when the same publication is opened again.
+ *
+ * This is useful for publications whose positions are expensive to compute, such as EPUBs or
+ * LCP-protected PDFs. It can be set up when opening a publication with
+ * `PublicationOpener(onCreatePublication = { servicesBuilder.cachePositions(directory) })`.
+ *
+ * Positions are cached only for publications having an identifier.
+ *
+ * @param directory Directory where the positions are stored. Share the same directory between
+ * all the publications, and clear it if you change how positions are computed.
+ * @param computeInBackground Whether the positions should be computed in the background when
+ * the publication is opened, if they are not cached yet.
+ */
+@ExperimentalReadiumApi
+public fun Publication.ServicesBuilder.cachePositions(
+    directory: File,
+    computeInBackground: Boolean = true,
+) {
+    val cache = CachingPositionsService.createCache(directory)
+
+    decorate(PositionsService::class) { factory ->
+        { context ->
+            (factory?.invoke(context) as? PositionsService)
+                ?.let { CachingPositionsService(it, cache, context, computeInBackground) }
+        }
+    }
+}
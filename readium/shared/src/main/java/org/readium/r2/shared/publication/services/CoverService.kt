@@ -12,7 +12,13 @@ package org.readium.r2.shared.publication.services
 import android.graphics.Bitmap
 import android.util.Size
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
 import kotlinx.coroutines.withContext
+import org.readium.r2.shared.ExperimentalReadiumApi
 import org.readium.r2.shared.extensions.scaleToFit
 import org.readium.r2.shared.publication.Link
 import org.readium.r2.shared.publication.Publication
@@ -68,6 +74,28 @@ public suspend fun Publication.cover(): Bitmap? =
 public suspend fun Publication.coverFitting(maxSize: Size): Bitmap? =
     findService(CoverService::class)?.coverFitting(maxSize)?.let { return it }
 
+/**
+ * Returns the covers of the given [publications], scaled down to fit the given [maxSize], for
+ * example to fill a bookshelf.
+ *
+ * At most [parallelism] covers are decoded at the same time, to bound the memory used.
+ */
+@ExperimentalReadiumApi
+public suspend fun coversFitting(
+    publications: List<Publication>,
+    maxSize: Size,
+    parallelism: Int = 4,
+): List<Bitmap?> {
+    val semaphore = Semaphore(parallelism)
+    return coroutineScope {
+        publications
+            .map { publication ->
+                async { semaphore.withPermit { publication.coverFitting(maxSize) } }
+            }
+            .awaitAll()
+    }
+}
+
 /** Factory to build a [CoverService]. */
 public var Publication.ServicesBuilder.coverServiceFactory: ServiceFactory?
     get() = get(CoverService::class)
@@ -89,6 +117,17 @@ internal class ResourceCoverService(
                 .getOrNull()
         }
 
+    override suspend fun coverFitting(maxSize: Size): Bitmap? =
+        withContext(Dispatchers.IO) {
+            val resource = container[coverUrl]
+                ?: return@withContext null
+
+            return@withContext resource
+                .read()
+                .flatMap { it.decodeBitmap(maxSize) }
+                .getOrNull()
+        }
+
     companion object {
 
         fun createFactory(): (Publication.Service.Context) -> ResourceCoverService? = {
@@ -4,9 +4,13 @@
  * available in the top-level LICENSE file of the project.
  */
 
+@file:OptIn(InternalReadiumApi::class)
+
 package org.readium.r2.shared.publication.services
 
+import org.readium.r2.shared.InternalReadiumApi
 import org.readium.r2.shared.publication.*
+import org.readium.r2.shared.util.SegmentIndex
 import timber.log.Timber
 
 /**
@@ -81,20 +85,13 @@ public open class DefaultLocatorService(
      * [totalProgression], without exceeding it.
      */
     private fun findClosestTo(totalProgression: Double, positions: List<List<Locator>>): Position? {
-        val lastPosition = findLast(positions) ?: return null
-        val lastProgression = lastPosition.item.locations.totalProgression
-        if (lastProgression != null && totalProgression >= lastProgression) {
-            return Position(lastPosition.x, lastPosition.item)
-        }
-
-        fun inBetween(first: Locator, second: Locator): Boolean {
-            val prog1 = first.locations.totalProgression ?: return false
-            val prog2 = second.locations.totalProgression ?: return false
-            return prog1 <= totalProgression && totalProgression < prog2
+        val flatPositions = flatten(positions)
+        val index = flatPositions.progressions.lastIndexStartingAtOrBefore(totalProgression)
+        if (index < 0) {
+            return null
         }
 
-        val position = findFirstByPair(positions, ::inBetween) ?: return null
-        return Position(position.x, position.item)
+        return Position(flatPositions.readingOrderIndexes[index], flatPositions.locators[index])
     }
 
     /**
@@ -116,38 +113,44 @@ public open class DefaultLocatorService(
         }
     }
 
-    /** Holds an item and its position in a two-dimensional array. */
-    private data class Match<T>(val x: Int, val y: Int, val item: T)
-
-    /* Finds the first item matching the given condition when paired with its successor. */
-    private fun <T> findFirstByPair(items: List<List<T>>, condition: (T, T) -> Boolean): Match<T>? {
-        var previous: Match<T>? = null
-
-        items.forEachIndexed { x, section ->
-            section.forEachIndexed { y, item ->
-                previous?.let { previous ->
-                    if (condition(previous.item, item)) {
-                        return previous
-                    }
-                }
-
-                previous = Match(x = x, y = y, item = item)
-            }
-        }
-
-        return null
-    }
+    /**
+     * Positions having a total progression, flattened to be looked up with a binary search.
+     */
+    private class FlatPositions(
+        val source: List<List<Locator>>,
+        val progressions: SegmentIndex,
+        val readingOrderIndexes: IntArray,
+        val locators: Array<Locator>,
+    )
 
-    /** Finds the last item in the last non-empty list of [items]. */
-    private fun <T> findLast(items: List<List<T>>): Match<T>? {
-        var last: Match<T>? = null
+    @Volatile
+    private var flatPositions: FlatPositions? = null
 
-        items.forEachIndexed { x, section ->
-            section.forEachIndexed { y, item ->
-                last = Match(x = x, y = y, item = item)
+    /**
+     * Returns the flattened [positions], reusing the previous ones if [positions] didn't change.
+     */
+    private fun flatten(positions: List<List<Locator>>): FlatPositions {
+        flatPositions
+            ?.takeIf { it.source === positions }
+            ?.let { return it }
+
+        val progressions = mutableListOf<Double>()
+        val readingOrderIndexes = mutableListOf<Int>()
+        val locators = mutableListOf<Locator>()
+        for ((readingOrderIndex, resourcePositions) in positions.withIndex()) {
+            for (locator in resourcePositions) {
+                val progression = locator.locations.totalProgression ?: continue
+                progressions.add(progression)
+                readingOrderIndexes.add(readingOrderIndex)
+                locators.add(locator)
             }
         }
 
-        return last
+        return FlatPositions(
+            source = positions,
+            progressions = SegmentIndex(progressions.toDoubleArray()),
+            readingOrderIndexes = readingOrderIndexes.toIntArray(),
+            locators = locators.toTypedArray()
+        ).also { flatPositions = it }
     }
 }
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2024 Readium Foundation. All rights reserved.
+ * Use of this source code is governed by the BSD-style license
+ * available in the top-level LICENSE file of the project.
+ */
+
+package org.readium.r2.shared.publication.services
+
+import org.readium.r2.shared.InternalReadiumApi
+import org.readium.r2.shared.extensions.HashAlgorithm
+import org.readium.r2.shared.extensions.hash
+import org.readium.r2.shared.publication.Link
+import org.readium.r2.shared.publication.Publication
+import org.readium.r2.shared.publication.encryption.encryption
+import org.readium.r2.shared.util.archive.archive
+import org.readium.r2.shared.util.data.Container
+import org.readium.r2.shared.util.resource.Resource
+import org.readium.r2.shared.util.use
+
+/**
+ * Builds a key to store data computed by a service in a persistent cache, from the publication
+ * identifier and a fingerprint of the reading order resources in its container.
+ *
+ * The fingerprint relies only on metadata cheap to retrieve, such as the ZIP entry lengths, so
+ * that a modified publication doesn't reuse stale data.
+ *
+ * @param namespace Distinguishes the data of different services, or of different versions of a
+ * service.
+ * @return Null if the publication has no identifier.
+ */
+internal suspend fun Publication.Service.Context.persistentCacheKey(namespace: String): String? {
+    val identifier = manifest.metadata.identifier
+        ?: return null
+
+    return (namespace + '\n' + identifier + readingOrderLengths(manifest.readingOrder, container))
+        .hash(HashAlgorithm.SHA256)
+}
+
+/**
+ * Returns a fingerprint of the [readingOrder] resources in the container of this publication,
+ * built like the one of [persistentCacheKey].
+ *
+ * Two publications with the same identifier but different content, for example two editions of
+ * an audiobook, have different fingerprints as long as the lengths of their resources differ.
+ */
+@InternalReadiumApi
+public suspend fun Publication.readingOrderFingerprint(
+    readingOrder: List<Link> = this.readingOrder,
+): String =
+    readingOrderLengths(readingOrder, container)
+        .hash(HashAlgorithm.SHA256)
+
+private suspend fun readingOrderLengths(
+    readingOrder: List<Link>,
+    container: Container<Resource>,
+): String =
+    buildString {
+        for (link in readingOrder) {
+            val url = link.url()
+            val length = container[url]
+                ?.use { it.properties().getOrNull()?.archive?.entryLength }
+                ?: link.properties.encryption?.originalLength
+            append('\n')
+            append(url)
+            append(' ')
+            append(length ?: "?")
+        }
+    }
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2024 Readium Foundation. All rights reserved.
+ * Use of this source code is governed by the BSD-style license
+ * available in the top-level LICENSE file of the project.
+ */
+
+@file:OptIn(InternalReadiumApi::class)
+
+package org.readium.r2.shared.publication.services.search
+
+import java.io.File
+import java.text.Normalizer
+import java.util.Locale
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withContext
+import org.readium.r2.shared.ExperimentalReadiumApi
+import org.readium.r2.shared.InternalReadiumApi
+import org.readium.r2.shared.publication.Locator
+import org.readium.r2.shared.publication.LocatorCollection
+import org.readium.r2.shared.publication.Publication
+import org.readium.r2.shared.publication.services.persistentCacheKey
+import org.readium.r2.shared.publication.services.positionsByReadingOrder
+import org.readium.r2.shared.publication.services.search.SearchService.Options
+import org.readium.r2.shared.util.Language
+import org.readium.r2.shared.util.ThrowableError
+import org.readium.r2.shared.util.Try
+import org.readium.r2.shared.util.cache.Cache
+import org.readium.r2.shared.util.cache.FileCache
+import org.readium.r2.shared.util.data.ReadError
+import org.readium.r2.shared.util.getOrElse
+import org.readium.r2.shared.util.resource.content.DefaultResourceContentExtractorFactory
+import org.readium.r2.shared.util.resource.content.ResourceContentExtractor
+import org.readium.r2.shared.util.tokenizer.DefaultTextContentTokenizer
+import org.readium.r2.shared.util.tokenizer.TextTokenizer
+import org.readium.r2.shared.util.tokenizer.TextUnit
+import timber.log.Timber
+
+/**
+ * Implementation of [SearchService] looking up the words of the query in an inverted index of
+ * the publication's reading order resources.
+ *
+ * The index is built the first time the publication is searched, or in the background as soon
+ * as it is opened. When a cache directory is provided, the index is stored there to be reused
+ * the next time the same publication is opened. Then, a search doesn't need to read the
+ * resources again, which makes it much faster than [StringSearchService] for large
+ * publications.
+ *
+ * The text of the resources is split into words with a [DefaultTextContentTokenizer], and the
+ * search is always insensitive to case and diacritics. A query matches a sequence of
+ * consecutive words, the last one being matched as a prefix unless
+ * [SearchService.Options.wholeWord] is true. Unlike [StringSearchService], a query can't match
+ * only the middle or the end of a word.
+ */
+@ExperimentalReadiumApi
+public class IndexedSearchService internal constructor(
+    private val context: Publication.Service.Context,
+    private val snippetLength: Int,
+    private val extractorFactory: ResourceContentExtractor.Factory,
+    private val cache: Cache<SearchIndex>?,
+    buildInBackground: Boolean,
+) : SearchService {
+
+    public companion object {
+
+        private val diacriticsRegex = Regex("\\p{Mn}+")
+
+        /**
+         * Creates a factory for [IndexedSearchService], to be used with
+         * [Publication.ServicesBuilder.searchServiceFactory].
+         *
+         * @param directory Directory where the indexes are stored. Share the same directory
+         * between all the publications. If null, the index is kept only in memory.
+         * @param snippetLength Length of the text before and after the matches in the results.
+         * @param buildInBackground Whether the index is built as soon as the publication is
+         * opened, instead of when it is searched for the first time.
+         * @param extractorFactory Extracts the text of the resources.
+         */
+        public fun createFactory(
+            directory: File?,
+            snippetLength: Int = 200,
+            buildInBackground: Boolean = false,
+            extractorFactory: ResourceContentExtractor.Factory = DefaultResourceContentExtractorFactory(),
+        ): (Publication.Service.Context) -> IndexedSearchService {
+            val cache = directory?.let {
+                FileCache(
+                    directory = it,
+                    encode = { index: SearchIndex -> index.encode() },
+                    decode = { bytes -> SearchIndex.decode(bytes) }
+                )
+            }
+
+            return { context ->
+                IndexedSearchService(
+                    context = context,
+                    snippetLength = snippetLength,
+                    extractorFactory = extractorFactory,
+                    cache = cache,
+                    buildInBackground = buildInBackground
+                )
+            }
+        }
+    }
+
+    private val coroutineScope: CoroutineScope =
+        CoroutineScope(SupervisorJob() + Dispatchers.Default)
+
+    private val language: String? =
+        context.manifest.metadata.languages.firstOrNull()
+
+    private val locale: Locale =
+        language?.let { Locale.forLanguageTag(it) } ?: Locale.getDefault()
+
+    override val options: Options = Options(
+        wholeWord = false,
+        language = locale.toLanguageTag()
+    )
+
+    private val indexMutex = Mutex()
+
+    private var index: SearchIndex? = null
+
+    init {
+        if (buildInBackground) {
+            coroutineScope.launch { index() }
+        }
+    }
+
+    override suspend fun search(query: String, options: Options?): SearchIterator =
+        Iterator(query = query, wholeWord = options?.wholeWord ?: false)
+
+    private inner class Iterator(
+        val query: String,
+        val wholeWord: Boolean,
+    ) : SearchIterator {
+
+        override var resultCount: Int? = null
+            private set
+
+        /**
+         * Occurrences of the query grouped by resource, computed with the first page.
+         */
+        private var hits: List<List<SearchIndex.Hit>>? = null
+
+        /**
+         * Index of the last page of results returned.
+         */
+        private var page = -1
+
+        override suspend fun next(): SearchTry<LocatorCollection?> {
+            try {
+                val index = index()
+                    .getOrElse { return Try.failure(SearchError.Reading(it)) }
+
+                val hits = this.hits
+                    ?: withContext(Dispatchers.Default) { find(index) }
+                        .also {
+                            this.hits = it
+                            resultCount = it.sumOf { resourceHits -> resourceHits.size }
+                        }
+
+                if (page >= hits.size - 1) {
+                    return Try.success(null)
+                }
+
+                page += 1
+
+                val resourceHits = hits[page]
+                val resourceIndex = resourceHits.first().resourceIndex
+                val text = checkNotNull(index.texts[resourceIndex])
+                return Try.success(
+                    LocatorCollection(locators = createLocators(resourceIndex, text, resourceHits))
+                )
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                return Try.failure(SearchError.Engine(ThrowableError(e)))
+            }
+        }
+
+        private fun find(index: SearchIndex): List<List<SearchIndex.Hit>> {
+            val words = createTokenizer().tokenize(query)
+                .map { normalize(query.substring(it)) }
+
+            val hits = mutableListOf<List<SearchIndex.Hit>>()
+            var resourceHits = mutableListOf<SearchIndex.Hit>()
+            for (hit in index.find(words, wholeWord = wholeWord)) {
+                if (resourceHits.isNotEmpty() && resourceHits.first().resourceIndex != hit.resourceIndex) {
+                    hits.add(resourceHits)
+                    resourceHits = mutableListOf()
+                }
+                resourceHits.add(hit)
+            }
+            if (resourceHits.isNotEmpty()) {
+                hits.add(resourceHits)
+            }
+            return hits
+        }
+
+        private suspend fun createLocators(
+            resourceIndex: Int,
+            text: String,
+            hits: List<SearchIndex.Hit>,
+        ): List<Locator> {
+            val link = context.manifest.readingOrder[resourceIndex]
+            val resourceTitle = context.manifest.tableOfContents.titleMatching(link.url())
+            var resourceLocator = context.manifest.locatorFromLink(link) ?: return emptyList()
+            resourceLocator = resourceLocator.copy(title = resourceTitle ?: resourceLocator.title)
+            val positions = context.services.positionsByReadingOrder()
+
+            return hits.map { hit ->
+                val progression = hit.range.first.toDouble() / text.length.toDouble()
+
+                resourceLocator.copy(
+                    locations = resourceLocator.locations.copy(
+                        progression = progression,
+                        totalProgression = positions.totalProgression(resourceIndex, progression)
+                    ),
+                    text = createSnippet(text, hit.range, snippetLength)
+                )
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the publication, after loading it from the cache or building it if
+     * needed.
+     */
+    private suspend fun index(): Try<SearchIndex, ReadError> =
+        indexMutex.withLock {
+            index?.let { return Try.success(it) }
+
+            loadIndex()
+                .onSuccess { index = it }
+        }
+
+    private suspend fun loadIndex(): Try<SearchIndex, ReadError> {
+        val key = context.persistentCacheKey(namespace = IndexedSearchService::class.qualifiedName.toString())
+
+        if (key != null) {
+            cache?.transaction { get(key) }
+                ?.let { return Try.success(it) }
+        }
+
+        val texts = context.manifest.readingOrder.map { link ->
+            val mediaType = link.mediaType
+                ?: return@map null
+
+            val text = context.container[link.url()]
+                ?.let { resource -> extractorFactory.createExtractor(resource, mediaType)?.extractText(resource) }
+                ?.getOrElse { return Try.failure(it) }
+
+            if (text == null) {
+                Timber.w("Cannot extract text from resource: ${link.href}")
+            }
+            text
+        }
+
+        val index = withContext(Dispatchers.Default) {
+            SearchIndex.build(texts, tokenize = createTokenizer()::tokenize, normalize = ::normalize)
+        }
+
+        if (key != null) {
+            cache?.transaction { put(key, index) }
+        }
+
+        return Try.success(index)
+    }
+
+    /**
+     * Creates a word tokenizer, which can't be shared between concurrent searches.
+     */
+    private fun createTokenizer(): TextTokenizer =
+        DefaultTextContentTokenizer(
+            unit = TextUnit.Word,
+            language = language?.let { Language(it) }
+        )
+
+    /**
+     * Normalizes a word to make the search insensitive to case and diacritics.
+     */
+    private fun normalize(word: String): String =
+        Normalizer.normalize(word.lowercase(locale), Normalizer.Form.NFD)
+            .replace(diacriticsRegex, "")
+
+    override fun close() {
+        coroutineScope.cancel()
+    }
+}
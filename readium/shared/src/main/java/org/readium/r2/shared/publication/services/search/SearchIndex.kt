@@ -0,0 +1,277 @@
+/*
+ * Copyright 2024 Readium Foundation. All rights reserved.
+ * Use of this source code is governed by the BSD-style license
+ * available in the top-level LICENSE file of the project.
+ */
+
+package org.readium.r2.shared.publication.services.search
+
+import java.io.BufferedOutputStream
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+
+/**
+ * Inverted index of the words of a publication's reading order resources.
+ *
+ * Each resource is stored as the sequence of its normalized words, which are mapped to their
+ * character ranges in the text content of the resource, used to build the search snippets.
+ *
+ * @param texts Text content of each reading order resource, or null if it is not available.
+ * @param terms Normalized words of the publication, sorted.
+ * @param tokens Index in [terms] of each word of a resource, in the order of the resource.
+ * @param ranges Character ranges of each word of a resource in its text content, as interleaved
+ * start and end offsets.
+ * @param postings Occurrences of each term, as interleaved resource and word indexes.
+ */
+internal class SearchIndex(
+    val texts: List<String?>,
+    private val terms: Array<String>,
+    private val tokens: Array<IntArray>,
+    private val ranges: Array<IntArray>,
+    private val postings: Array<IntArray>,
+) {
+
+    /**
+     * Occurrence of a search query in the text content of the resource at [resourceIndex].
+     */
+    data class Hit(val resourceIndex: Int, val range: IntRange)
+
+    /**
+     * Finds the occurrences of the sequence of normalized words in [query], sorted by resource
+     * and position.
+     *
+     * The last word of the query matches any word starting with it, unless [wholeWord] is true.
+     */
+    fun find(query: List<String>, wholeWord: Boolean): List<Hit> {
+        if (query.isEmpty()) {
+            return emptyList()
+        }
+
+        val exactTerms = query.dropLast(1).map { terms.binarySearch(it) }
+        if (exactTerms.any { it < 0 }) {
+            return emptyList()
+        }
+        val lastTerms = termsMatching(query.last(), prefix = !wholeWord)
+        if (lastTerms.isEmpty()) {
+            return emptyList()
+        }
+
+        val candidates = if (exactTerms.isNotEmpty()) {
+            occurrencesOf(exactTerms.first()..exactTerms.first())
+        } else {
+            occurrencesOf(lastTerms)
+        }
+
+        val hits = mutableListOf<Hit>()
+        for (candidate in candidates) {
+            val resourceIndex = (candidate ushr 32).toInt()
+            val tokenIndex = candidate.toInt()
+            val resourceTokens = tokens[resourceIndex]
+            val lastTokenIndex = tokenIndex + query.size - 1
+            if (lastTokenIndex >= resourceTokens.size) {
+                continue
+            }
+
+            val matches = exactTerms.withIndex().all { (i, term) -> resourceTokens[tokenIndex + i] == term } &&
+                resourceTokens[lastTokenIndex] in lastTerms
+
+            if (matches) {
+                val resourceRanges = ranges[resourceIndex]
+                hits.add(
+                    Hit(
+                        resourceIndex = resourceIndex,
+                        range = resourceRanges[tokenIndex * 2] until resourceRanges[lastTokenIndex * 2 + 1]
+                    )
+                )
+            }
+        }
+
+        return hits
+    }
+
+    /**
+     * Returns the indexes of the terms equal to [query], or starting with it if [prefix] is true.
+     */
+    private fun termsMatching(query: String, prefix: Boolean): IntRange {
+        val index = terms.binarySearch(query)
+        if (!prefix) {
+            return if (index >= 0) index..index else IntRange.EMPTY
+        }
+
+        // The terms starting with the query are sorted right after the insertion point.
+        val first = if (index >= 0) index else -(index + 1)
+        var last = first - 1
+        while (last + 1 < terms.size && terms[last + 1].startsWith(query)) {
+            last++
+        }
+        return first..last
+    }
+
+    /**
+     * Returns the occurrences of the given [termIndexes], sorted by resource and word index, as
+     * the resource index in the higher 32 bits and the word index in the lower 32 bits.
+     */
+    private fun occurrencesOf(termIndexes: IntRange): LongArray {
+        val occurrences = LongArray(termIndexes.sumOf { postings[it].size / 2 })
+        var i = 0
+        for (term in termIndexes) {
+            val termPostings = postings[term]
+            for (p in termPostings.indices step 2) {
+                occurrences[i++] = (termPostings[p].toLong() shl 32) or termPostings[p + 1].toLong()
+            }
+        }
+        // The postings of each term are already sorted.
+        if (termIndexes.first != termIndexes.last) {
+            occurrences.sort()
+        }
+        return occurrences
+    }
+
+    fun encode(): ByteArray {
+        val bytes = ByteArrayOutputStream()
+        DataOutputStream(BufferedOutputStream(bytes)).use { output ->
+            output.writeInt(VERSION)
+
+            output.writeInt(texts.size)
+            for (text in texts) {
+                output.writeBoolean(text != null)
+                text?.let { output.writeString(it) }
+            }
+
+            output.writeInt(terms.size)
+            for (term in terms) {
+                output.writeString(term)
+            }
+            for (resourceTokens in tokens) {
+                output.writeIntArray(resourceTokens)
+            }
+            for (resourceRanges in ranges) {
+                output.writeIntArray(resourceRanges)
+            }
+            for (termPostings in postings) {
+                output.writeIntArray(termPostings)
+            }
+        }
+        return bytes.toByteArray()
+    }
+
+    companion object {
+
+        /**
+         * Version of the encoded index, to be bumped when the format or the tokenization change.
+         */
+        private const val VERSION = 1
+
+        /**
+         * Builds the index of the given [texts], split into words with [tokenize] and normalized
+         * with [normalize].
+         */
+        fun build(
+            texts: List<String?>,
+            tokenize: (String) -> List<IntRange>,
+            normalize: (String) -> String,
+        ): SearchIndex {
+            val termIndexes = HashMap<String, Int>()
+            val terms = mutableListOf<String>()
+            val counts = mutableListOf<Int>()
+
+            val tokens = arrayOfNulls<IntArray>(texts.size)
+            val ranges = arrayOfNulls<IntArray>(texts.size)
+
+            for ((resourceIndex, text) in texts.withIndex()) {
+                val words = text?.let(tokenize).orEmpty()
+                val resourceTokens = IntArray(words.size)
+                val resourceRanges = IntArray(words.size * 2)
+                for ((i, word) in words.withIndex()) {
+                    val term = normalize(text!!.substring(word))
+                    val termIndex = termIndexes.getOrPut(term) {
+                        terms.add(term)
+                        counts.add(0)
+                        terms.size - 1
+                    }
+                    counts[termIndex]++
+                    resourceTokens[i] = termIndex
+                    resourceRanges[i * 2] = word.first
+                    resourceRanges[i * 2 + 1] = word.last + 1
+                }
+                tokens[resourceIndex] = resourceTokens
+                ranges[resourceIndex] = resourceRanges
+            }
+
+            // Sorts the terms to look up prefixes with a binary search.
+            val order = terms.indices.sortedBy { terms[it] }
+            val remapping = IntArray(terms.size)
+            for ((newIndex, oldIndex) in order.withIndex()) {
+                remapping[oldIndex] = newIndex
+            }
+
+            val postings = Array(terms.size) { IntArray(counts[order[it]] * 2) }
+            val filled = IntArray(terms.size)
+            for ((resourceIndex, resourceTokens) in tokens.withIndex()) {
+                for ((tokenIndex, oldIndex) in resourceTokens!!.withIndex()) {
+                    val termIndex = remapping[oldIndex]
+                    resourceTokens[tokenIndex] = termIndex
+                    postings[termIndex][filled[termIndex]++] = resourceIndex
+                    postings[termIndex][filled[termIndex]++] = tokenIndex
+                }
+            }
+
+            return SearchIndex(
+                texts = texts,
+                terms = Array(terms.size) { terms[order[it]] },
+                tokens = tokens.requireNoNulls(),
+                ranges = ranges.requireNoNulls(),
+                postings = postings
+            )
+        }
+
+        /**
+         * Decodes an index encoded with [encode], or returns null if it was encoded with another
+         * version.
+         */
+        fun decode(bytes: ByteArray): SearchIndex? =
+            DataInputStream(ByteArrayInputStream(bytes)).use { input ->
+                if (input.readInt() != VERSION) {
+                    return null
+                }
+
+                val texts = List(input.readInt()) {
+                    if (input.readBoolean()) input.readString() else null
+                }
+                val terms = Array(input.readInt()) { input.readString() }
+
+                SearchIndex(
+                    texts = texts,
+                    terms = terms,
+                    tokens = Array(texts.size) { input.readIntArray() },
+                    ranges = Array(texts.size) { input.readIntArray() },
+                    postings = Array(terms.size) { input.readIntArray() }
+                )
+            }
+
+        // DataOutput.writeUTF() is limited to 64 KB, which is not enough for a whole resource.
+        private fun DataOutputStream.writeString(string: String) {
+            val bytes = string.toByteArray()
+            writeInt(bytes.size)
+            write(bytes)
+        }
+
+        private fun DataInputStream.readString(): String {
+            val bytes = ByteArray(readInt())
+            readFully(bytes)
+            return bytes.decodeToString()
+        }
+
+        private fun DataOutputStream.writeIntArray(array: IntArray) {
+            writeInt(array.size)
+            for (value in array) {
+                writeInt(value)
+            }
+        }
+
+        private fun DataInputStream.readIntArray(): IntArray =
+            IntArray(readInt()) { readInt() }
+    }
+}
@@ -173,55 +173,12 @@ public class StringSearchService(
         ): Locator {
             val progression = range.first.toDouble() / text.length.toDouble()
 
-            var totalProgression: Double? = null
-            val positions = positions()
-            val resourceStartTotalProg = positions.getOrNull(resourceIndex)?.firstOrNull()?.locations?.totalProgression
-            if (resourceStartTotalProg != null) {
-                val resourceEndTotalProg = positions.getOrNull(resourceIndex + 1)?.firstOrNull()?.locations?.totalProgression ?: 1.0
-                totalProgression = resourceStartTotalProg + progression * (resourceEndTotalProg - resourceStartTotalProg)
-            }
-
             return resourceLocator.copy(
                 locations = resourceLocator.locations.copy(
                     progression = progression,
-                    totalProgression = totalProgression
+                    totalProgression = positions().totalProgression(resourceIndex, progression)
                 ),
-                text = createSnippet(text, range)
-            )
-        }
-
-        /**
-         * Extracts a snippet from the given [text] at the provided highlight [range].
-         *
-         * Makes sure that words are not cut off at the boundaries.
-         */
-        private fun createSnippet(text: String, range: IntRange): Locator.Text {
-            val iter = StringCharacterIterator(text)
-
-            var before = ""
-            iter.index = range.first
-            var char = iter.previous()
-            var count = snippetLength
-            while (char != StringCharacterIterator.DONE && (count >= 0 || !char.isWhitespace())) {
-                before = char + before
-                count--
-                char = iter.previous()
-            }
-
-            var after = ""
-            iter.index = range.last
-            char = iter.next()
-            count = snippetLength
-            while (char != StringCharacterIterator.DONE && (count >= 0 || !char.isWhitespace())) {
-                after += char
-                count--
-                char = iter.next()
-            }
-
-            return Locator.Text(
-                highlight = text.substring(range),
-                before = before,
-                after = after
+                text = createSnippet(text, range, snippetLength)
             )
         }
 
@@ -348,7 +305,53 @@ public class StringSearchService(
     }
 }
 
-private fun List<Link>.titleMatching(href: Url): String? {
+/**
+ * Computes the total progression in the publication of the given [progression] in the reading
+ * order resource at [resourceIndex], from the publication [positions](this).
+ */
+internal fun List<List<Locator>>.totalProgression(resourceIndex: Int, progression: Double): Double? {
+    val resourceStartTotalProg = getOrNull(resourceIndex)?.firstOrNull()?.locations?.totalProgression
+        ?: return null
+    val resourceEndTotalProg = getOrNull(resourceIndex + 1)?.firstOrNull()?.locations?.totalProgression ?: 1.0
+    return resourceStartTotalProg + progression * (resourceEndTotalProg - resourceStartTotalProg)
+}
+
+/**
+ * Extracts a snippet from the given [text] at the provided highlight [range].
+ *
+ * Makes sure that words are not cut off at the boundaries.
+ */
+internal fun createSnippet(text: String, range: IntRange, snippetLength: Int): Locator.Text {
+    val iter = StringCharacterIterator(text)
+
+    var before = ""
+    iter.index = range.first
+    var char = iter.previous()
+    var count = snippetLength
+    while (char != StringCharacterIterator.DONE && (count >= 0 || !char.isWhitespace())) {
+        before = char + before
+        count--
+        char = iter.previous()
+    }
+
+    var after = ""
+    iter.index = range.last
+    char = iter.next()
+    count = snippetLength
+    while (char != StringCharacterIterator.DONE && (count >= 0 || !char.isWhitespace())) {
+        after += char
+        count--
+        char = iter.next()
+    }
+
+    return Locator.Text(
+        highlight = text.substring(range),
+        before = before,
+        after = after
+    )
+}
+
+internal fun List<Link>.titleMatching(href: Url): String? {
     for (link in this) {
         link.titleMatching(href)?.let { return it }
     }
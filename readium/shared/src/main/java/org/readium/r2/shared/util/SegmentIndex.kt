@@ -0,0 +1,67 @@
+/*
+ * Copyright 2024 Readium Foundation. All rights reserved.
+ * Use of this source code is governed by the BSD-style license
+ * available in the top-level LICENSE file of the project.
+ */
+
+package org.readium.r2.shared.util
+
+import org.readium.r2.shared.InternalReadiumApi
+
+/**
+ * Index of consecutive segments of a publication, such as its positions or audio tracks, looked
+ * up with a binary search on their start values.
+ *
+ * @param starts Start value of each segment, in non-decreasing order.
+ */
+@InternalReadiumApi
+public class SegmentIndex(private val starts: DoubleArray) {
+
+    public companion object {
+
+        /**
+         * Creates the index of consecutive segments with the given [lengths], starting at 0.
+         */
+        public fun fromLengths(lengths: DoubleArray): SegmentIndex {
+            val starts = DoubleArray(lengths.size)
+            var start = 0.0
+            for (i in lengths.indices) {
+                starts[i] = start
+                start += lengths[i]
+            }
+            return SegmentIndex(starts)
+        }
+    }
+
+    /**
+     * Number of segments.
+     */
+    public val size: Int get() = starts.size
+
+    /**
+     * Returns the start value of the segment at [index].
+     */
+    public fun startOf(index: Int): Double =
+        starts[index]
+
+    /**
+     * Returns the index of the last segment starting at or before [value], or -1 if [value] is
+     * before the first segment.
+     *
+     * When several segments have the same start value, the last one is returned.
+     */
+    public fun lastIndexStartingAtOrBefore(value: Double): Int {
+        var low = 0
+        var high = starts.size
+        // Finds the first segment starting after the value.
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (starts[mid] <= value) {
+                low = mid + 1
+            } else {
+                high = mid
+            }
+        }
+        return low - 1
+    }
+}
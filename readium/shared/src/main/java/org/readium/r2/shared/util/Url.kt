@@ -442,9 +442,45 @@ public fun Url?.isEquivalent(url: Url?): Boolean {
  * Returns the value of the first key matching `key` after normalization.
  */
 @OptIn(DelicateReadiumApi::class)
-public fun <T> Map<Url, T>.getEquivalent(key: Url): T? =
-    get(key) ?: run {
+public fun <T> Map<Url, T>.getEquivalent(key: Url): T? {
+    if (this is NormalizedUrlMap<T>) {
+        return getEquivalent(key)
+    }
+
+    return get(key) ?: run {
         val url = key.normalize()
         keys.firstOrNull { it.normalize() == url }
             ?.let { get(it) }
     }
+}
+
+/**
+ * A read-only [Map] with [Url] keys, normalized once for all to find the value of an equivalent
+ * key with a single lookup.
+ *
+ * Use it instead of a regular [Map] when [getEquivalent] is called on a hot path, e.g. for each
+ * resource request.
+ */
+@InternalReadiumApi
+public class NormalizedUrlMap<T>(
+    private val map: Map<Url, T>,
+) : Map<Url, T> by map {
+
+    @OptIn(DelicateReadiumApi::class)
+    private val normalizedMap: Map<Url, T> =
+        buildMap {
+            for ((url, value) in map) {
+                val normalizedUrl = url.normalize()
+                if (!containsKey(normalizedUrl)) {
+                    put(normalizedUrl, value)
+                }
+            }
+        }
+
+    /**
+     * Returns the value of the first key matching [key] after normalization.
+     */
+    @OptIn(DelicateReadiumApi::class)
+    public fun getEquivalent(key: Url): T? =
+        map[key] ?: normalizedMap[key.normalize()]
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2024 Readium Foundation. All rights reserved.
+ * Use of this source code is governed by the BSD-style license
+ * available in the top-level LICENSE file of the project.
+ */
+
+@file:OptIn(InternalReadiumApi::class)
+
+package org.readium.r2.shared.util.cache
+
+import java.io.File
+import java.util.concurrent.ConcurrentHashMap
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withContext
+import org.readium.r2.shared.InternalReadiumApi
+import org.readium.r2.shared.extensions.HashAlgorithm
+import org.readium.r2.shared.extensions.hash
+import org.readium.r2.shared.extensions.tryOrLog
+import org.readium.r2.shared.extensions.tryOrNull
+import org.readium.r2.shared.util.MemoryObserver
+
+/**
+ * A persistent cache storing each value in its own file of [directory].
+ *
+ * Values are converted to bytes with [encode] and back with [decode]. Keys are hashed to build the
+ * file names, so any string can be used as a key.
+ *
+ * When the total size of the cached files exceeds [maxSize] bytes, the least recently used values
+ * are evicted until the cache is back under [evictedSizeRatio] of [maxSize], so that consecutive
+ * writes don't scan the directory each time.
+ *
+ * Several [FileCache]s can share the same [directory], their transactions are then serialized
+ * with the same lock.
+ */
+@InternalReadiumApi
+public class FileCache<V>(
+    private val directory: File,
+    private val encode: (V) -> ByteArray,
+    private val decode: (ByteArray) -> V?,
+    private val maxSize: Long = Long.MAX_VALUE,
+    private val evictedSizeRatio: Double = 0.9,
+) : Cache<V> {
+
+    init {
+        require(evictedSizeRatio in 0.0..1.0)
+    }
+
+    /**
+     * State shared by the caches of the same directory.
+     *
+     * @param size Total size of the cached files, or null until it is computed.
+     */
+    private class Directory(
+        val mutex: Mutex = Mutex(),
+        var size: Long? = null,
+    )
+
+    private val state: Directory = stateFor(directory)
+
+    override suspend fun <T> transaction(block: suspend CacheTransaction<V>.() -> T): T =
+        withContext(Dispatchers.IO) {
+            state.mutex.withLock {
+                block(Transaction())
+            }
+        }
+
+    private inner class Transaction : CacheTransaction<V> {
+        override suspend fun get(key: String): V? {
+            val file = fileFor(key)
+                .takeIf { it.exists() }
+                ?: return null
+
+            return tryOrLog {
+                file.setLastModified(System.currentTimeMillis())
+                decode(file.readBytes())
+            }
+        }
+
+        override suspend fun put(key: String, value: V?) {
+            if (value == null) {
+                delete(fileFor(key))
+                return
+            }
+
+            tryOrLog {
+                directory.mkdirs()
+                val file = fileFor(key)
+                val previousLength = file.length()
+                // Writes to a temporary file first, to never expose a partially written value.
+                val tmp = File.createTempFile(key.hash(HashAlgorithm.SHA256), ".tmp", directory)
+                tmp.writeBytes(encode(value))
+                val length = tmp.length()
+                if (tmp.renameTo(file)) {
+                    state.size = state.size?.let { it - previousLength + length }
+                } else {
+                    tmp.delete()
+                }
+            }
+
+            evictIfNeeded()
+        }
+
+        override suspend fun remove(key: String): V? =
+            get(key)
+                .also { delete(fileFor(key)) }
+
+        override suspend fun clear() {
+            cachedFiles().forEach { it.delete() }
+            state.size = null
+        }
+    }
+
+    private fun fileFor(key: String): File =
+        File(directory, "${key.hash(HashAlgorithm.SHA256)}.$EXTENSION")
+
+    private fun cachedFiles(): List<File> =
+        directory.listFiles { file -> file.extension == EXTENSION }
+            .orEmpty()
+            .toList()
+
+    private fun delete(file: File) {
+        val length = file.length()
+        if (file.delete()) {
+            state.size = state.size?.let { it - length }
+        }
+    }
+
+    private fun evictIfNeeded() {
+        if (maxSize == Long.MAX_VALUE) {
+            return
+        }
+
+        val size = state.size
+            ?: cachedFiles().sumOf { it.length() }.also { state.size = it }
+        if (size <= maxSize) {
+            return
+        }
+
+        val files = cachedFiles()
+        var remainingSize = files.sumOf { it.length() }
+        val targetSize = (maxSize * evictedSizeRatio).toLong()
+        for (file in files.sortedBy { it.lastModified() }) {
+            if (remainingSize <= targetSize) {
+                break
+            }
+            val length = file.length()
+            if (file.delete()) {
+                remainingSize -= length
+            }
+        }
+        state.size = remainingSize
+    }
+
+    override fun close() {}
+
+    override fun onTrimMemory(level: MemoryObserver.Level) {
+        // Nothing is kept in memory.
+    }
+
+    private companion object {
+        const val EXTENSION = "cache"
+
+        val directories: ConcurrentHashMap<String, Directory> = ConcurrentHashMap()
+
+        fun stateFor(directory: File): Directory {
+            val path = tryOrNull { directory.canonicalPath } ?: directory.absolutePath
+            return directories.getOrPut(path) { Directory() }
+        }
+    }
+}
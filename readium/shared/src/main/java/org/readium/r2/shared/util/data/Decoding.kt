@@ -10,12 +10,14 @@ package org.readium.r2.shared.util.data
 
 import android.graphics.Bitmap
 import android.graphics.BitmapFactory
+import android.util.Size
 import java.io.ByteArrayInputStream
 import java.nio.charset.Charset
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
 import org.json.JSONObject
 import org.readium.r2.shared.InternalReadiumApi
+import org.readium.r2.shared.extensions.scaleToFit
 import org.readium.r2.shared.publication.Manifest
 import org.readium.r2.shared.util.DebugError
 import org.readium.r2.shared.util.Error
@@ -128,6 +130,51 @@ public suspend fun ByteArray.decodeBitmap(): Try<Bitmap, DecodeError> =
         { DebugError("Could not decode content as a bitmap.") }
     )
 
+/**
+ * Reads the full content as a [Bitmap] scaled down to fit [maxSize].
+ *
+ * The dimensions of the image are decoded first, to subsample it while decoding instead of
+ * allocating the bitmap at full resolution.
+ */
+public suspend fun ByteArray.decodeBitmap(maxSize: Size): Try<Bitmap, DecodeError> =
+    decode(
+        {
+            val options = BitmapFactory.Options()
+            options.inJustDecodeBounds = true
+            BitmapFactory.decodeByteArray(this, 0, size, options)
+
+            options.inSampleSize = sampleSizeToFit(options.outWidth, options.outHeight, maxSize)
+            options.inJustDecodeBounds = false
+            val bitmap = BitmapFactory.decodeByteArray(this, 0, size, options)
+                ?: throw Exception("BitmapFactory returned null.")
+
+            // The subsampled bitmap is still larger than maxSize, unless the ratio is a power
+            // of two.
+            bitmap.scaleToFit(maxSize)
+        },
+        { DebugError("Could not decode content as a bitmap.") }
+    )
+
+/**
+ * Returns the largest power of two by which an image of [width] x [height] pixels can be
+ * subsampled while still covering the size fitting in [maxSize].
+ */
+private fun sampleSizeToFit(width: Int, height: Int, maxSize: Size): Int {
+    if (width <= 0 || height <= 0) {
+        return 1
+    }
+
+    val ratio = maxOf(
+        width / maxSize.width.coerceAtLeast(1).toFloat(),
+        height / maxSize.height.coerceAtLeast(1).toFloat()
+    )
+    var sampleSize = 1
+    while (sampleSize * 2 <= ratio) {
+        sampleSize *= 2
+    }
+    return sampleSize
+}
+
 @Suppress("RedundantSuspendModifier")
 @InternalReadiumApi
 public suspend inline fun <R> Try<ByteArray, ReadError>.decodeOrElse(
@@ -13,14 +13,20 @@ import java.io.IOException
 import java.io.InputStream
 import java.net.ConnectException
 import java.net.HttpURLConnection
+import java.net.InetAddress
 import java.net.NoRouteToHostException
+import java.net.Socket
 import java.net.SocketTimeoutException
 import java.net.URL
 import java.net.UnknownHostException
+import java.util.concurrent.atomic.AtomicLong
+import javax.net.ssl.HttpsURLConnection
 import javax.net.ssl.SSLHandshakeException
+import javax.net.ssl.SSLSocketFactory
 import kotlin.time.Duration
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
+import org.readium.r2.shared.ExperimentalReadiumApi
 import org.readium.r2.shared.extensions.joinValues
 import org.readium.r2.shared.extensions.lowerCaseKeys
 import org.readium.r2.shared.util.DebugError
@@ -37,6 +43,11 @@ import timber.log.Timber
 /**
  * An implementation of [HttpClient] using the native [HttpURLConnection].
  *
+ * Connections are kept alive and reused by the platform for the next requests to the same host,
+ * provided that the body of each [HttpStreamResponse] is closed once consumed. This saves a TCP
+ * and TLS handshake per request, which matters for publications streamed with many small range
+ * requests. You can monitor the reuse with [connectionStatistics].
+ *
  * @param userAgent Custom user agent to use for requests.
  * @param connectTimeout Timeout used when establishing a connection to the resource. A null timeout
  *        is interpreted as the default value, while a timeout of zero as an infinite timeout.
@@ -57,6 +68,49 @@ public class DefaultHttpClient(
         private const val EXTRA_REDIRECT_COUNT: String = "redirectCount"
     }
 
+    /**
+     * Counters of the requests sent by a [DefaultHttpClient], to monitor how often the
+     * connections are reused.
+     *
+     * @param requestCount Number of requests sent, including the redirections.
+     * @param secureRequestCount Number of HTTPS requests among [requestCount].
+     * @param secureConnectionCount Number of TLS connections opened for the HTTPS requests.
+     */
+    @ExperimentalReadiumApi
+    public data class ConnectionStatistics(
+        val requestCount: Long,
+        val secureRequestCount: Long,
+        val secureConnectionCount: Long,
+    ) {
+        /**
+         * Number of HTTPS requests which reused a connection kept alive, saving a TLS handshake.
+         */
+        val reusedSecureConnectionCount: Long
+            get() = (secureRequestCount - secureConnectionCount).coerceAtLeast(0)
+    }
+
+    /**
+     * Current counters of the requests sent by this client.
+     */
+    @ExperimentalReadiumApi
+    public val connectionStatistics: ConnectionStatistics
+        get() = ConnectionStatistics(
+            requestCount = requestCount.get(),
+            secureRequestCount = secureRequestCount.get(),
+            secureConnectionCount = sslSocketFactory.createdSocketCount.get()
+        )
+
+    private val requestCount = AtomicLong()
+    private val secureRequestCount = AtomicLong()
+
+    /**
+     * Socket factory shared by all the HTTPS requests of this client. The platform pools the
+     * connections by socket factory, so it must not be created per request.
+     */
+    private val sslSocketFactory: CountingSSLSocketFactory by lazy {
+        CountingSSLSocketFactory(HttpsURLConnection.getDefaultSSLSocketFactory())
+    }
+
     /**
      * Callbacks allowing to override some behavior of the [DefaultHttpClient].
      */
@@ -251,6 +305,12 @@ public class DefaultHttpClient(
         val connection = (url.openConnection() as HttpURLConnection)
         connection.requestMethod = method.name
 
+        requestCount.incrementAndGet()
+        if (connection is HttpsURLConnection) {
+            secureRequestCount.incrementAndGet()
+            connection.sslSocketFactory = sslSocketFactory
+        }
+
         val readTimeout = readTimeout ?: this@DefaultHttpClient.readTimeout
         if (readTimeout != null) {
             connection.readTimeout = readTimeout.inWholeMilliseconds.toInt()
@@ -316,17 +376,19 @@ private fun wrap(cause: IOException): HttpError =
     }
 
 /**
- * [HttpURLConnection]'s input stream which disconnects when closed.
+ * [HttpURLConnection]'s input stream.
+ *
+ * Closing the stream instead of disconnecting lets the platform keep the underlying connection
+ * alive for the next requests to the same host, when the body was fully read.
  */
 private class HttpURLConnectionInputStream(
-    private val connection: HttpURLConnection,
+    connection: HttpURLConnection,
 ) : InputStream() {
 
     private val inputStream = connection.inputStream
 
     override fun close() {
-        super.close()
-        connection.disconnect()
+        inputStream.close()
     }
 
     override fun read(): Int =
@@ -353,3 +415,40 @@ private class HttpURLConnectionInputStream(
     override fun markSupported(): Boolean =
         inputStream.markSupported()
 }
+
+/**
+ * [SSLSocketFactory] counting the sockets it creates, that is the TLS connections opened.
+ */
+private class CountingSSLSocketFactory(
+    private val factory: SSLSocketFactory,
+) : SSLSocketFactory() {
+
+    val createdSocketCount = AtomicLong()
+
+    private fun <T> count(createSocket: () -> T): T =
+        createSocket().also { createdSocketCount.incrementAndGet() }
+
+    override fun getDefaultCipherSuites(): Array<String> =
+        factory.defaultCipherSuites
+
+    override fun getSupportedCipherSuites(): Array<String> =
+        factory.supportedCipherSuites
+
+    override fun createSocket(): Socket =
+        count { factory.createSocket() }
+
+    override fun createSocket(s: Socket, host: String, port: Int, autoClose: Boolean): Socket =
+        count { factory.createSocket(s, host, port, autoClose) }
+
+    override fun createSocket(host: String, port: Int): Socket =
+        count { factory.createSocket(host, port) }
+
+    override fun createSocket(host: String, port: Int, localHost: InetAddress, localPort: Int): Socket =
+        count { factory.createSocket(host, port, localHost, localPort) }
+
+    override fun createSocket(host: InetAddress, port: Int): Socket =
+        count { factory.createSocket(host, port) }
+
+    override fun createSocket(address: InetAddress, port: Int, localAddress: InetAddress, localPort: Int): Socket =
+        count { factory.createSocket(address, port, localAddress, localPort) }
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright 2024 Readium Foundation. All rights reserved.
+ * Use of this source code is governed by the BSD-style license
+ * available in the top-level LICENSE file of the project.
+ */
+
+@file:OptIn(InternalReadiumApi::class)
+
+package org.readium.r2.shared.util.http
+
+import java.io.File
+import java.io.IOException
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import org.readium.r2.shared.ExperimentalReadiumApi
+import org.readium.r2.shared.InternalReadiumApi
+import org.readium.r2.shared.extensions.read
+import org.readium.r2.shared.util.AbsoluteUrl
+import org.readium.r2.shared.util.MemoryObserver
+import org.readium.r2.shared.util.Try
+import org.readium.r2.shared.util.cache.FileCache
+import org.readium.r2.shared.util.data.ReadError
+import org.readium.r2.shared.util.flatMap
+import org.readium.r2.shared.util.getOrElse
+
+/**
+ * Cache of the content of remote resources, shared by the [HttpResource]s of one or several
+ * [HttpContainer]s so that repeated and overlapping reads of the same resources are served
+ * locally.
+ *
+ * The content is split into blocks of [blockSize] bytes, kept in memory up to [maxMemorySize]
+ * bytes and, if a [directory] is given, on disk up to [maxDiskSize] bytes. The least recently
+ * used blocks are evicted first.
+ *
+ * Only the resources served with byte range support and a strong `ETag` or a `Last-Modified`
+ * header are cached. The first read of a resource in a session fetches its first block to
+ * revalidate the blocks cached on disk, then the missing blocks are requested with an `If-Range`
+ * header so that a resource modified in the meantime is never mixed with stale blocks.
+ */
+@ExperimentalReadiumApi
+public class HttpBlockCache(
+    public val blockSize: Int = 64 * 1024,
+    private val maxMemorySize: Long = 8L * 1024 * 1024,
+    directory: File? = null,
+    maxDiskSize: Long = 64L * 1024 * 1024,
+) : MemoryObserver {
+
+    init {
+        require(blockSize > 0)
+    }
+
+    /**
+     * Properties of a remote resource validated during this session.
+     *
+     * @param validator Value of the `ETag` or `Last-Modified` header identifying the version of
+     * the resource.
+     */
+    private data class Metadata(val validator: String, val length: Long)
+
+    /**
+     * Thrown when the remote resource changed while reading it.
+     */
+    private class ResourceChangedException : Exception()
+
+    /**
+     * In-memory blocks, in access order.
+     */
+    private val memory = LinkedHashMap<String, ByteArray>(16, 0.75f, true)
+    private var memorySize = 0L
+
+    private val disk: FileCache<ByteArray>? = directory?.let {
+        FileCache(
+            directory = it,
+            encode = { block -> block },
+            decode = { block -> block },
+            maxSize = maxDiskSize
+        )
+    }
+
+    /**
+     * Resources validated during this session, mapped to null when they can't be cached, in
+     * access order.
+     */
+    private val metadata = object : LinkedHashMap<AbsoluteUrl, Metadata?>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<AbsoluteUrl, Metadata?>?): Boolean =
+            size > MAX_METADATA_COUNT
+    }
+
+    /**
+     * Locks striped by resource, so that a resource is validated only once at a time.
+     */
+    private val validationMutexes = Array(VALIDATION_MUTEX_COUNT) { Mutex() }
+
+    /**
+     * Returns the length of the resource at [url], or null if it can't be cached.
+     */
+    internal suspend fun length(client: HttpClient, url: AbsoluteUrl): Try<Long, ReadError>? =
+        metadataOf(client, url)
+            .getOrElse { return Try.failure(it) }
+            ?.let { Try.success(it.length) }
+
+    /**
+     * Reads the [range] of the resource at [url] through the cache, or returns null if it can't
+     * be cached.
+     */
+    internal suspend fun read(
+        client: HttpClient,
+        url: AbsoluteUrl,
+        range: LongRange?,
+    ): Try<ByteArray, ReadError>? {
+        // Tries again once if the resource was modified in the middle of the read.
+        repeat(2) {
+            val metadata = metadataOf(client, url)
+                .getOrElse { return Try.failure(it) }
+                ?: return null
+
+            try {
+                return read(client, url, metadata, range)
+            } catch (e: ResourceChangedException) {
+                synchronized(this.metadata) { this.metadata.remove(url) }
+            }
+        }
+        return null
+    }
+
+    private suspend fun read(
+        client: HttpClient,
+        url: AbsoluteUrl,
+        metadata: Metadata,
+        range: LongRange?,
+    ): Try<ByteArray, ReadError> {
+        @Suppress("NAME_SHADOWING")
+        val range = (range ?: 0 until metadata.length)
+            .let { it.first.coerceAtLeast(0)..it.last.coerceAtMost(metadata.length - 1) }
+
+        if (range.isEmpty()) {
+            return Try.success(ByteArray(0))
+        }
+
+        val firstBlock = range.first / blockSize
+        val lastBlock = range.last / blockSize
+        val blocks = Array((lastBlock - firstBlock + 1).toInt()) { i ->
+            getBlock(url, metadata, firstBlock + i)
+        }
+
+        // Fetches each run of consecutive missing blocks with a single request.
+        var i = 0
+        while (i < blocks.size) {
+            if (blocks[i] != null) {
+                i++
+                continue
+            }
+            var end = i
+            while (end + 1 < blocks.size && blocks[end + 1] == null) {
+                end++
+            }
+            fetchBlocks(client, url, metadata, (firstBlock + i)..(firstBlock + end))
+                .getOrElse { return Try.failure(it) }
+                .forEachIndexed { j, block -> blocks[i + j] = block }
+            i = end + 1
+        }
+
+        val bytes = ByteArray((range.last - range.first + 1).toInt())
+        for ((index, block) in blocks.withIndex()) {
+            val blockStart = (firstBlock + index) * blockSize
+            val from = maxOf(range.first, blockStart)
+            val to = minOf(range.last, blockStart + blockSize - 1)
+            System.arraycopy(
+                checkNotNull(block),
+                (from - blockStart).toInt(),
+                bytes,
+                (from - range.first).toInt(),
+                (to - from + 1).toInt()
+            )
+        }
+        return Try.success(bytes)
+    }
+
+    /**
+     * Requests the given [blocks] of the resource, if it was not modified since its validation.
+     */
+    private suspend fun fetchBlocks(
+        client: HttpClient,
+        url: AbsoluteUrl,
+        metadata: Metadata,
+        blocks: LongRange,
+    ): Try<List<ByteArray>, ReadError> {
+        val start = blocks.first * blockSize
+        val end = minOf(metadata.length, (blocks.last + 1) * blockSize) - 1
+        val request = HttpRequest(url) {
+            setRange(start..end)
+            setHeader("If-Range", metadata.validator)
+        }
+
+        return client.stream(request)
+            .mapFailure { ReadError.Access(it) }
+            .flatMap { response ->
+                try {
+                    response.body.use { body ->
+                        // The server sends the whole resource if it was modified.
+                        if (response.response.statusCode.code != 206 ||
+                            response.response.validator != metadata.validator
+                        ) {
+                            throw ResourceChangedException()
+                        }
+
+                        Try.success(
+                            blocks.map { index ->
+                                val block = body.read(metadata.blockLength(index).toLong())
+                                if (block.size.toLong() != metadata.blockLength(index)) {
+                                    throw IOException("Unexpected end of the response body.")
+                                }
+                                putInMemory(blockKey(url, metadata, index), block)
+                                block
+                            }
+                        )
+                    }
+                } catch (e: IOException) {
+                    Try.failure(ReadError.Access(HttpError.IO(e)))
+                }
+            }
+            // Written to disk once the response is read, to not hold the disk cache meanwhile.
+            .onSuccess { putOnDisk(url, metadata, blocks.first, it) }
+    }
+
+    private suspend fun metadataOf(client: HttpClient, url: AbsoluteUrl): Try<Metadata?, ReadError> {
+        val mutex = validationMutexes[url.hashCode().mod(validationMutexes.size)]
+
+        return mutex.withLock {
+            synchronized(metadata) {
+                if (url in metadata) {
+                    return Try.success(metadata[url])
+                }
+            }
+
+            validate(client, url)
+                .onSuccess { synchronized(metadata) { metadata[url] = it } }
+        }
+    }
+
+    /**
+     * Requests the first block of the resource, to find out its validator and length.
+     */
+    private suspend fun validate(client: HttpClient, url: AbsoluteUrl): Try<Metadata?, ReadError> {
+        val request = HttpRequest(url) {
+            setRange(0L until blockSize)
+        }
+
+        var firstBlock: ByteArray? = null
+
+        return client.stream(request)
+            .mapFailure { ReadError.Access(it) }
+            .flatMap { response ->
+                try {
+                    response.body.use { body ->
+                        val validator = response.response.validator
+                        val length = response.response.contentRangeLength
+                        if (response.response.statusCode.code != 206 || validator == null || length == null) {
+                            return@use Try.success(null)
+                        }
+
+                        val metadata = Metadata(validator, length)
+                        val block = body.read(metadata.blockLength(0).toLong())
+                        if (block.size.toLong() == metadata.blockLength(0)) {
+                            putInMemory(blockKey(url, metadata, 0), block)
+                            firstBlock = block
+                        }
+                        Try.success(metadata)
+                    }
+                } catch (e: IOException) {
+                    Try.failure(ReadError.Access(HttpError.IO(e)))
+                }
+            }
+            .onSuccess { metadata ->
+                val block = firstBlock
+                if (metadata != null && block != null) {
+                    putOnDisk(url, metadata, 0, listOf(block))
+                }
+            }
+    }
+
+    private suspend fun getBlock(url: AbsoluteUrl, metadata: Metadata, index: Long): ByteArray? {
+        val key = blockKey(url, metadata, index)
+        synchronized(memory) { memory[key] }
+            ?.let { return it }
+
+        return disk?.transaction { get(key) }
+            // Ignores the blocks truncated on disk.
+            ?.takeIf { it.size.toLong() == metadata.blockLength(index) }
+            ?.also { putInMemory(key, it) }
+    }
+
+    /**
+     * Writes the consecutive [blocks] starting at [firstIndex] to the disk cache, in a single
+     * transaction.
+     */
+    private suspend fun putOnDisk(
+        url: AbsoluteUrl,
+        metadata: Metadata,
+        firstIndex: Long,
+        blocks: List<ByteArray>,
+    ) {
+        disk?.transaction {
+            blocks.forEachIndexed { i, block ->
+                put(blockKey(url, metadata, firstIndex + i), block)
+            }
+        }
+    }
+
+    private fun putInMemory(key: String, block: ByteArray) {
+        synchronized(memory) {
+            memory.put(key, block)?.let { memorySize -= it.size }
+            memorySize += block.size
+
+            val iterator = memory.values.iterator()
+            while (memorySize > maxMemorySize && iterator.hasNext()) {
+                memorySize -= iterator.next().size
+                iterator.remove()
+            }
+        }
+    }
+
+    /**
+     * The validator is part of the key, so that the blocks of a previous version of the resource
+     * are never served and eventually evicted.
+     */
+    private fun blockKey(url: AbsoluteUrl, metadata: Metadata, index: Long): String =
+        "$url\n${metadata.validator}\n$index"
+
+    private fun Metadata.blockLength(index: Long): Long =
+        minOf(blockSize.toLong(), length - index * blockSize)
+
+    override fun onTrimMemory(level: MemoryObserver.Level) {
+        if (level == MemoryObserver.Level.Background) {
+            synchronized(memory) {
+                memory.clear()
+                memorySize = 0
+            }
+            // The resources are validated again on their next read.
+            synchronized(metadata) {
+                metadata.clear()
+            }
+        }
+    }
+
+    private companion object {
+        const val MAX_METADATA_COUNT = 256
+        const val VALIDATION_MUTEX_COUNT = 16
+    }
+}
+
+/**
+ * Strong validator of the response, usable with an `If-Range` header.
+ */
+private val HttpResponse.validator: String? get() =
+    header("ETag")?.takeUnless { it.startsWith("W/") }
+        ?: header("Last-Modified")
+
+/**
+ * Total length of the resource, from the `Content-Range` header of a partial response.
+ */
+private val HttpResponse.contentRangeLength: Long? get() =
+    header("Content-Range")
+        ?.substringAfterLast('/', missingDelimiterValue = "")
+        ?.toLongOrNull()
@@ -7,6 +7,7 @@
 package org.readium.r2.shared.util.http
 
 import org.readium.r2.shared.DelicateReadiumApi
+import org.readium.r2.shared.ExperimentalReadiumApi
 import org.readium.r2.shared.util.AbsoluteUrl
 import org.readium.r2.shared.util.Url
 import org.readium.r2.shared.util.data.Container
@@ -21,11 +22,15 @@ import org.readium.r2.shared.util.resource.Resource
  * @param baseUrl Base URL from which relative URLs are served.
  * @param entries Entries of this container as Urls absolute or relative to [baseUrl].
  * @param client HTTP client used to perform HTTP requests.
+ * @param blockCache Cache shared between the resources, serving repeated and overlapping reads
+ * locally instead of downloading them again.
  */
+@OptIn(ExperimentalReadiumApi::class)
 public class HttpContainer(
     private val baseUrl: Url? = null,
     override val entries: Set<Url>,
     private val client: HttpClient,
+    private val blockCache: HttpBlockCache? = null,
 ) : Container<Resource> {
 
     @OptIn(DelicateReadiumApi::class)
@@ -37,7 +42,7 @@ public class HttpContainer(
         return if (absoluteUrl == null || !absoluteUrl.isHttp) {
             null
         } else {
-            HttpResource(absoluteUrl, client)
+            HttpResource(absoluteUrl, client, blockCache = blockCache)
         }
     }
 
@@ -26,12 +26,18 @@ import org.readium.r2.shared.util.resource.Resource
 import org.readium.r2.shared.util.resource.filename
 import org.readium.r2.shared.util.resource.mediaType
 
-/** Provides access to an external URL through HTTP. */
+/**
+ * Provides access to an external URL through HTTP.
+ *
+ * @param blockCache Cache shared between resources, serving repeated and overlapping reads
+ * locally.
+ */
 @OptIn(ExperimentalReadiumApi::class)
 public class HttpResource(
     override val sourceUrl: AbsoluteUrl,
     private val client: HttpClient,
     private val maxSkipBytes: Long = MAX_SKIP_BYTES,
+    private val blockCache: HttpBlockCache? = null,
 ) : Resource {
 
     override suspend fun properties(): Try<Resource.Properties, ReadError> =
@@ -45,8 +51,11 @@ public class HttpResource(
             )
         }
 
-    override suspend fun length(): Try<Long, ReadError> =
-        headResponse().flatMap {
+    override suspend fun length(): Try<Long, ReadError> {
+        blockCache?.length(client, sourceUrl)
+            ?.let { return it }
+
+        return headResponse().flatMap {
             val contentLength = it.contentLength
             return if (contentLength != null) {
                 Try.success(contentLength)
@@ -60,12 +69,20 @@ public class HttpResource(
                 )
             }
         }
+    }
 
-    override fun close() {}
+    override fun close() {
+        // Releases the connection, which can then be reused by the HTTP client.
+        tryOrLog { inputStream?.close() }
+        inputStream = null
+    }
 
     override suspend fun read(range: LongRange?): Try<ByteArray, ReadError> = withContext(
         Dispatchers.IO
     ) {
+        blockCache?.read(client, sourceUrl, range)
+            ?.let { return@withContext it }
+
         try {
             stream(range?.first.takeUnless { it == 0L }).map { stream ->
                 if (range != null) {
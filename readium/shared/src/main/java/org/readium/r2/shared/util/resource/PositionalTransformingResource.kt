@@ -0,0 +1,39 @@
+/*
+ * Copyright 2024 Readium Foundation. All rights reserved.
+ * Use of this source code is governed by the BSD-style license
+ * available in the top-level LICENSE file of the project.
+ */
+
+package org.readium.r2.shared.util.resource
+
+import org.readium.r2.shared.util.AbsoluteUrl
+import org.readium.r2.shared.util.Try
+import org.readium.r2.shared.util.data.ReadError
+import org.readium.r2.shared.util.flatMap
+
+/**
+ * Transforms the bytes of [resource] on-the-fly, with a transformation depending only on the
+ * bytes and their position in [resource], such as a XOR with a key or an obfuscated prefix.
+ *
+ * The transformation must not change the length of the resource. Unlike [TransformingResource],
+ * a range read only reads and transforms the requested bytes, so it is appropriate for large
+ * resources.
+ */
+public abstract class PositionalTransformingResource(
+    private val resource: Resource,
+) : Resource by resource {
+
+    override val sourceUrl: AbsoluteUrl? = null
+
+    /**
+     * Transforms the [bytes] read from [resource], starting at [offset].
+     *
+     * The [bytes] can be modified in place and returned.
+     */
+    public abstract suspend fun transform(bytes: ByteArray, offset: Long): Try<ByteArray, ReadError>
+
+    override suspend fun read(range: LongRange?): Try<ByteArray, ReadError> =
+        resource.read(range).flatMap { bytes ->
+            transform(bytes, offset = range?.first?.coerceAtLeast(0) ?: 0)
+        }
+}
@@ -36,18 +36,48 @@ public class XmlParser(
 
     @Throws(XmlPullParserException::class, IOException::class)
     public fun parse(stream: InputStream): ElementNode {
+        val roots = mutableListOf<ElementNode>()
+        parse(stream, select = { path -> path.size == 1 }, onElement = { roots.add(it) })
+
+        if (roots.size == 1) {
+            return roots.first()
+        } else {
+            throw XmlPullParserException("No unique root element found")
+        }
+    }
+
+    /**
+     * Parses the document in [stream] without building its whole tree.
+     *
+     * When an element starts, [select] is called with the path of the open elements from the
+     * root, the last one being the new element. The elements in the path have no children and
+     * the path must not be retained. Only the subtrees of the selected elements are built, and
+     * each of them is given to [onElement] as soon as its end tag is parsed, then released.
+     * The descendants of a selected element are not submitted to [select].
+     *
+     * The memory used is then bounded by the size of the largest selected subtree, instead of
+     * the size of the document.
+     */
+    @Throws(XmlPullParserException::class, IOException::class)
+    public fun parse(
+        stream: InputStream,
+        select: (path: List<ElementNode>) -> Boolean,
+        onElement: (ElementNode) -> Unit,
+    ) {
         parser.setInput(stream, null) // let the parser try to determine input encoding
 
-        val stack = Stack<Triple<MutableList<Node>, AttributeMap, String>>()
-        // stack contains children, attributes, and lang
-        stack.push(Triple(mutableListOf(), mutableMapOf(), ""))
-        var text = ""
+        // Open elements without their children, which are used for the lang inheritance.
+        val path = mutableListOf<ElementNode>()
+        // Children of the open elements, or null if they are not part of a selected subtree.
+        val children = mutableListOf<MutableList<Node>?>()
+        val text = StringBuilder()
 
         while (parser.eventType != XmlPullParser.END_DOCUMENT) {
             when (parser.eventType) {
                 XmlPullParser.START_TAG -> {
-                    maybeAddText(text, stack.peek().first)
-                    text = ""
+                    val parentChildren = children.lastOrNull()
+                    parentChildren?.let { maybeAddText(text, it) }
+                    text.setLength(0)
                     val attributes = buildAttributeMap(parser)
                     val langAttr =
                         if (isNamespaceAware) {
@@ -55,46 +85,52 @@ public class XmlParser(
                         } else {
                             attributes[""]?.get("xml:lang")
                         }
-                    stack.push(Triple(mutableListOf(), attributes, langAttr ?: stack.peek().third))
+                    path.add(buildElement(attributes, langAttr ?: path.lastOrNull()?.lang ?: ""))
+                    children.add(
+                        if (parentChildren != null || select(path)) mutableListOf() else null
+                    )
                 }
                 XmlPullParser.END_TAG -> {
-                    val (children, attributes, lang) = stack.pop()
-                    maybeAddText(text, children)
-                    text = ""
-                    val element = buildElement(attributes, children, lang)
-                    stack.peek().first.add(element)
+                    val element = path.removeAt(path.lastIndex)
+                    val elementChildren = children.removeAt(children.lastIndex)
+                    if (elementChildren != null) {
+                        maybeAddText(text, elementChildren)
+                        val node = element.copy(children = elementChildren)
+                        val parentChildren = children.lastOrNull()
+                        if (parentChildren != null) {
+                            parentChildren.add(node)
+                        } else {
+                            onElement(node)
+                        }
+                    }
+                    text.setLength(0)
                 }
                 XmlPullParser.CDSECT,
                 XmlPullParser.TEXT,
                 XmlPullParser.ENTITY_REF,
                 -> {
-                    text += parser.text
+                    if (children.lastOrNull() != null) {
+                        text.append(parser.text)
+                    }
                 }
             }
             parser.nextToken()
         }
 
         stream.close()
-        assert(stack.size == 1)
-        val children = stack.peek().first
-        val roots = children.filterIsInstance<ElementNode>()
-        if (roots.size == 1) {
-            return roots.first()
-        } else {
-            throw XmlPullParserException("No unique root element found")
-        }
+        assert(path.isEmpty())
     }
 
-    private fun maybeAddText(text: String, children: MutableList<Node>) {
+    private fun maybeAddText(text: StringBuilder, children: MutableList<Node>) {
         if (text.isNotEmpty()) {
-            children.add(TextNode(text))
+            children.add(TextNode(text.toString()))
         }
     }
 
-    private fun buildElement(attributes: AttributeMap, children: MutableList<Node>, lang: String): ElementNode {
+    private fun buildElement(attributes: AttributeMap, lang: String): ElementNode {
         val rawName = parser.name
         val name = if (isCaseSensitive) rawName else rawName.lowercase(Locale.getDefault())
-        return ElementNode(name, parser.namespace, lang, attributes, children)
+        return ElementNode(name, parser.namespace, lang, attributes)
     }
 
     private fun buildAttribute(index: Int): Attribute {
@@ -1,69 +0,0 @@
-/*
- * Copyright 2023 Readium Foundation. All rights reserved.
- * Use of this source code is governed by the BSD-style license
- * available in the top-level LICENSE file of the project.
- */
-
-package org.readium.r2.shared.util.zip;
-
-import org.readium.r2.shared.util.zip.jvm.SeekableByteChannel;
-
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
-
-public class FileChannelAdapter implements SeekableByteChannel {
-
-    private final FileChannel channel;
-
-    FileChannelAdapter(final File file, final String mode) throws FileNotFoundException {
-        channel = new RandomAccessFile(file, mode).getChannel();
-    }
-
-    private FileChannelAdapter(final FileChannel channel) {
-        this.channel = channel;
-    }
-
-    @Override
-    public int read(ByteBuffer dst) throws IOException {
-        return channel.read(dst);
-    }
-
-    @Override
-    public int write(ByteBuffer src) throws IOException {
-        return channel.write(src);
-    }
-
-    @Override
-    public long position() throws IOException {
-        return channel.position();
-    }
-
-    @Override
-    public SeekableByteChannel position(long newPosition) throws IOException {
-        return new FileChannelAdapter(channel.position(newPosition));
-    }
-
-    @Override
-    public long size() throws IOException {
-        return channel.size();
-    }
-
-    @Override
-    public SeekableByteChannel truncate(long size) throws IOException {
-        return new FileChannelAdapter(channel.truncate(size));
-    }
-
-    @Override
-    public boolean isOpen() {
-        return channel.isOpen();
-    }
-
-    @Override
-    public void close() throws IOException {
-        channel.close();
-    }
-}
@@ -4,6 +4,8 @@
  * available in the top-level LICENSE file of the project.
  */
 
+@file:OptIn(InternalReadiumApi::class)
+
 package org.readium.r2.shared.util.zip
 
 import java.io.File
@@ -13,6 +15,8 @@ import java.util.zip.ZipException
 import java.util.zip.ZipFile
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
+import org.readium.r2.shared.InternalReadiumApi
+import org.readium.r2.shared.extensions.findInstance
 import org.readium.r2.shared.util.Try
 import org.readium.r2.shared.util.archive.ArchiveOpener
 import org.readium.r2.shared.util.data.Container
@@ -21,16 +25,24 @@ import org.readium.r2.shared.util.file.FileSystemError
 import org.readium.r2.shared.util.format.Format
 import org.readium.r2.shared.util.format.Specification
 import org.readium.r2.shared.util.resource.Resource
+import timber.log.Timber
 
 /**
  * An [ArchiveOpener] to open local ZIP files with Java's [ZipFile].
+ *
+ * @param memoryMapping Whether the files are mapped in memory instead, to read their entries
+ * concurrently and without intermediate copies. The files which can't be mapped are read with
+ * [ZipFile].
  */
-internal class FileZipArchiveProvider {
+internal class FileZipArchiveProvider(
+    private val indexDirectory: InflatedEntryIndexDirectory? = null,
+    private val memoryMapping: Boolean = false,
+) {
 
     suspend fun sniffOpen(file: File): Try<Container<Resource>, ArchiveOpener.SniffOpenError> {
         return withContext(Dispatchers.IO) {
             try {
-                val container = FileZipContainer(ZipFile(file), file)
+                val container = openContainer(file)
                 Try.success(container)
             } catch (e: ZipException) {
                 Try.failure(ArchiveOpener.SniffOpenError.NotRecognized)
@@ -67,7 +79,7 @@ internal class FileZipArchiveProvider {
     internal suspend fun open(file: File): Try<Container<Resource>, ArchiveOpener.OpenError> =
         withContext(Dispatchers.IO) {
             try {
-                val archive = FileZipContainer(ZipFile(file), file)
+                val archive = openContainer(file)
                 Try.success(archive)
             } catch (e: FileNotFoundException) {
                 Try.failure(
@@ -95,4 +107,26 @@ internal class FileZipArchiveProvider {
                 )
             }
         }
+
+    private suspend fun openContainer(file: File): Container<Resource> {
+        if (!memoryMapping) {
+            return FileZipContainer(ZipFile(file), file, indexDirectory)
+        }
+
+        val channel = try {
+            MappedFileChannel(file)
+        } catch (e: IOException) {
+            // The mapping fails when the process runs out of address space, for example with
+            // large files on 32-bit devices.
+            Timber.w(e, "Cannot map ${file.path} in memory, reading it with ZipFile instead")
+            return FileZipContainer(ZipFile(file), file, indexDirectory)
+        }
+
+        return try {
+            StreamingZipArchiveProvider(indexDirectory).openFile(file, channel)
+        } catch (e: IOException) {
+            // Unwraps the format errors, to handle them like Java's ZipFile.
+            throw e.findInstance(ZipException::class.java) ?: e
+        }
+    }
 }
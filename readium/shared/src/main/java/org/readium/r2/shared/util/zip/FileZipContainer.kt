@@ -40,6 +40,7 @@ import org.readium.r2.shared.util.toUrl
 internal class FileZipContainer(
     private val archive: ZipFile,
     file: File,
+    private val indexDirectory: InflatedEntryIndexDirectory? = null,
 ) : Container<Resource> {
 
     private inner class Entry(private val url: Url, private val entry: ZipEntry) :
@@ -100,8 +101,9 @@ internal class FileZipContainer(
                     }
             }
 
-        private fun readRange(range: LongRange): ByteArray =
-            stream(range.first).readRange(range)
+        private suspend fun readRange(range: LongRange): ByteArray =
+            index(entry)?.read(range)
+                ?: stream(range.first).readRange(range)
 
         /**
          * Reading an entry in chunks (e.g. from the HTTP server) can be really slow if the entry
@@ -137,6 +139,48 @@ internal class FileZipContainer(
         }
     }
 
+    private val indexes: MutableMap<String, InflatedEntryIndex> =
+        mutableMapOf()
+
+    /**
+     * Set by [close], to stop creating indexes which would never be closed.
+     */
+    private var isClosed: Boolean = false
+
+    /**
+     * Inflated size of the entries with an index, reserved in [indexDirectory].
+     */
+    private var indexedSize: Long = 0
+
+    /**
+     * Returns the random-access index shared by all the resources of a large deflated [entry],
+     * if an [indexDirectory] was provided and still has room for it.
+     */
+    private fun index(entry: ZipEntry): InflatedEntryIndex? {
+        if (
+            indexDirectory == null ||
+            entry.method != ZipEntry.DEFLATED ||
+            entry.size < InflatedEntryIndex.MIN_ENTRY_SIZE
+        ) {
+            return null
+        }
+
+        return synchronized(indexes) {
+            if (isClosed) {
+                return null
+            }
+            indexes[entry.name]?.let { return it }
+            if (!indexDirectory.reserve(entry.size)) {
+                return null
+            }
+            indexedSize += entry.size
+            InflatedEntryIndex(
+                indexDirectory.directory,
+                openStream = { archive.getInputStream(entry) }
+            ).also { indexes[entry.name] = it }
+        }
+    }
+
     override val sourceUrl: AbsoluteUrl = file.toUrl()
 
     override val entries: Set<Url> =
@@ -155,7 +199,17 @@ internal class FileZipContainer(
 
     @OptIn(DelicateCoroutinesApi::class)
     override fun close() {
+        val (closedIndexes, releasedSize) = synchronized(indexes) {
+            isClosed = true
+            (indexes.values.toList() to indexedSize)
+                .also {
+                    indexes.clear()
+                    indexedSize = 0
+                }
+        }
         GlobalScope.launch {
+            closedIndexes.forEach { it.close() }
+            indexDirectory?.release(releasedSize)
             tryOrLog {
                 withContext(Dispatchers.IO) {
                     archive.close()
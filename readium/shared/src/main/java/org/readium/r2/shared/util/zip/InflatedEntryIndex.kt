@@ -0,0 +1,223 @@
+/*
+ * Copyright 2024 Readium Foundation. All rights reserved.
+ * Use of this source code is governed by the BSD-style license
+ * available in the top-level LICENSE file of the project.
+ */
+
+@file:OptIn(InternalReadiumApi::class)
+
+package org.readium.r2.shared.util.zip
+
+import java.io.File
+import java.io.IOException
+import java.io.InputStream
+import java.io.RandomAccessFile
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withContext
+import org.readium.r2.shared.InternalReadiumApi
+import org.readium.r2.shared.extensions.coerceFirstNonNegative
+import org.readium.r2.shared.extensions.requireLengthFitInt
+import org.readium.r2.shared.extensions.tryOrLog
+
+/**
+ * Random-access index of the inflated content of a deflated ZIP entry.
+ *
+ * Java's [java.util.zip.Inflater] can neither be snapshotted nor primed at an arbitrary bit
+ * offset of a deflate stream, so instead of recording inflater windows, the inflated bytes are
+ * spilled into a sidecar file in [chunkSize] checkpoints while the entry is read forward for
+ * the first time. Ranges already indexed are then served with a positional read, and ranges
+ * further ahead resume inflating from the last checkpoint instead of the start of the entry.
+ *
+ * @param directory Directory in which the sidecar file is created.
+ * @param openStream Opens a new inflating stream on the entry, starting at its first byte.
+ */
+internal class InflatedEntryIndex(
+    private val directory: File,
+    private val openStream: () -> InputStream,
+    private val chunkSize: Int = DEFAULT_CHUNK_SIZE,
+) {
+
+    private val mutex: Mutex =
+        Mutex()
+
+    private var file: File? = null
+
+    private var sidecar: RandomAccessFile? = null
+
+    private var stream: InputStream? = null
+
+    /**
+     * Number of inflated bytes already available in the sidecar file.
+     */
+    private var indexedLength: Long = 0
+
+    private var isComplete: Boolean = false
+
+    private var isClosed: Boolean = false
+
+    suspend fun read(range: LongRange): ByteArray = withContext(Dispatchers.IO) {
+        @Suppress("NAME_SHADOWING")
+        val range = range
+            .coerceFirstNonNegative()
+            .requireLengthFitInt()
+
+        if (range.isEmpty()) {
+            return@withContext ByteArray(0)
+        }
+
+        mutex.withLock {
+            if (isClosed) {
+                throw IOException("The index of the ZIP entry is closed.")
+            }
+
+            indexUpTo(range.last + 1)
+
+            val end = minOf(range.last + 1, indexedLength)
+            if (range.first >= end) {
+                return@withLock ByteArray(0)
+            }
+
+            val bytes = ByteArray((end - range.first).toInt())
+            with(sidecar()) {
+                seek(range.first)
+                readFully(bytes)
+            }
+            bytes
+        }
+    }
+
+    /**
+     * Inflates the entry until at least [length] bytes are available in the sidecar file, or
+     * the end of the entry is reached.
+     */
+    private fun indexUpTo(length: Long) {
+        if (isComplete || indexedLength >= length) {
+            return
+        }
+
+        val sidecar = sidecar()
+        val stream = stream()
+        val buffer = ByteArray(chunkSize)
+        sidecar.seek(indexedLength)
+
+        try {
+            while (indexedLength < length) {
+                val read = stream.read(buffer)
+                if (read == -1) {
+                    isComplete = true
+                    closeStream()
+                    break
+                }
+                sidecar.write(buffer, 0, read)
+                indexedLength += read
+            }
+        } catch (e: IOException) {
+            // The stream position is unknown, it will be reopened at the next checkpoint.
+            closeStream()
+            throw e
+        }
+    }
+
+    private fun stream(): InputStream =
+        stream
+            ?: openStream()
+                .also { it.skipFully(indexedLength) }
+                .also { stream = it }
+
+    private fun sidecar(): RandomAccessFile =
+        sidecar
+            ?: File.createTempFile("zip-entry", ".idx", directory)
+                .also { file = it }
+                .let { RandomAccessFile(it, "rw") }
+                .also { sidecar = it }
+
+    private fun InputStream.skipFully(n: Long) {
+        var skipped = 0L
+        while (skipped < n) {
+            val count = skip(n - skipped)
+            if (count <= 0) {
+                if (read() == -1) {
+                    throw IOException("Unexpected end of ZIP entry while resuming the index.")
+                }
+                skipped++
+            } else {
+                skipped += count
+            }
+        }
+    }
+
+    private fun closeStream() {
+        tryOrLog { stream?.close() }
+        stream = null
+    }
+
+    /**
+     * Releases the inflating stream and deletes the sidecar file.
+     *
+     * The index can't be read anymore once closed.
+     */
+    suspend fun close() {
+        withContext(Dispatchers.IO) {
+            mutex.withLock {
+                isClosed = true
+                closeStream()
+                tryOrLog { sidecar?.close() }
+                sidecar = null
+                tryOrLog { file?.delete() }
+                file = null
+                indexedLength = 0
+                isComplete = false
+            }
+        }
+    }
+
+    companion object {
+
+        const val DEFAULT_CHUNK_SIZE: Int = 64 * 1024
+
+        /**
+         * Entries smaller than this size are quick enough to inflate again from the start.
+         */
+        const val MIN_ENTRY_SIZE: Long = 1024 * 1024
+    }
+}
+
+/**
+ * Directory of the [InflatedEntryIndex]es of the archives opened by the same [ZipArchiveOpener].
+ *
+ * The sidecar file of an index eventually holds the whole inflated entry, so new indexes are
+ * refused once the indexed entries would take more than [maxSize] bytes. The entries without an
+ * index are inflated again from their start when seeking backward.
+ */
+internal class InflatedEntryIndexDirectory(
+    val directory: File,
+    private val maxSize: Long,
+) {
+
+    private var reservedSize: Long = 0
+
+    /**
+     * Reserves room for the index of an entry of [length] inflated bytes, or returns false if the
+     * indexes would exceed [maxSize].
+     */
+    fun reserve(length: Long): Boolean =
+        synchronized(this) {
+            if (reservedSize + length > maxSize) {
+                false
+            } else {
+                reservedSize += length
+                true
+            }
+        }
+
+    /**
+     * Releases the room reserved for indexes which were closed.
+     */
+    fun release(length: Long) {
+        synchronized(this) {
+            reservedSize = (reservedSize - length).coerceAtLeast(0)
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2024 Readium Foundation. All rights reserved.
+ * Use of this source code is governed by the BSD-style license
+ * available in the top-level LICENSE file of the project.
+ */
+
+package org.readium.r2.shared.util.zip
+
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.Buffer
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import org.readium.r2.shared.util.zip.jvm.ClosedChannelException
+import org.readium.r2.shared.util.zip.jvm.NonWritableChannelException
+import org.readium.r2.shared.util.zip.jvm.SeekableByteChannel
+
+/**
+ * A read-only [SeekableByteChannel] over a local file mapped in memory.
+ *
+ * Besides the sequential reads of [SeekableByteChannel], the positional [read] doesn't depend on
+ * the position of the channel. It can be called concurrently without locking, and copies the
+ * content straight from the page cache into the destination buffer, without intermediate buffers.
+ *
+ * The file is unmapped only when the channel is garbage collected.
+ */
+internal class MappedFileChannel(file: File) : SeekableByteChannel {
+
+    /**
+     * Consecutive mapped segments of the file, as a single mapping is limited to 2 GB.
+     */
+    @Volatile
+    private var segments: Array<ByteBuffer>? = map(file)
+
+    private val size: Long = checkNotNull(segments).sumOf { it.capacity().toLong() }
+
+    private var position: Long = 0
+
+    /**
+     * Reads bytes starting at the given [position] in the file into [dst], without changing the
+     * position of the channel.
+     *
+     * @return The number of bytes read, or -1 if [position] is at the end of the file.
+     */
+    fun read(position: Long, dst: ByteBuffer): Int {
+        val segments = segments ?: throw ClosedChannelException()
+        if (position >= size) {
+            return -1
+        }
+
+        var current = position
+        while (dst.hasRemaining() && current < size) {
+            val segment = segments[(current / SEGMENT_SIZE).toInt()].duplicate()
+            val offset = (current % SEGMENT_SIZE).toInt()
+            val length = minOf(segment.limit() - offset, dst.remaining())
+            segment.select(offset, length)
+            dst.put(segment)
+            current += length
+        }
+        return (current - position).toInt()
+    }
+
+    @Synchronized
+    override fun read(dst: ByteBuffer): Int =
+        read(position, dst)
+            .also { if (it > 0) position += it }
+
+    override fun write(src: ByteBuffer): Int =
+        throw NonWritableChannelException()
+
+    @Synchronized
+    override fun position(): Long {
+        segments ?: throw ClosedChannelException()
+        return position
+    }
+
+    @Synchronized
+    override fun position(newPosition: Long): SeekableByteChannel {
+        segments ?: throw ClosedChannelException()
+        require(newPosition >= 0)
+        position = newPosition
+        return this
+    }
+
+    override fun size(): Long {
+        segments ?: throw ClosedChannelException()
+        return size
+    }
+
+    override fun truncate(size: Long): SeekableByteChannel =
+        throw NonWritableChannelException()
+
+    override fun isOpen(): Boolean =
+        segments != null
+
+    @Throws(IOException::class)
+    override fun close() {
+        segments = null
+    }
+
+    /**
+     * Restricts this buffer to [length] bytes starting at [offset].
+     *
+     * The buffer is used as a [Buffer] to keep compatibility with the signatures of Java 8.
+     */
+    private fun ByteBuffer.select(offset: Int, length: Int) {
+        val buffer: Buffer = this
+        buffer.position(offset)
+        buffer.limit(offset + length)
+    }
+
+    private companion object {
+        const val SEGMENT_SIZE: Long = 1L shl 30
+
+        fun map(file: File): Array<ByteBuffer> =
+            RandomAccessFile(file, "r").use { randomAccessFile ->
+                val channel = randomAccessFile.channel
+                val size = channel.size()
+                // The mappings stay valid after the file channel is closed.
+                Array(((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE).toInt()) { i ->
+                    val start = i * SEGMENT_SIZE
+                    channel.map(FileChannel.MapMode.READ_ONLY, start, minOf(SEGMENT_SIZE, size - start))
+                }
+            }
+    }
+}
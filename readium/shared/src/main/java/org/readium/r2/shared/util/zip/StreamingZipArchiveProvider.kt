@@ -32,7 +32,9 @@ import org.readium.r2.shared.util.zip.jvm.SeekableByteChannel
  * An [ArchiveOpener] able to open a ZIP archive served through a stream (e.g. HTTP server,
  * content URI, etc.).
  */
-internal class StreamingZipArchiveProvider {
+internal class StreamingZipArchiveProvider(
+    private val indexDirectory: InflatedEntryIndexDirectory? = null,
+) {
 
     suspend fun sniffOpen(source: Readable): Try<Container<Resource>, ArchiveOpener.SniffOpenError> {
         return try {
@@ -85,13 +87,29 @@ internal class StreamingZipArchiveProvider {
                 sourceScheme?.isContent ?: false -> 5242880
                 else -> 0
             }
-        StreamingZipContainer(zipFile, sourceUrl, cacheEntryMaxSize)
+        StreamingZipContainer(zipFile, sourceUrl, cacheEntryMaxSize, indexDirectory)
     }
 
-    internal suspend fun openFile(file: File): Container<Resource> = withContext(Dispatchers.IO) {
-        val fileChannel = FileChannelAdapter(file, "r")
-        val channel = wrapBaseChannel(fileChannel)
-        StreamingZipContainer(ZipFile(channel), file.toUrl())
+    /**
+     * Opens a local ZIP [file] mapped in memory with [channel]. The page cache already serves the
+     * role of the caching and buffering channels, and the entries can be read concurrently.
+     */
+    internal suspend fun openFile(
+        file: File,
+        channel: MappedFileChannel = MappedFileChannel(file),
+    ): Container<Resource> = withContext(Dispatchers.IO) {
+        val zipFile = try {
+            ZipFile(channel)
+        } catch (e: IOException) {
+            channel.close()
+            throw e
+        }
+        StreamingZipContainer(
+            zipFile,
+            file.toUrl(),
+            indexDirectory = indexDirectory,
+            mappedChannel = channel
+        )
     }
 
     private fun wrapBaseChannel(channel: SeekableByteChannel): SeekableByteChannel {
@@ -8,6 +8,7 @@
 
 package org.readium.r2.shared.util.zip
 
+import java.nio.ByteBuffer
 import kotlinx.coroutines.DelicateCoroutinesApi
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.GlobalScope
@@ -16,8 +17,10 @@ import kotlinx.coroutines.sync.Mutex
 import kotlinx.coroutines.sync.withLock
 import kotlinx.coroutines.withContext
 import org.readium.r2.shared.InternalReadiumApi
+import org.readium.r2.shared.extensions.coerceIn
 import org.readium.r2.shared.extensions.findInstance
 import org.readium.r2.shared.extensions.readFully
+import org.readium.r2.shared.extensions.requireLengthFitInt
 import org.readium.r2.shared.extensions.tryOrLog
 import org.readium.r2.shared.util.AbsoluteUrl
 import org.readium.r2.shared.util.DebugError
@@ -34,13 +37,20 @@ import org.readium.r2.shared.util.getOrElse
 import org.readium.r2.shared.util.io.CountingInputStream
 import org.readium.r2.shared.util.resource.Resource
 import org.readium.r2.shared.util.resource.filename
+import org.readium.r2.shared.util.zip.compress.archivers.EntryStreamOffsets
 import org.readium.r2.shared.util.zip.compress.archivers.zip.ZipArchiveEntry
 import org.readium.r2.shared.util.zip.compress.archivers.zip.ZipFile
 
+/**
+ * @param mappedChannel Channel of [zipFile] when it is a local file mapped in memory, used to
+ * read the stored entries directly.
+ */
 internal class StreamingZipContainer(
     private val zipFile: ZipFile,
     override val sourceUrl: AbsoluteUrl?,
     private val cacheEntryMaxSize: Int = 0,
+    private val indexDirectory: InflatedEntryIndexDirectory? = null,
+    private val mappedChannel: MappedFileChannel? = null,
 ) : Container<Resource> {
 
     private inner class Entry(
@@ -51,6 +61,12 @@ internal class StreamingZipContainer(
         private var cache: ByteArray? =
             null
 
+        /**
+         * Guards the state of this entry, while the other entries are read concurrently.
+         */
+        private val mutex: Mutex =
+            Mutex()
+
         override val sourceUrl: AbsoluteUrl? get() = null
 
         override suspend fun properties(): ReadTry<Resource.Properties> =
@@ -84,6 +100,9 @@ internal class StreamingZipContainer(
 
         override suspend fun read(range: LongRange?): ReadTry<ByteArray> =
             withContext(Dispatchers.IO) {
+                readMapped(range)
+                    ?.let { return@withContext it }
+
                 mutex.withLock {
                     try {
                         val bytes =
@@ -101,6 +120,39 @@ internal class StreamingZipContainer(
                 }
             }
 
+        /**
+         * Reads a stored entry straight from the archive mapped in memory, which doesn't need to
+         * lock the entry.
+         *
+         * @return Null if the entry can't be read this way.
+         */
+        private fun readMapped(range: LongRange?): ReadTry<ByteArray>? {
+            val channel = mappedChannel
+                ?: return null
+            if (entry.method != ZipArchiveEntry.STORED || entry.size < 0) {
+                return null
+            }
+
+            return try {
+                val dataOffset = zipFile.getEntryDataOffset(entry)
+                    .takeUnless { it == EntryStreamOffsets.OFFSET_UNKNOWN }
+                    ?: return null
+
+                @Suppress("NAME_SHADOWING")
+                val range = (range ?: 0 until entry.size)
+                    .coerceIn(0 until entry.size)
+                    .requireLengthFitInt()
+
+                val bytes = ByteArray(if (range.isEmpty()) 0 else (range.last - range.first + 1).toInt())
+                if (bytes.isNotEmpty()) {
+                    channel.read(dataOffset + range.first, ByteBuffer.wrap(bytes))
+                }
+                Try.success(bytes)
+            } catch (exception: Exception) {
+                Try.failure(ReadError.Decoding(exception))
+            }
+        }
+
         private suspend fun readFully(): ByteArray =
             zipFile.getInputStream(entry).use {
                 it.readFully()
@@ -123,7 +175,8 @@ internal class StreamingZipContainer(
                     readRange(range)
                 }
                 else ->
-                    stream(range.first).readRange(range)
+                    index(entry)?.read(range)
+                        ?: stream(range.first).readRange(range)
             }
 
         /**
@@ -170,8 +223,47 @@ internal class StreamingZipContainer(
         }
     }
 
-    private val mutex: Mutex =
-        Mutex()
+    private val indexes: MutableMap<String, InflatedEntryIndex> =
+        mutableMapOf()
+
+    /**
+     * Set by [close], to stop creating indexes which would never be closed.
+     */
+    private var isClosed: Boolean = false
+
+    /**
+     * Inflated size of the entries with an index, reserved in [indexDirectory].
+     */
+    private var indexedSize: Long = 0
+
+    /**
+     * Returns the random-access index shared by all the resources of a large deflated [entry],
+     * if an [indexDirectory] was provided and still has room for it.
+     */
+    private fun index(entry: ZipArchiveEntry): InflatedEntryIndex? {
+        if (
+            indexDirectory == null ||
+            entry.method != ZipArchiveEntry.DEFLATED ||
+            entry.size < InflatedEntryIndex.MIN_ENTRY_SIZE
+        ) {
+            return null
+        }
+
+        return synchronized(indexes) {
+            if (isClosed) {
+                return null
+            }
+            indexes[entry.name]?.let { return it }
+            if (!indexDirectory.reserve(entry.size)) {
+                return null
+            }
+            indexedSize += entry.size
+            InflatedEntryIndex(
+                indexDirectory.directory,
+                openStream = { zipFile.getInputStream(entry) }
+            ).also { indexes[entry.name] = it }
+        }
+    }
 
     override val entries: Set<Url> =
         zipFile.entries.toList()
@@ -187,8 +279,19 @@ internal class StreamingZipContainer(
 
     @OptIn(DelicateCoroutinesApi::class)
     override fun close() {
+        val (closedIndexes, releasedSize) = synchronized(indexes) {
+            isClosed = true
+            (indexes.values.toList() to indexedSize)
+                .also {
+                    indexes.clear()
+                    indexedSize = 0
+                }
+        }
         GlobalScope.launch {
             withContext(Dispatchers.IO) {
+                closedIndexes.forEach { it.close() }
+                indexDirectory?.release(releasedSize)
+            indexDirectory?.release(releasedSize)
                 tryOrLog { zipFile.close() }
             }
         }
@@ -6,6 +6,7 @@
 
 package org.readium.r2.shared.util.zip
 
+import java.io.File
 import org.readium.r2.shared.util.FileExtension
 import org.readium.r2.shared.util.Try
 import org.readium.r2.shared.util.archive.ArchiveOpener
@@ -17,11 +18,45 @@ import org.readium.r2.shared.util.format.Specification
 import org.readium.r2.shared.util.mediatype.MediaType
 import org.readium.r2.shared.util.resource.Resource
 
-public class ZipArchiveOpener : ArchiveOpener {
+/**
+ * An [ArchiveOpener] able to open ZIP archives, either from local files or streamed sources.
+ *
+ * @param indexDirectory Directory where random-access indexes of large deflated entries are
+ * stored while they are read. When provided, seeking backward in a deflated entry (e.g. an audio
+ * track) resumes from the closest checkpoint instead of inflating the entry from its start.
+ * An index is a full uncompressed copy of its entry, written as the entry is read: each deflated
+ * entry larger than 1 MB takes its inflated size on disk, so reading a 300 MB audio track
+ * writes a 300 MB index. The indexes are deleted when the archive is closed.
+ * @param memoryMapping Whether local ZIP files are mapped in memory. Their stored entries (e.g.
+ * images, audio or PDF files) are then read concurrently and served from the page cache, which
+ * increases the throughput of comics and audiobooks. The files which can't be mapped are read
+ * without mapping. A mapping is released only when it is garbage collected, not when the archive
+ * is closed. The file must not be truncated while it is mapped: reading the missing pages
+ * crashes the process with a `SIGBUS` signal, which can't be caught.
+ * @param indexMaxSize Maximum inflated size of the entries indexed at the same time in
+ * [indexDirectory], across all the open archives. Once reached, the next entries are read without
+ * an index until archives are closed.
+ */
+public class ZipArchiveOpener(
+    indexDirectory: File? = null,
+    memoryMapping: Boolean = false,
+    indexMaxSize: Long = DEFAULT_INDEX_MAX_SIZE,
+) : ArchiveOpener {
+
+    public companion object {
+
+        /**
+         * Default maximum size of the indexes of deflated entries, 512 MB.
+         */
+        public const val DEFAULT_INDEX_MAX_SIZE: Long = 512L * 1024 * 1024
+    }
+
+    private val entryIndexDirectory: InflatedEntryIndexDirectory? =
+        indexDirectory?.let { InflatedEntryIndexDirectory(it, indexMaxSize) }
 
-    private val fileZipArchiveProvider = FileZipArchiveProvider()
+    private val fileZipArchiveProvider = FileZipArchiveProvider(entryIndexDirectory, memoryMapping)
 
-    private val streamingZipArchiveProvider = StreamingZipArchiveProvider()
+    private val streamingZipArchiveProvider = StreamingZipArchiveProvider(entryIndexDirectory)
 
     override suspend fun open(
         format: Format,
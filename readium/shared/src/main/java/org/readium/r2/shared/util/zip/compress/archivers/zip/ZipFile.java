@@ -642,10 +642,26 @@ public class ZipFile implements Closeable {
                 ? null : createBoundedInputStream(0, firstLocalFileHeaderOffset);
     }
 
+    // Readium-added
+    /**
+     * Gets the offset of the data of the given entry in the archive.
+     *
+     * @param ze The entry to get the data offset for
+     * @return The offset of the entry data, or {@link EntryStreamOffsets#OFFSET_UNKNOWN}.
+     * @throws IOException if there is a problem reading the local file header.
+     */
+    public long getEntryDataOffset(final ZipArchiveEntry ze) throws IOException {
+        return getDataOffset(ze);
+    }
+
     private long getDataOffset(final ZipArchiveEntry ze) throws IOException {
         final long s = ze.getDataOffset();
         if (s == EntryStreamOffsets.OFFSET_UNKNOWN) {
-            setDataOffset(ze);
+            // Readium-modified: the local file header is read with the position of the shared
+            // channel, which can be used concurrently by the streams of other entries.
+            synchronized (archive) {
+                setDataOffset(ze);
+            }
             return ze.getDataOffset();
         }
         return s;
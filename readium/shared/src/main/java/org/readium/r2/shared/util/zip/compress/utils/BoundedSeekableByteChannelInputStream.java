@@ -18,6 +18,7 @@
 
 package org.readium.r2.shared.util.zip.compress.utils;
 
+import org.readium.r2.shared.util.zip.MappedFileChannel;
 import org.readium.r2.shared.util.zip.jvm.SeekableByteChannel;
 
 import java.io.IOException;
@@ -49,9 +50,14 @@ public class BoundedSeekableByteChannelInputStream extends BoundedArchiveInputSt
     @Override
     protected int read(final long pos, final ByteBuffer buf) throws IOException {
         int read;
-        synchronized (channel) {
-            channel.position(pos);
-            read = channel.read(buf);
+        // Readium-added: positional reads of a mapped file don't need to lock the channel.
+        if (channel instanceof MappedFileChannel) {
+            read = ((MappedFileChannel) channel).read(pos, buf);
+        } else {
+            synchronized (channel) {
+                channel.position(pos);
+                read = channel.read(buf);
+            }
         }
         buf.flip();
         return read;
@@ -16,8 +16,11 @@ import kotlin.test.assertEquals
 import kotlin.test.assertNotNull
 import kotlin.test.assertTrue
 import kotlinx.coroutines.runBlocking
+import org.junit.Rule
 import org.junit.Test
+import org.junit.rules.TemporaryFolder
 import org.junit.runner.RunWith
+import org.readium.r2.shared.ExperimentalReadiumApi
 import org.readium.r2.shared.publication.*
 import org.readium.r2.shared.util.AbsoluteUrl
 import org.readium.r2.shared.util.file.FileResource
@@ -26,9 +29,13 @@ import org.readium.r2.shared.util.resource.SingleResourceContainer
 import org.readium.r2.shared.util.toAbsoluteUrl
 import org.robolectric.RobolectricTestRunner
 
+@OptIn(ExperimentalReadiumApi::class)
 @RunWith(RobolectricTestRunner::class)
 class CoverServiceTest {
 
+    @get:Rule
+    val tmpFolder = TemporaryFolder()
+
     private val coverBytes: ByteArray
     private val coverBitmap: Bitmap
     private val coverPath: AbsoluteUrl
@@ -89,4 +96,53 @@ class CoverServiceTest {
         assertEquals(400, scaled.height)
         assertEquals(299, scaled.width)
     }
+
+    @Test
+    fun `coversFitting returns the covers of several publications`() {
+        val covers = runBlocking {
+            coversFitting(listOf(publication, publication), Size(300, 400), parallelism = 1)
+        }
+        assertEquals(2, covers.size)
+        for (cover in covers) {
+            assertNotNull(cover)
+            assertEquals(400, cover.height)
+        }
+    }
+
+    @Test
+    fun `cached covers are not decoded again`() {
+        val directory = tmpFolder.newFolder()
+        var decodedCount = 0
+
+        fun createPublication(): Publication =
+            Publication(
+                manifest = Manifest(
+                    metadata = Metadata(
+                        identifier = "urn:isbn:1234",
+                        localizedTitle = LocalizedString("title")
+                    )
+                ),
+                servicesBuilder = Publication.ServicesBuilder(
+                    cover = {
+                        object : CoverService {
+                            override suspend fun cover(): Bitmap = coverBitmap
+
+                            override suspend fun coverFitting(maxSize: Size): Bitmap {
+                                decodedCount++
+                                return coverBitmap
+                            }
+                        }
+                    }
+                ).apply { cacheCovers(directory) }
+            )
+
+        runBlocking {
+            assertNotNull(createPublication().coverFitting(Size(300, 400)))
+            assertNotNull(createPublication().coverFitting(Size(300, 400)))
+            assertEquals(1, decodedCount)
+
+            assertNotNull(createPublication().coverFitting(Size(150, 200)))
+            assertEquals(2, decodedCount)
+        }
+    }
 }
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2024 Readium Foundation. All rights reserved.
+ * Use of this source code is governed by the BSD-style license
+ * available in the top-level LICENSE file of the project.
+ */
+
+package org.readium.r2.shared.publication.services.search
+
+import kotlin.test.assertEquals
+import kotlin.test.assertNotNull
+import org.junit.Test
+import org.readium.r2.shared.publication.services.search.SearchIndex.Hit
+
+class SearchIndexTest {
+
+    private val texts = listOf(
+        "The quick brown fox jumps over the lazy dog.",
+        null,
+        "A brown dog, then a quick Brown FOX.",
+        ""
+    )
+
+    private val index = SearchIndex.build(
+        texts = texts,
+        tokenize = { text -> Regex("\\w+").findAll(text).map { it.range }.toList() },
+        normalize = { it.lowercase() }
+    )
+
+    @Test
+    fun `find a word`() {
+        assertEquals(
+            listOf(Hit(0, 16 until 19), Hit(2, 32 until 35)),
+            index.find(listOf("fox"), wholeWord = true)
+        )
+    }
+
+    @Test
+    fun `find a word prefix`() {
+        assertEquals(
+            listOf(Hit(0, 4 until 9), Hit(2, 20 until 25)),
+            index.find(listOf("qui"), wholeWord = false)
+        )
+        assertEquals(
+            emptyList(),
+            index.find(listOf("qui"), wholeWord = true)
+        )
+    }
+
+    @Test
+    fun `find a prefix matching several words keeps the document order`() {
+        assertEquals(
+            listOf(Hit(0, 0 until 3), Hit(0, 31 until 34), Hit(2, 13 until 17)),
+            index.find(listOf("th"), wholeWord = false)
+        )
+    }
+
+    @Test
+    fun `find a sequence of words`() {
+        assertEquals(
+            listOf(Hit(0, 10 until 19), Hit(2, 26 until 35)),
+            index.find(listOf("brown", "fox"), wholeWord = true)
+        )
+        assertEquals(
+            listOf(Hit(2, 2 until 11)),
+            index.find(listOf("brown", "d"), wholeWord = false)
+        )
+        assertEquals(
+            emptyList(),
+            index.find(listOf("fox", "brown"), wholeWord = false)
+        )
+    }
+
+    @Test
+    fun `unknown words are not found`() {
+        assertEquals(emptyList(), index.find(listOf("cat"), wholeWord = false))
+        assertEquals(emptyList(), index.find(listOf("cat", "dog"), wholeWord = false))
+        assertEquals(emptyList(), index.find(emptyList(), wholeWord = false))
+    }
+
+    @Test
+    fun `encode and decode an index`() {
+        val decoded = assertNotNull(SearchIndex.decode(index.encode()))
+        assertEquals(texts, decoded.texts)
+        assertEquals(
+            index.find(listOf("brown", "fo"), wholeWord = false),
+            decoded.find(listOf("brown", "fo"), wholeWord = false)
+        )
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2024 Readium Foundation. All rights reserved.
+ * Use of this source code is governed by the BSD-style license
+ * available in the top-level LICENSE file of the project.
+ */
+
+@file:OptIn(InternalReadiumApi::class)
+
+package org.readium.r2.shared.util
+
+import kotlin.test.assertEquals
+import org.junit.Test
+import org.readium.r2.shared.InternalReadiumApi
+
+class SegmentIndexTest {
+
+    @Test
+    fun `find the last segment starting at or before a value`() {
+        val index = SegmentIndex(doubleArrayOf(0.0, 0.25, 0.5, 0.5, 0.75))
+        assertEquals(-1, index.lastIndexStartingAtOrBefore(-0.1))
+        assertEquals(0, index.lastIndexStartingAtOrBefore(0.0))
+        assertEquals(0, index.lastIndexStartingAtOrBefore(0.2))
+        assertEquals(1, index.lastIndexStartingAtOrBefore(0.25))
+        assertEquals(3, index.lastIndexStartingAtOrBefore(0.5))
+        assertEquals(3, index.lastIndexStartingAtOrBefore(0.6))
+        assertEquals(4, index.lastIndexStartingAtOrBefore(1.0))
+    }
+
+    @Test
+    fun `find in an empty index`() {
+        assertEquals(-1, SegmentIndex(doubleArrayOf()).lastIndexStartingAtOrBefore(0.0))
+    }
+
+    @Test
+    fun `create from lengths`() {
+        val index = SegmentIndex.fromLengths(doubleArrayOf(10.0, 0.0, 5.0))
+        assertEquals(3, index.size)
+        assertEquals(0.0, index.startOf(0))
+        assertEquals(10.0, index.startOf(1))
+        assertEquals(10.0, index.startOf(2))
+        assertEquals(2, index.lastIndexStartingAtOrBefore(10.0))
+    }
+}
@@ -0,0 +1,107 @@
+package org.readium.r2.shared.util.cache
+
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.runBlocking
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class FileCacheTest {
+
+    @get:Rule
+    val tmp = TemporaryFolder()
+
+    private fun cache(maxSize: Long = Long.MAX_VALUE, evictedSizeRatio: Double = 1.0): FileCache<String> =
+        FileCache(
+            directory = tmp.root,
+            encode = { it.toByteArray() },
+            decode = { it.decodeToString() },
+            maxSize = maxSize,
+            evictedSizeRatio = evictedSizeRatio
+        )
+
+    @Test
+    fun `values are persisted across instances`(): Unit = runBlocking {
+        cache().transaction { put("key", "value") }
+        assertEquals("value", cache().transaction { get("key") })
+    }
+
+    @Test
+    fun `missing values are null`(): Unit = runBlocking {
+        assertNull(cache().transaction { get("unknown") })
+    }
+
+    @Test
+    fun `putting null removes the value`(): Unit = runBlocking {
+        val sut = cache()
+        sut.transaction { put("key", "value") }
+        sut.transaction { put("key", null) }
+        assertNull(sut.transaction { get("key") })
+    }
+
+    @Test
+    fun `remove returns the previous value`(): Unit = runBlocking {
+        val sut = cache()
+        sut.transaction { put("key", "value") }
+        assertEquals("value", sut.transaction { remove("key") })
+        assertNull(sut.transaction { get("key") })
+    }
+
+    @Test
+    fun `clear removes all the values`(): Unit = runBlocking {
+        val sut = cache()
+        sut.transaction {
+            put("a", "1")
+            put("b", "2")
+            clear()
+        }
+        assertNull(sut.transaction { get("a") })
+        assertNull(sut.transaction { get("b") })
+    }
+
+    @Test
+    fun `least recently used values are evicted when exceeding the max size`(): Unit = runBlocking {
+        val sut = cache(maxSize = 10)
+        sut.transaction { put("a", "12345") }
+        tmp.root.listFiles()!!.forEach { it.setLastModified(1000) }
+        sut.transaction { put("b", "67890") }
+        sut.transaction { put("c", "abcde") }
+        assertNull(sut.transaction { get("a") })
+        assertEquals("abcde", sut.transaction { get("c") })
+    }
+
+    @Test
+    fun `values are evicted down to the evicted size ratio`(): Unit = runBlocking {
+        val sut = cache(maxSize = 20, evictedSizeRatio = 0.5)
+        sut.transaction { put("a", "12345") }
+        sut.transaction { put("b", "67890") }
+        sut.transaction { put("c", "abcde") }
+        tmp.root.listFiles()!!.forEachIndexed { i, file -> file.setLastModified(1000L * (i + 1)) }
+        sut.transaction { put("d", "fghij") }
+        sut.transaction { put("e", "klmno") }
+        val remaining = listOf("a", "b", "c", "d", "e")
+            .mapNotNull { sut.transaction { get(it) } }
+        assertEquals(listOf("klmno"), remaining.filter { it == "klmno" })
+        assertTrue(remaining.sumOf { it.length } <= 10)
+    }
+
+    @Test
+    fun `caches sharing a directory write the same key concurrently`(): Unit = runBlocking {
+        val value = "x".repeat(100_000)
+        (1..8)
+            .map { i ->
+                async(Dispatchers.IO) {
+                    cache().transaction { put("key", value + i % 2) }
+                }
+            }
+            .awaitAll()
+
+        assertTrue(cache().transaction { get("key") } in setOf(value + 0, value + 1))
+        assertEquals(emptyList(), tmp.root.listFiles()!!.filter { it.extension == "tmp" })
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2024 Readium Foundation. All rights reserved.
+ * Use of this source code is governed by the BSD-style license
+ * available in the top-level LICENSE file of the project.
+ */
+
+package org.readium.r2.shared.util.http
+
+import com.sun.net.httpserver.HttpServer
+import java.net.InetSocketAddress
+import java.util.Collections
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.readium.r2.shared.ExperimentalReadiumApi
+import org.readium.r2.shared.util.AbsoluteUrl
+import org.readium.r2.shared.util.checkSuccess
+import org.robolectric.RobolectricTestRunner
+
+@OptIn(ExperimentalReadiumApi::class)
+@RunWith(RobolectricTestRunner::class)
+class DefaultHttpClientTest {
+
+    private val content = "Hello, world!".toByteArray()
+
+    /**
+     * Client port of each request received by the server.
+     */
+    private val clientPorts = Collections.synchronizedList(mutableListOf<Int>())
+
+    private lateinit var server: HttpServer
+
+    private val url: AbsoluteUrl get() =
+        AbsoluteUrl("http://localhost:${server.address.port}/resource")!!
+
+    @Before
+    fun setUp() {
+        server = HttpServer.create(InetSocketAddress("localhost", 0), 0)
+        server.createContext("/resource") { exchange ->
+            clientPorts.add(exchange.remoteAddress.port)
+            exchange.sendResponseHeaders(200, content.size.toLong())
+            exchange.responseBody.use { it.write(content) }
+        }
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.stop(0)
+    }
+
+    @Test
+    fun `connections are reused once the body is closed`() = runBlocking {
+        val client = DefaultHttpClient()
+
+        repeat(3) {
+            val response = client.stream(HttpRequest(url)).checkSuccess()
+            val body = response.body.use { it.readBytes() }
+            assertContentEquals(content, body)
+        }
+
+        assertEquals(3, clientPorts.size)
+        assertEquals(1, clientPorts.distinct().size)
+        assertEquals(3, client.connectionStatistics.requestCount)
+        assertEquals(0, client.connectionStatistics.secureRequestCount)
+    }
+}
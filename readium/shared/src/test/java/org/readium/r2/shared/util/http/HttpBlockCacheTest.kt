@@ -0,0 +1,146 @@
+/*
+ * Copyright 2024 Readium Foundation. All rights reserved.
+ * Use of this source code is governed by the BSD-style license
+ * available in the top-level LICENSE file of the project.
+ */
+
+package org.readium.r2.shared.util.http
+
+import com.sun.net.httpserver.HttpServer
+import java.net.InetSocketAddress
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.random.Random
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.readium.r2.shared.ExperimentalReadiumApi
+import org.readium.r2.shared.util.AbsoluteUrl
+import org.readium.r2.shared.util.checkSuccess
+import org.robolectric.RobolectricTestRunner
+
+@OptIn(ExperimentalReadiumApi::class)
+@RunWith(RobolectricTestRunner::class)
+class HttpBlockCacheTest {
+
+    @get:Rule
+    val tmpFolder = TemporaryFolder()
+
+    @Volatile
+    private var content: ByteArray = Random(42).nextBytes(100_000)
+
+    @Volatile
+    private var etag = "\"v1\""
+
+    private val requestCount = AtomicInteger(0)
+
+    private lateinit var server: HttpServer
+
+    private val url: AbsoluteUrl get() =
+        AbsoluteUrl("http://localhost:${server.address.port}/resource")!!
+
+    @Before
+    fun setUp() {
+        server = HttpServer.create(InetSocketAddress("localhost", 0), 0)
+        server.createContext("/resource") { exchange ->
+            requestCount.incrementAndGet()
+            val content = content
+            val ifRange = exchange.requestHeaders.getFirst("If-Range")
+            val range = exchange.requestHeaders.getFirst("Range")
+                ?.takeIf { ifRange == null || ifRange == etag }
+                ?.removePrefix("bytes=")
+                ?.split("-")
+                ?.let { it[0].toInt()..it[1].toInt().coerceAtMost(content.size - 1) }
+
+            exchange.responseHeaders.add("ETag", etag)
+            val body = if (range != null) {
+                exchange.responseHeaders.add(
+                    "Content-Range",
+                    "bytes ${range.first}-${range.last}/${content.size}"
+                )
+                exchange.sendResponseHeaders(206, range.count().toLong())
+                content.copyOfRange(range.first, range.last + 1)
+            } else {
+                exchange.sendResponseHeaders(200, content.size.toLong())
+                content
+            }
+            exchange.responseBody.use { it.write(body) }
+        }
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.stop(0)
+    }
+
+    private val client = DefaultHttpClient()
+
+    private fun createResource(cache: HttpBlockCache): HttpResource =
+        HttpResource(url, client, blockCache = cache)
+
+    @Test
+    fun `overlapping reads are served from the cache`() = runBlocking {
+        val cache = HttpBlockCache(blockSize = 10_000)
+
+        assertContentEquals(
+            content.copyOfRange(5_000, 35_000),
+            createResource(cache).read(5_000L until 35_000).checkSuccess()
+        )
+        val count = requestCount.get()
+
+        assertContentEquals(
+            content.copyOfRange(12_000, 30_000),
+            createResource(cache).read(12_000L until 30_000).checkSuccess()
+        )
+        assertEquals(100_000L, createResource(cache).length().checkSuccess())
+        assertEquals(count, requestCount.get())
+    }
+
+    @Test
+    fun `missing blocks are fetched with a single request`() = runBlocking {
+        val cache = HttpBlockCache(blockSize = 10_000)
+        val resource = createResource(cache)
+
+        resource.read(0L until 10).checkSuccess()
+        val count = requestCount.get()
+
+        assertContentEquals(content, resource.read().checkSuccess())
+        assertEquals(count + 1, requestCount.get())
+    }
+
+    @Test
+    fun `blocks are kept on disk between sessions`() = runBlocking {
+        val directory = tmpFolder.newFolder()
+        createResource(HttpBlockCache(blockSize = 10_000, directory = directory))
+            .read().checkSuccess()
+
+        val count = requestCount.get()
+        assertContentEquals(
+            content.copyOfRange(50_000, 90_000),
+            createResource(HttpBlockCache(blockSize = 10_000, directory = directory))
+                .read(50_000L until 90_000).checkSuccess()
+        )
+        // Only the validation of the resource.
+        assertEquals(count + 1, requestCount.get())
+    }
+
+    @Test
+    fun `modified resources are fetched again`() = runBlocking {
+        val cache = HttpBlockCache(blockSize = 10_000)
+        createResource(cache).read(0L until 10).checkSuccess()
+
+        content = Random(43).nextBytes(100_000)
+        etag = "\"v2\""
+
+        assertContentEquals(
+            content.copyOfRange(20_000, 40_000),
+            createResource(cache).read(20_000L until 40_000).checkSuccess()
+        )
+    }
+}
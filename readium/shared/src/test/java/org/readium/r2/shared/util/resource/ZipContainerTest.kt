@@ -56,6 +56,14 @@ class ZipContainerTest(val sut: suspend () -> Container<Resource>) {
                 )
             }
 
+            val mappedZipArchive = suspend {
+                assertNotNull(
+                    FileZipArchiveProvider(memoryMapping = true)
+                        .open(format, File(epubZip.path))
+                        .getOrNull()
+                )
+            }
+
             val apacheZipArchive = suspend {
                 StreamingZipArchiveProvider()
                     .openFile(File(epubZip.path))
@@ -70,7 +78,7 @@ class ZipContainerTest(val sut: suspend () -> Container<Resource>) {
             }
             assertNotNull(explodedArchive)
 
-            return listOf(zipArchive, apacheZipArchive, explodedArchive)
+            return listOf(zipArchive, mappedZipArchive, apacheZipArchive, explodedArchive)
         }
     }
 
@@ -274,4 +274,97 @@ class ElementNodeTest {
         val navNode = ElementNode("nav", "")
         assertEquals(List(3) { _ -> navNode }, doc.collect("nav", ""))
     }
+
+    @Test
+    fun testParseSelectedElements() {
+        val elements = mutableListOf<ElementNode>()
+        val paths = mutableListOf<List<String>>()
+        XmlParser().parse(
+            ByteArrayInputStream(metadatav3.toByteArray(Charsets.UTF_8)),
+            select = { path ->
+                paths.add(path.map { it.name })
+                path.size == 3
+            },
+            onElement = { elements.add(it) }
+        )
+
+        assertEquals(
+            listOf(
+                listOf("package"),
+                listOf("package", "metadata"),
+                listOf("package", "metadata", "title"),
+                listOf("package", "metadata", "meta"),
+                listOf("package", "metadata", "meta"),
+                listOf("package", "metadata", "creator")
+            ),
+            paths
+        )
+        assertEquals(
+            listOf(
+                ElementNode(
+                    "title",
+                    "http://purl.org/dc/elements/1.1/",
+                    "en",
+                    mapOf("" to mapOf("id" to "title")),
+                    listOf(TextNode("Moby-Dick"))
+                ),
+                ElementNode(
+                    "meta",
+                    "http://www.idpf.org/2007/opf",
+                    "en",
+                    mapOf("" to mapOf("refines" to "#title", "property" to "title-type")),
+                    listOf(TextNode("main"))
+                ),
+                ElementNode(
+                    "meta",
+                    "http://www.idpf.org/2007/opf",
+                    "fr",
+                    mapOf(
+                        "" to mapOf("refines" to "#title", "property" to "alternate-script"),
+                        XMLConstants.XML_NS_URI to mapOf("lang" to "fr")
+                    ),
+                    listOf(TextNode("Moby Dick"))
+                ),
+                ElementNode(
+                    "creator",
+                    "http://purl.org/dc/elements/1.1/",
+                    "en",
+                    mapOf("" to mapOf("id" to "creator")),
+                    listOf(TextNode("Herman Melville"))
+                )
+            ),
+            elements
+        )
+    }
+
+    @Test
+    fun testParseSelectedElementsKeepsTheirSubtree() {
+        val elements = mutableListOf<ElementNode>()
+        XmlParser().parse(
+            ByteArrayInputStream(
+                "<ncx><navMap><navPoint><navPoint>Nested</navPoint></navPoint><navPoint/></navMap></ncx>"
+                    .toByteArray(Charsets.UTF_8)
+            ),
+            select = { path -> path.last().name == "navPoint" },
+            onElement = { elements.add(it) }
+        )
+
+        assertEquals(
+            listOf(
+                ElementNode(
+                    "navPoint",
+                    children = listOf(ElementNode("navPoint", children = listOf(TextNode("Nested"))))
+                ),
+                ElementNode("navPoint")
+            ),
+            elements
+        )
+    }
+
+    @Test
+    fun testLargeTextIsAccumulated() {
+        val text = "Lorem &amp; ipsum <![CDATA[<dolor>]]> ".repeat(10_000)
+        val doc = parseXmlString("<p>$text</p>")
+        assertEquals("Lorem & ipsum <dolor> ".repeat(10_000), doc.text)
+    }
 }
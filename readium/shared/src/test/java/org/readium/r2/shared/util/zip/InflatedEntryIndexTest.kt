@@ -0,0 +1,96 @@
+package org.readium.r2.shared.util.zip
+
+import java.io.ByteArrayInputStream
+import java.io.IOException
+import java.io.InputStream
+import kotlin.random.Random
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+import kotlinx.coroutines.runBlocking
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class InflatedEntryIndexTest {
+
+    @get:Rule
+    val tmp = TemporaryFolder()
+
+    private val content: ByteArray = Random(42).nextBytes(300_000)
+
+    private var openCount: Int = 0
+
+    private fun index(): InflatedEntryIndex =
+        InflatedEntryIndex(
+            directory = tmp.root,
+            openStream = {
+                openCount++
+                ByteArrayInputStream(content) as InputStream
+            },
+            chunkSize = 4096
+        )
+
+    @Test
+    fun `reading ranges in any order returns the right bytes`(): Unit = runBlocking {
+        val sut = index()
+        for (range in listOf(250_000..260_000L, 10..20L, 100_000..100_100L, 0..0L)) {
+            assertContentEquals(
+                content.copyOfRange(range.first.toInt(), range.last.toInt() + 1),
+                sut.read(range)
+            )
+        }
+        sut.close()
+    }
+
+    @Test
+    fun `backward reads don't inflate the entry again`(): Unit = runBlocking {
+        val sut = index()
+        sut.read(200_000..200_010L)
+        sut.read(5..10L)
+        sut.read(150_000..150_010L)
+        assertEquals(1, openCount)
+        sut.close()
+    }
+
+    @Test
+    fun `out of range indexes are clamped to the entry length`(): Unit = runBlocking {
+        val sut = index()
+        assertContentEquals(
+            content.copyOfRange(299_990, 300_000),
+            sut.read(299_990..400_000L)
+        )
+        assertEquals(0, sut.read(300_000..300_010L).size)
+        sut.close()
+    }
+
+    @Test
+    fun `closing deletes the sidecar file`(): Unit = runBlocking {
+        val sut = index()
+        sut.read(0..10L)
+        assertEquals(1, tmp.root.listFiles()?.size)
+        sut.close()
+        assertEquals(0, tmp.root.listFiles()?.size)
+    }
+
+    @Test
+    fun `reading a closed index fails without creating a sidecar file`(): Unit = runBlocking {
+        val sut = index()
+        sut.read(0..10L)
+        sut.close()
+        assertFailsWith<IOException> { sut.read(0..10L) }
+        assertEquals(0, tmp.root.listFiles()?.size)
+    }
+
+    @Test
+    fun `the index directory refuses entries past its maximum size`() {
+        val sut = InflatedEntryIndexDirectory(tmp.root, maxSize = 3_000_000)
+        assertTrue(sut.reserve(2_000_000))
+        assertFalse(sut.reserve(2_000_000))
+        assertTrue(sut.reserve(1_000_000))
+        sut.release(2_000_000)
+        assertTrue(sut.reserve(2_000_000))
+    }
+}
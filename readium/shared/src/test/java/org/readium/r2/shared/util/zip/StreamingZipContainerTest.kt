@@ -0,0 +1,116 @@
+package org.readium.r2.shared.util.zip
+
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.util.zip.CRC32
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+import kotlin.random.Random
+import kotlin.test.assertContentEquals
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.runBlocking
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.readium.r2.shared.util.FileExtension
+import org.readium.r2.shared.util.Url
+import org.readium.r2.shared.util.checkSuccess
+import org.readium.r2.shared.util.data.Container
+import org.readium.r2.shared.util.file.FileResource
+import org.readium.r2.shared.util.format.Format
+import org.readium.r2.shared.util.format.FormatSpecification
+import org.readium.r2.shared.util.format.Specification
+import org.readium.r2.shared.util.mediatype.MediaType
+import org.readium.r2.shared.util.resource.Resource
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class StreamingZipContainerTest {
+
+    @get:Rule
+    val tmp = TemporaryFolder()
+
+    private val entryCount = 8
+
+    private val entryLength = 1_000_000
+
+    /**
+     * Compressible contents, alternating deflated and stored entries.
+     */
+    private val contents: List<ByteArray> = List(entryCount) { i ->
+        val random = Random(i)
+        ByteArray(entryLength) { (random.nextInt(16) + 'a'.code).toByte() }
+    }
+
+    private fun createZip(): File {
+        val file = tmp.newFile("archive.zip")
+        ZipOutputStream(file.outputStream()).use { zip ->
+            for ((i, content) in contents.withIndex()) {
+                val entry = ZipEntry("entry$i")
+                if (i % 2 == 1) {
+                    entry.method = ZipEntry.STORED
+                    entry.size = content.size.toLong()
+                    entry.crc = CRC32().apply { update(content) }.value
+                }
+                zip.putNextEntry(entry)
+                zip.write(content)
+                zip.closeEntry()
+            }
+        }
+        return file
+    }
+
+    private suspend fun open(file: File): Container<Resource> =
+        StreamingZipArchiveProvider()
+            .open(
+                Format(
+                    specification = FormatSpecification(Specification.Zip),
+                    mediaType = MediaType.ZIP,
+                    fileExtension = FileExtension("zip")
+                ),
+                FileResource(file)
+            )
+            .checkSuccess()
+
+    /**
+     * Reads the given entries concurrently by chunks, as the navigator's HTTP server does.
+     */
+    private suspend fun readConcurrently(container: Container<Resource>, entries: List<Int>): List<ByteArray> =
+        coroutineScope {
+            entries
+                .map { i ->
+                    async(Dispatchers.IO) {
+                        val resource = checkNotNull(container[Url("entry$i")!!])
+                        val bytes = ByteArrayOutputStream(entryLength)
+                        for (start in 0 until entryLength step CHUNK_LENGTH) {
+                            val end = minOf(entryLength, start + CHUNK_LENGTH) - 1
+                            bytes.write(resource.read(start.toLong()..end.toLong()).checkSuccess())
+                        }
+                        resource.close()
+                        bytes.toByteArray()
+                    }
+                }
+                .awaitAll()
+        }
+
+    @Test
+    fun `entries read concurrently return the right bytes`(): Unit = runBlocking {
+        val container = open(createZip())
+        val entries = List(entryCount) { it }
+
+        val results = readConcurrently(container, entries)
+
+        for ((i, bytes) in results.withIndex()) {
+            assertContentEquals(contents[i], bytes)
+        }
+        container.close()
+    }
+
+    private companion object {
+        const val CHUNK_LENGTH = 32 * 1024
+    }
+}
@@ -4,13 +4,17 @@
  * available in the top-level LICENSE file of the project.
  */
 
+@file:OptIn(InternalReadiumApi::class)
+
 package org.readium.r2.streamer.parser.audio
 
+import org.readium.r2.shared.InternalReadiumApi
 import org.readium.r2.shared.publication.Link
 import org.readium.r2.shared.publication.Locator
 import org.readium.r2.shared.publication.Publication
 import org.readium.r2.shared.publication.firstWithHref
 import org.readium.r2.shared.publication.services.LocatorService
+import org.readium.r2.shared.util.SegmentIndex
 import org.readium.r2.shared.util.mediatype.MediaType
 
 /** Locator service for audio publications. */
@@ -20,6 +24,10 @@ public class AudioLocatorService(private val readingOrder: List<Link>) : Locator
     private val durations: List<Double> =
         readingOrder.map { it.duration ?: 0.0 }
 
+    /** Start time of each reading order item. */
+    private val startTimes: SegmentIndex =
+        SegmentIndex.fromLengths(durations.toDoubleArray())
+
     /** Total duration of the publication. */
     private val totalDuration: Double? =
         durations.sum().takeIf { it > 0 }
@@ -71,19 +79,16 @@ public class AudioLocatorService(private val readingOrder: List<Link>) : Locator
      * start time.
      */
     private fun readingOrderItemAtPosition(position: Double): Pair<Link, Double>? {
-        var current = 0.0
-        for ((i, _) in durations.withIndex()) {
-            val link = readingOrder[i]
-            val itemDuration = link.duration ?: 0.0
-            if (position >= current && position < (current + itemDuration)) {
-                return Pair(link, current)
+        val index = startTimes.lastIndexStartingAtOrBefore(position)
+        if (index >= 0) {
+            val start = startTimes.startOf(index)
+            if (position < start + durations[index]) {
+                return Pair(readingOrder[index], start)
             }
-
-            current += itemDuration
         }
 
         if (position == totalDuration) {
-            return readingOrder.lastOrNull()?.let { Pair(it, current - (it.duration ?: 0.0)) }
+            return readingOrder.lastOrNull()?.let { Pair(it, startTimes.startOf(readingOrder.lastIndex)) }
         }
 
         return null
@@ -4,17 +4,21 @@
  * available in the top-level LICENSE file of the project.
  */
 
+@file:OptIn(InternalReadiumApi::class)
+
 package org.readium.r2.streamer.parser.epub
 
 import kotlin.experimental.xor
+import org.readium.r2.shared.InternalReadiumApi
 import org.readium.r2.shared.publication.encryption.Encryption
+import org.readium.r2.shared.util.NormalizedUrlMap
 import org.readium.r2.shared.util.Try
 import org.readium.r2.shared.util.Url
 import org.readium.r2.shared.util.data.ReadError
 import org.readium.r2.shared.util.data.ReadTry
 import org.readium.r2.shared.util.getEquivalent
+import org.readium.r2.shared.util.resource.PositionalTransformingResource
 import org.readium.r2.shared.util.resource.Resource
-import org.readium.r2.shared.util.resource.TransformingResource
 import org.readium.r2.shared.util.resource.flatMap
 import org.readium.r2.streamer.extensions.sha1
 import org.readium.r2.streamer.extensions.toHexByteArray
@@ -24,9 +28,12 @@ import org.readium.r2.streamer.extensions.toHexByteArray
  */
 internal class EpubDeobfuscator(
     private val pubId: String,
-    private val encryptionData: Map<Url, Encryption>,
+    encryptionData: Map<Url, Encryption>,
 ) {
 
+    private val encryptionData: Map<Url, Encryption> =
+        NormalizedUrlMap(encryptionData)
+
     @Suppress("Unused_parameter")
     fun transform(url: Url, resource: Resource): Resource =
         resource.flatMap {
@@ -38,36 +45,40 @@ internal class EpubDeobfuscator(
             }
         }
 
+    /**
+     * Deobfuscates only the bytes of the requested ranges overlapping the obfuscated prefix of
+     * [resource], so that large fonts are never fully read in memory.
+     */
     inner class DeobfuscatingResource(
-        private val resource: Resource,
+        resource: Resource,
         private val algorithm: String,
-    ) : TransformingResource(resource) {
-
-        // The obfuscation doesn't change the length of the resource.
-        override suspend fun length(): ReadTry<Long> =
-            resource.length()
+    ) : PositionalTransformingResource(resource) {
 
-        override suspend fun transform(data: ReadTry<ByteArray>): ReadTry<ByteArray> =
-            data.map { bytes ->
-                val obfuscationLength: Int = algorithm2length[algorithm]
-                    ?: return@map bytes
+        override suspend fun transform(bytes: ByteArray, offset: Long): ReadTry<ByteArray> {
+            val obfuscationLength: Int = algorithm2length[algorithm]
+                ?: return Try.success(bytes)
 
-                val obfuscationKey: ByteArray? = when (algorithm) {
-                    "http://ns.adobe.com/pdf/enc#RC" -> getHashKeyAdobe(pubId)
-                    else -> pubId.sha1()
-                }.toHexByteArray()
+            if (offset >= obfuscationLength) {
+                return Try.success(bytes)
+            }
 
-                if (obfuscationKey == null || obfuscationKey.isEmpty()) {
-                    return Try.failure(ReadError.Decoding("The obfuscation key is not valid."))
-                }
+            val obfuscationKey: ByteArray? = when (algorithm) {
+                "http://ns.adobe.com/pdf/enc#RC" -> getHashKeyAdobe(pubId)
+                else -> pubId.sha1()
+            }.toHexByteArray()
 
-                deobfuscate(
-                    bytes = bytes,
-                    obfuscationKey = obfuscationKey,
-                    obfuscationLength = obfuscationLength
-                )
-                bytes
+            if (obfuscationKey == null || obfuscationKey.isEmpty()) {
+                return Try.failure(ReadError.Decoding("The obfuscation key is not valid."))
             }
+
+            deobfuscate(
+                bytes = bytes,
+                offset = offset.toInt(),
+                obfuscationKey = obfuscationKey,
+                obfuscationLength = obfuscationLength
+            )
+            return Try.success(bytes)
+        }
     }
 
     private val algorithm2length: Map<String, Int> = mapOf(
@@ -75,10 +86,18 @@ internal class EpubDeobfuscator(
         "http://ns.adobe.com/pdf/enc#RC" to 1024
     )
 
-    private fun deobfuscate(bytes: ByteArray, obfuscationKey: ByteArray, obfuscationLength: Int) {
-        val toDeobfuscate = 0 until obfuscationLength.coerceAtMost(bytes.size)
+    /**
+     * Deobfuscates the [bytes] read at [offset] of the resource.
+     */
+    private fun deobfuscate(
+        bytes: ByteArray,
+        offset: Int,
+        obfuscationKey: ByteArray,
+        obfuscationLength: Int,
+    ) {
+        val toDeobfuscate = 0 until (obfuscationLength - offset).coerceAtMost(bytes.size)
         for (i in toDeobfuscate) {
-            bytes[i] = bytes[i].xor(obfuscationKey[i % obfuscationKey.size])
+            bytes[i] = bytes[i].xor(obfuscationKey[(offset + i) % obfuscationKey.size])
         }
     }
 
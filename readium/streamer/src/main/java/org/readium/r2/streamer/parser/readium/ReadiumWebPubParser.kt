@@ -10,6 +10,7 @@ package org.readium.r2.streamer.parser.readium
 
 import android.content.Context
 import org.readium.r2.shared.DelicateReadiumApi
+import org.readium.r2.shared.ExperimentalReadiumApi
 import org.readium.r2.shared.InternalReadiumApi
 import org.readium.r2.shared.publication.Manifest
 import org.readium.r2.shared.publication.Publication
@@ -33,6 +34,7 @@ import org.readium.r2.shared.util.data.decodeRwpm
 import org.readium.r2.shared.util.data.readDecodeOrElse
 import org.readium.r2.shared.util.format.FormatSpecification
 import org.readium.r2.shared.util.format.Specification
+import org.readium.r2.shared.util.http.HttpBlockCache
 import org.readium.r2.shared.util.http.HttpClient
 import org.readium.r2.shared.util.http.HttpContainer
 import org.readium.r2.shared.util.logging.WarningLogger
@@ -51,12 +53,16 @@ import timber.log.Timber
  * @param epubReflowablePositionsStrategy Strategy used to calculate the number
  * of positions in a reflowable resource of a web publication conforming to the
  * EPUB profile.
+ * @param httpBlockCache Cache of the remote resources of the publications streamed from a
+ * manifest.
  */
+@OptIn(ExperimentalReadiumApi::class)
 public class ReadiumWebPubParser(
     private val context: Context? = null,
     private val httpClient: HttpClient,
     private val pdfFactory: PdfDocumentFactory<*>?,
     private val epubReflowablePositionsStrategy: EpubPositionsService.ReflowableStrategy = EpubPositionsService.ReflowableStrategy.recommended,
+    private val httpBlockCache: HttpBlockCache? = null,
 ) : PublicationParser {
 
     override suspend fun parse(
@@ -197,7 +203,7 @@ public class ReadiumWebPubParser(
                     Url("manifest.json")!!,
                     resource
                 ),
-                HttpContainer(baseUrl, resources, httpClient)
+                HttpContainer(baseUrl, resources, httpClient, httpBlockCache)
             )
 
         return parseContainerAsset(container, FormatSpecification(Specification.Rpf))
@@ -82,6 +82,48 @@ class EpubDeobfuscatorTest {
         }
     }
 
+    @Test
+    fun testIdpfDeobfuscationWithRangeOverlappingTheObfuscatedPrefix() {
+        runBlocking {
+            val url = Url("cut-cut.obf.woff")!!
+            val resource = assertNotNull(container[url])
+            val deobfuscatedRes = deobfuscate(
+                url,
+                resource,
+                "http://www.idpf.org/2008/embedding"
+            ).read(1000L until 1100L).checkSuccess()
+            assertThat(deobfuscatedRes).isEqualTo(font.copyOfRange(1000, 1100))
+        }
+    }
+
+    @Test
+    fun testIdpfDeobfuscationWithRangeAfterTheObfuscatedPrefix() {
+        runBlocking {
+            val url = Url("cut-cut.obf.woff")!!
+            val resource = assertNotNull(container[url])
+            val deobfuscatedRes = deobfuscate(
+                url,
+                resource,
+                "http://www.idpf.org/2008/embedding"
+            ).read(20000L until 20100L).checkSuccess()
+            assertThat(deobfuscatedRes).isEqualTo(font.copyOfRange(20000, 20100))
+        }
+    }
+
+    @Test
+    fun testAdobeDeobfuscationWithRange() {
+        runBlocking {
+            val url = Url("cut-cut.adb.woff")!!
+            val resource = assertNotNull(container[url])
+            val deobfuscatedRes = deobfuscate(
+                url,
+                resource,
+                "http://ns.adobe.com/pdf/enc#RC"
+            ).read(1000L until 1100L).checkSuccess()
+            assertThat(deobfuscatedRes).isEqualTo(font.copyOfRange(1000, 1100))
+        }
+    }
+
     @Test
     fun testAdobeDeobfuscation() {
         val url = Url("cut-cut.adb.woff")!!